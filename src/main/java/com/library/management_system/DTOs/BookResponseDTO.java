@@ -1,9 +1,12 @@
 package com.library.management_system.DTOs;
 
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.library.management_system.enums.BookAccessType;
 
 import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
 
 public record BookResponseDTO(
         Long id,
@@ -13,9 +16,28 @@ public record BookResponseDTO(
         String description,
         String pdfPath,
         String coverImagePath,
+        String coverPlaceholder,
         String genre,
         String publishedDate,
         BigDecimal pricePerMonth,
         BookAccessType accessType,
-        int numberOfPages
-) {}
\ No newline at end of file
+        int numberOfPages,
+        LocalDateTime createdAt
+) {
+    // versioned cover URLs, a new cover gets a new URL so clients may cache them forever
+    @JsonProperty
+    public String coverUrl() {
+        return coverImagePath == null ? null : "/api/books/cover/v/" + Paths.get(coverImagePath).getFileName();
+    }
+
+    // the 240px JPEG, swap the suffix for -w120/-w480 or .webp; only there once the placeholder is
+    @JsonProperty
+    public String coverThumbnailUrl() {
+        if (coverImagePath == null || coverPlaceholder == null) {
+            return null;
+        }
+        String filename = Paths.get(coverImagePath).getFileName().toString();
+        int dot = filename.lastIndexOf('.');
+        return "/api/books/cover/v/" + (dot > 0 ? filename.substring(0, dot) : filename) + "-w240.jpg";
+    }
+}
\ No newline at end of file
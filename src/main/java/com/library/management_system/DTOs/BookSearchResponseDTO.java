@@ -0,0 +1,24 @@
+package com.library.management_system.DTOs;
+
+import java.util.List;
+
+// Search page plus "did you mean" data, correctedQuery is set when the results belong to a suggestion
+public class BookSearchResponseDTO extends PaginatedResponse<BookResponseDTO> {
+    private String correctedQuery;
+    private List<String> suggestions;
+
+    public BookSearchResponseDTO(List<BookResponseDTO> content, int totalPages, long totalElements,
+                                 String correctedQuery, List<String> suggestions) {
+        super(content, totalPages, totalElements);
+        this.correctedQuery = correctedQuery;
+        this.suggestions = suggestions;
+    }
+
+    public String getCorrectedQuery() {
+        return correctedQuery;
+    }
+
+    public List<String> getSuggestions() {
+        return suggestions;
+    }
+}
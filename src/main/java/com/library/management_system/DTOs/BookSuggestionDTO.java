@@ -0,0 +1,8 @@
+package com.library.management_system.DTOs;
+
+// one autocomplete entry, bookId is only set for title suggestions
+public record BookSuggestionDTO(
+        String text,
+        String type,
+        Long bookId
+) {}
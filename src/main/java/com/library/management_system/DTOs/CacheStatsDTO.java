@@ -0,0 +1,9 @@
+package com.library.management_system.DTOs;
+
+public record CacheStatsDTO(
+        long size,
+        long hits,
+        long misses,
+        long evictions,
+        double hitRate
+) {}
@@ -0,0 +1,11 @@
+package com.library.management_system.DTOs;
+
+import java.time.LocalDateTime;
+
+// delivery state of the email outbox, oldestPending is null when nothing is waiting
+public record EmailOutboxStatsDTO(
+        long pending,
+        long sent,
+        long failed,
+        LocalDateTime oldestPending
+) {}
@@ -0,0 +1,7 @@
+package com.library.management_system.DTOs;
+
+import jakarta.validation.constraints.NotBlank;
+
+// body is a freemarker html template, ${email} is replaced with each recipient's address
+public record NewsletterRequestDTO(@NotBlank String subject, @NotBlank String body) {
+}
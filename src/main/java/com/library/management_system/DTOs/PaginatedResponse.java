@@ -1,12 +1,17 @@
 package com.library.management_system.DTOs;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
 // Helper class for paginated response
+// offset pages carry totalPages/totalElements, cursor pages carry nextCursor instead
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public  class PaginatedResponse<T> {
     private List<T> content;
-    private int totalPages;
-    private long totalElements;
+    private Integer totalPages;
+    private Long totalElements;
+    private String nextCursor;
 
     public PaginatedResponse(List<T> content, int totalPages, long totalElements) {
         this.content = content;
@@ -14,15 +19,25 @@ public  class PaginatedResponse<T> {
         this.totalElements = totalElements;
     }
 
+//    cursor page, nextCursor is null on the last page
+    public PaginatedResponse(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
     public List<T> getContent() {
         return content;
     }
 
-    public int getTotalPages() {
+    public Integer getTotalPages() {
         return totalPages;
     }
 
-    public long getTotalElements() {
+    public Long getTotalElements() {
         return totalElements;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
 }
@@ -0,0 +1,11 @@
+package com.library.management_system.DTOs;
+
+// size of a book's pdf as uploaded and as sent to readers.
+// status is PENDING until the optimizer has looked at it, OPTIMIZED or UNCHANGED after,
+// UNTRACKED for pdfs stored before content addressing
+public record PdfOptimizationDTO(
+        Long bookId,
+        String status,
+        long originalSize,
+        Long optimizedSize
+) {}
@@ -0,0 +1,19 @@
+package com.library.management_system.DTOs;
+
+import java.time.LocalDateTime;
+
+// progress of the move into the sharded upload layout
+public record StorageMigrationDTO(
+        String status,
+        long booksUpdated,
+        long blobsUpdated,
+        long usersUpdated,
+        long looseEntriesMoved,
+        LocalDateTime startedAt,
+        LocalDateTime finishedAt,
+        String error
+) {
+    public static StorageMigrationDTO idle() {
+        return new StorageMigrationDTO("IDLE", 0, 0, 0, 0, null, null, null);
+    }
+}
@@ -0,0 +1,16 @@
+package com.library.management_system.DTOs;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// state of an upload session, missingChunks tells a resuming client what to send again
+public record UploadSessionDTO(
+        String id,
+        Long bookId,
+        long fileSize,
+        int chunkSize,
+        int chunkCount,
+        String status,
+        List<Integer> missingChunks,
+        LocalDateTime expiresAt
+) {}
@@ -0,0 +1,8 @@
+package com.library.management_system.DTOs;
+
+// chunkSize is optional, the server picks one when it is missing
+public record UploadSessionRequestDTO(
+        Long bookId,
+        long fileSize,
+        Integer chunkSize
+) {}
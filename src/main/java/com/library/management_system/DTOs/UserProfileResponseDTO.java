@@ -1,7 +1,9 @@
 package com.library.management_system.DTOs;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.library.management_system.enums.Role;
 
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.UUID;
 
@@ -19,4 +21,10 @@ public record UserProfileResponseDTO(
         String phoneNumber
 ) {
     // Record automatically generates everything
+
+    // versioned picture URL, every upload gets a new file name so it can be cached for good
+    @JsonProperty
+    public String profilePictureUrl() {
+        return profileImageUrl == null ? null : "/user/profile/picture/v/" + Paths.get(profileImageUrl).getFileName();
+    }
 }
@@ -1,5 +1,6 @@
 package com.library.management_system.configs;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -22,4 +23,76 @@ public class AsyncConfig {
         exec.initialize();
         return exec;
     }
+
+//    runs bulk catalog imports, one job at a time so two imports don't fight over disk and db
+    @Bean
+    public ThreadPoolTaskExecutor importExecutor() {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(1);
+        exec.setMaxPoolSize(1);
+        exec.setQueueCapacity(20);
+        exec.setThreadNamePrefix("import-");
+        exec.initialize();
+        return exec;
+    }
+
+//    copies and validates the files of an import chunk in parallel
+    @Bean
+    public ThreadPoolTaskExecutor importFileExecutor() {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(8);
+        exec.setMaxPoolSize(8);
+        exec.setQueueCapacity(1000);
+        exec.setThreadNamePrefix("import-file-");
+        exec.initialize();
+        return exec;
+    }
+
+//    sends the email outbox, a second thread so a slow batch doesn't hold back the next wake up
+    @Bean
+    public ThreadPoolTaskExecutor mailExecutor() {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(2);
+        exec.setMaxPoolSize(2);
+        exec.setQueueCapacity(100);
+        exec.setThreadNamePrefix("mail-");
+        exec.initialize();
+        return exec;
+    }
+
+//    applies stripe events from the webhook inbox, one thread drains and the rest process its batch
+    @Bean
+    public ThreadPoolTaskExecutor webhookExecutor() {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(4);
+        exec.setMaxPoolSize(4);
+        exec.setQueueCapacity(1000);
+        exec.setThreadNamePrefix("webhook-");
+        exec.initialize();
+        return exec;
+    }
+
+//    runs newsletter campaigns, one at a time so two campaigns don't share the send rate
+    @Bean
+    public ThreadPoolTaskExecutor newsletterExecutor() {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(1);
+        exec.setMaxPoolSize(1);
+        exec.setQueueCapacity(20);
+        exec.setThreadNamePrefix("newsletter-");
+        exec.initialize();
+        return exec;
+    }
+
+//    one thread per smtp connection a campaign keeps open, each sends a batch over its own connection
+    @Bean
+    public ThreadPoolTaskExecutor newsletterSendExecutor(@Value("${mail.newsletter.connections:4}") int connections) {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(connections);
+        exec.setMaxPoolSize(connections);
+        exec.setQueueCapacity(100);
+        exec.setThreadNamePrefix("newsletter-send-");
+        exec.initialize();
+        return exec;
+    }
 }
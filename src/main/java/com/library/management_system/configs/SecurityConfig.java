@@ -64,6 +64,9 @@ public class SecurityConfig {
                                 "/user/redeem-password",
                                 "/user/reset-password",
                                 "/api/books/search",
+                                "/api/books/suggest",
+                                // content addressed covers, sent as public/immutable so shared caches can keep them
+                                "/api/books/cover/v/**",
                                 "/webhook/payment/**",
                                 "/api/mailing/subscribe",
                                 "/api/mailing/verify-email"
@@ -74,14 +77,17 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.POST, "/user/logout").authenticated()
                         .requestMatchers(HttpMethod.GET, "/user/profile").authenticated()
                         .requestMatchers(HttpMethod.GET, "/user/profile/picture").authenticated()
+                        .requestMatchers(HttpMethod.GET, "/user/profile/picture/v/**").authenticated()
                         .requestMatchers(HttpMethod.POST, "/user/profile/picture").authenticated()
                         .requestMatchers(HttpMethod.DELETE, "/user/profile/picture").authenticated()
                         .requestMatchers(HttpMethod.PATCH, "/user/profile").authenticated()
                         .requestMatchers(HttpMethod.POST, "/api/payments/create").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/payments/access/**").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/payments/transactions").authenticated()
+                        .requestMatchers(HttpMethod.GET, "/api/payments/transactions/page").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/books/read/url/**").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/books/pdf-stream/**").authenticated()
+                        .requestMatchers(HttpMethod.GET, "/api/books/pdf-pages/**").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/books/bookDetails/**").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/books/cover/**").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/books/genre/**").authenticated()
@@ -92,14 +98,22 @@ public class SecurityConfig {
                         .requestMatchers("/user/admin/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.POST, "/api/books/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.PATCH, "/api/books/**").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.PUT, "/api/books/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.DELETE, "/api/books/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.GET, "/api/books/pdf/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.GET, "/api/books/countBooks").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/api/books/cache/stats").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/api/books/import/**").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/api/books/uploads/**").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/api/books/storage/**").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/api/books/pdf-optimization/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.GET, "/countUsers").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.GET, "/user/admin/users/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.DELETE, "/user/admin/users/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.PATCH, "/user/admin/users/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.GET, "/api/payments/countTotalTransactions").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/api/mailing/outbox").hasRole("ADMIN")
+                        .requestMatchers("/api/mailing/campaigns/**", "/api/mailing/campaigns").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.POST, "api/reports/general-report").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.GET, "api/reports/job/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.GET, "api/reports/download/**").hasRole("ADMIN")
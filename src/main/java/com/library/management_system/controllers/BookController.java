@@ -3,19 +3,34 @@ package com.library.management_system.controllers;
 
 import com.library.management_system.DTOs.BookRequestDTO;
 import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.BookSuggestionDTO;
+import com.library.management_system.DTOs.CacheStatsDTO;
 import com.library.management_system.DTOs.PaginatedResponse;
+import com.library.management_system.DTOs.PdfOptimizationDTO;
 import com.library.management_system.DTOs.UserProfileResponseDTO;
-import com.library.management_system.models.Book;
 import com.library.management_system.services.BookService;
+import com.library.management_system.services.CoverImageService;
 import com.library.management_system.services.FileStorageService;
+import com.library.management_system.services.HotImageCache;
 import com.library.management_system.services.PaymentService;
+import com.library.management_system.services.PdfOptimizationService;
+import com.library.management_system.services.PdfSegmentService;
+import com.library.management_system.services.PdfStreamService;
+import com.library.management_system.services.StreamTokenService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -23,23 +38,40 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/books")
 public class BookController {
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    private static final int MAX_SUGGESTIONS = 20;
+
     private final BookService bookService;
     private final FileStorageService fileStorageService;
     private final PaymentService paymentService;
+    private final PdfStreamService pdfStreamService;
+    private final PdfSegmentService pdfSegmentService;
+    private final PdfOptimizationService pdfOptimizationService;
+    private final HotImageCache hotImageCache;
+    private final StreamTokenService streamTokenService;
 
 
-    public BookController(BookService bookService, FileStorageService fileStorageService, PaymentService paymentService) {
+    public BookController(BookService bookService, FileStorageService fileStorageService, PaymentService paymentService,
+                          PdfStreamService pdfStreamService, PdfSegmentService pdfSegmentService,
+                          PdfOptimizationService pdfOptimizationService, HotImageCache hotImageCache,
+                          StreamTokenService streamTokenService) {
         this.bookService = bookService;
         this.fileStorageService = fileStorageService;
         this.paymentService = paymentService;
+        this.pdfStreamService = pdfStreamService;
+        this.pdfSegmentService = pdfSegmentService;
+        this.pdfOptimizationService = pdfOptimizationService;
+        this.hotImageCache = hotImageCache;
+        this.streamTokenService = streamTokenService;
     }
 
 
@@ -55,11 +87,15 @@ public class BookController {
     }
 
 
-    //      Get all books
+    //      Get all books, pass cursor (empty for the first page) to page by keyset instead of page numbers
     @GetMapping
     public ResponseEntity<?> getAllBooks(
             @RequestParam(value = "page", required = false, defaultValue = "0") int page,
-            @RequestParam(value = "size", required = false, defaultValue = "10") int size) {
+            @RequestParam(value = "size", required = false, defaultValue = "10") int size,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        if (cursor != null) {
+            return ResponseEntity.ok(bookService.getAllBooks(cursor, checkCursorPageSize(size)));
+        }
 
 //        create pageable with sorting by creation date descending
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
@@ -106,6 +142,15 @@ public class BookController {
         }
 
 
+//      Replace the pdf of a book with the raw request body (Content-Type: application/pdf).
+//      no multipart buffering, so this is the way to upload books in the hundreds of MB
+        @PutMapping(value = "/{id}/pdf", consumes = "application/pdf")
+        public ResponseEntity<BookResponseDTO> uploadBookPdf (@PathVariable Long id,
+                HttpServletRequest request) throws IOException {
+            return ResponseEntity.ok(bookService.replacePdf(id, request.getInputStream(), request.getContentLengthLong()));
+        }
+
+
 //      Get book PDF file for reading for admins only
         @GetMapping("/pdf/{id}")
         public ResponseEntity<Resource> getBookPdf (@PathVariable Long id){
@@ -118,13 +163,15 @@ public class BookController {
         }
 
 
-//    checks book access and returns pdf url instead of pdf file
+//    checks book access and returns pdf url instead of pdf file.
+//    the url carries a signed stream token, so the reading endpoints don't check access again
         @GetMapping("/read/url/{id}")
-        public ResponseEntity<?> readBook (@PathVariable Long id){
+        public ResponseEntity<?> readBook (@PathVariable Long id, @AuthenticationPrincipal Jwt jwt){
             // Check if user has access to this book
             if (!paymentService.hasAccessToBook(id)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
             }
+            StreamTokenService.StreamToken streamToken = streamTokenService.mint(jwt.getSubject(), id);
 
             // Get the book to retrieve PDF path
             BookResponseDTO book = bookService.getBookById(id)
@@ -132,7 +179,10 @@ public class BookController {
 
             // Return the PDF path for the viewer instead of the file itself
             Map<String, String> response = new HashMap<>();
-             response.put("pdfUrl", "/api/books/pdf-stream/" + id);
+            response.put("pdfUrl", "/api/books/pdf-stream/" + id + "?token=" + streamToken.token());
+            // for /api/books/pdf-pages/{id}?token=...
+            response.put("streamToken", streamToken.token());
+            response.put("streamTokenExpiresAt", streamToken.expiresAt().toString());
             response.put("bookTitle", book.title());
             response.put("bookCover", book.coverImagePath());
 
@@ -141,69 +191,165 @@ public class BookController {
 
 
         // --- Secure PDF streaming for users which doesn't allow downloading---
+        // supports Range requests so the viewer can load the pdf page by page
         @GetMapping("/pdf-stream/{id}")
-        public ResponseEntity<Resource> streamBookPdf (@PathVariable Long id,
-                HttpServletResponse response){
-            if (!paymentService.hasAccessToBook(id)) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-            }
+        public void streamBookPdf (@PathVariable Long id,
+                @RequestParam(value = "token", required = false) String token,
+                @AuthenticationPrincipal Jwt jwt,
+                HttpServletRequest request,
+                HttpServletResponse response) throws IOException {
+            checkReadAccess(id, token, jwt);
 
-            Resource pdfResource = bookService.getBookPdf(id);
+            Path pdfPath = bookService.getBookReadingPdfPath(id);
 
             // Add headers to stop the broswer from caching and downloading
             response.setHeader("Cache-Control", "no-store, no-cache, must-revalidate, max-age=0");
             response.setHeader("Pragma", "no-cache");
             response.setHeader("Expires", "0");
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_TYPE, "application/pdf")
-                    // Remove filename to make saving harder
-                    .body(pdfResource);
+            // Remove filename to make saving harder
+            pdfStreamService.stream(pdfPath, request, response);
+        }
+
+
+//    page count and segment sizes, so the viewer knows what it can ask for
+        @GetMapping("/pdf-pages/{id}")
+        public ResponseEntity<PdfSegmentService.SegmentIndex> getPdfPageIndex (@PathVariable Long id,
+                @RequestParam(value = "token", required = false) String token,
+                @AuthenticationPrincipal Jwt jwt){
+            checkReadAccess(id, token, jwt);
+            return ResponseEntity.ok(pdfSegmentService.getIndex(bookService.getBookPdfPath(id)));
+        }
+
+
+//    page N of a book as a small standalone pdf, or count pages starting at N merged into one
+        @GetMapping("/pdf-pages/{id}/{page}")
+        public void streamPdfPages (@PathVariable Long id,
+                @PathVariable int page,
+                @RequestParam(value = "count", required = false, defaultValue = "1") int count,
+                @RequestParam(value = "token", required = false) String token,
+                @AuthenticationPrincipal Jwt jwt,
+                HttpServletRequest request,
+                HttpServletResponse response) throws IOException {
+            checkReadAccess(id, token, jwt);
+
+            Path pdfPath = bookService.getBookPdfPath(id);
+
+            // same anti-download headers as the full stream
+            response.setHeader("Cache-Control", "no-store, no-cache, must-revalidate, max-age=0");
+            response.setHeader("Pragma", "no-cache");
+            response.setHeader("Expires", "0");
+
+            if (count <= 1) {
+                pdfStreamService.stream(pdfSegmentService.getPage(pdfPath, page), request, response);
+                return;
+            }
+            byte[] window = pdfSegmentService.getWindow(pdfPath, page, count);
+            response.setContentType("application/pdf");
+            response.setContentLength(window.length);
+            response.getOutputStream().write(window);
+        }
+
+
+//    a stream token from /read/url is checked in memory, requests without one fall back to the access queries
+        private void checkReadAccess (Long id, String token, Jwt jwt){
+            boolean allowed = token != null
+                    ? streamTokenService.verify(token, jwt.getSubject(), id)
+                    : paymentService.hasAccessToBook(id);
+            if (!allowed) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+            }
         }
 
 
 //      Get book cover image for display
+        // w (pixels) and format (webp or jpeg) ask for a resized version, format falls back to the Accept header.
+        // with neither the original upload is returned as before
         @GetMapping("/cover/{id}")
-        public ResponseEntity<Resource> getBookCover (@PathVariable Long id){
+        public ResponseEntity<Resource> getBookCover (@PathVariable Long id,
+                @RequestParam(value = "w", required = false) Integer width,
+                @RequestParam(value = "format", required = false) String format,
+                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                WebRequest webRequest){
+            if (width != null || format != null) {
+                boolean webp;
+                if (format == null) {
+                    webp = accept != null && accept.contains("image/webp");
+                } else if (format.equalsIgnoreCase("webp")) {
+                    webp = true;
+                } else if (format.equalsIgnoreCase("jpeg") || format.equalsIgnoreCase("jpg")) {
+                    webp = false;
+                } else {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "format must be webp or jpeg");
+                }
+
+                CoverImageService.Variant variant = bookService.getBookCoverVariant(id,
+                        width != null ? width : Integer.MAX_VALUE, webp);
+                if (webRequest.checkNotModified(variant.etag())) {
+                    return null;
+                }
+                return ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_TYPE, variant.contentType())
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                        .cacheControl(CacheControl.noCache().cachePrivate())
+                        .eTag(variant.etag())
+                        .body(new FileSystemResource(variant.file()));
+            }
+
             Resource imageResource = bookService.getBookCover(id);
 
             String filename = imageResource.getFilename();
             String contentType = fileStorageService.determineContentType(filename);
 
+            // the content hash is a strong validator, an unchanged cover costs a 304 and no body
+            String etag = FileStorageService.contentTag(filename);
+            if (etag != null && webRequest.checkNotModified(etag)) {
+                return null;
+            }
+
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_TYPE, contentType)
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .eTag(etag)
                     .body(imageResource);
         }
 
+//    versioned cover, coverUrl/coverThumbnailUrl of the book DTO. the name is the content hash, so the
+//    bytes behind it never change: no database lookup, served from the hot image cache and cacheable for a year.
+//    public like search, which hands these URLs out, so a shared cache may answer anyone with it
+        @GetMapping("/cover/v/{name}")
+        public void getVersionedCover (@PathVariable String name,
+                HttpServletRequest request,
+                HttpServletResponse response) throws IOException {
+            Path file = fileStorageService.resolveCoverVersion(name);
+            hotImageCache.serveImmutable(file, fileStorageService.determineContentType(name), "\"" + name + "\"", true,
+                    new ServletWebRequest(request, response));
+        }
+
 //    search book
         @GetMapping("/search")
         public ResponseEntity<?> getAllBooks (
         @RequestParam(value = "page", required = false, defaultValue = "0") int page,
         @RequestParam(value = "size", required = false, defaultValue = "10") int size,
-        @RequestParam(value = "search", required = false) String search){
+        @RequestParam(value = "search", required = false) String search,
+        @RequestParam(value = "cursor", required = false) String cursor){
+            if (cursor != null && search != null && !search.isEmpty()) {
+                return ResponseEntity.ok(bookService.searchBooks(search, cursor, checkCursorPageSize(size)));
+            }
             Pageable pageable = PageRequest.of(page, size, Sort.by("title").ascending());
-            Page<Book> bookPage;
-            if (search != null && !search.isEmpty()) {
-                bookPage = bookService.primarySearch(search, pageable);
-            } else {
-                bookPage = Page.empty(pageable);
+            if (search == null || search.isEmpty()) {
+                return ResponseEntity.ok(new PaginatedResponse<>(List.<BookResponseDTO>of(), 0, 0));
             }
-            List<BookResponseDTO> books = bookPage.getContent().stream()
-                    .map(book -> new BookResponseDTO(
-                            book.getId(),
-                            book.getTitle(),
-                            book.getAuthor(),
-                            book.getIsbn(),
-                            book.getDescription(),
-                            book.getPdfPath(),
-                            book.getCoverImagePath(),
-                            book.getGenre(),
-                            book.getPublishedDate(),
-                            book.getPricePerMonth(),
-                            book.getAccessType(),
-                            book.getNumberOfPages()))
-                    .collect(Collectors.toList());
-            return ResponseEntity.ok(new PaginatedResponse<>(books, bookPage.getTotalPages(), bookPage.getTotalElements()));
+            return ResponseEntity.ok(bookService.searchWithSuggestions(search, pageable));
+        }
+
+
+//    autocomplete for the search box, answered from memory
+        @GetMapping("/suggest")
+        public ResponseEntity<List<BookSuggestionDTO>> suggest (
+        @RequestParam(value = "prefix") String prefix,
+        @RequestParam(value = "limit", required = false, defaultValue = "8") int limit){
+            return ResponseEntity.ok(bookService.suggest(prefix, Math.min(Math.max(limit, 0), MAX_SUGGESTIONS)));
         }
 
 
@@ -212,27 +358,39 @@ public class BookController {
         public ResponseEntity<?> getBooksByGenre (
         @RequestParam(value = "page", required = false, defaultValue = "0") int page,
         @RequestParam(value = "size", required = false, defaultValue = "10") int size,
-        @RequestParam(value = "genre", required = true) String genre){
+        @RequestParam(value = "genre", required = true) String genre,
+        @RequestParam(value = "cursor", required = false) String cursor){
+            if (cursor != null) {
+                return ResponseEntity.ok(bookService.getBooksByGenre(genre, cursor, checkCursorPageSize(size)));
+            }
 
             Pageable pageable = PageRequest.of(page, size, Sort.by("title").ascending());
-            Page<Book> bookPage = bookService.getBooksByGenre(genre, pageable);
-            List<BookResponseDTO> books = bookPage.getContent().stream()
-                    .map(book -> new BookResponseDTO(
-                            book.getId(),
-                            book.getTitle(),
-                            book.getAuthor(),
-                            book.getIsbn(),
-                            book.getDescription(),
-                            book.getPdfPath(),
-                            book.getCoverImagePath(),
-                            book.getGenre(),
-                            book.getPublishedDate(),
-                            book.getPricePerMonth(),
-                            book.getAccessType(),
-                            book.getNumberOfPages()))
-                    .collect(Collectors.toList());
-            return ResponseEntity.ok(new PaginatedResponse<>(books, bookPage.getTotalPages(), bookPage.getTotalElements()));
+            Page<BookResponseDTO> bookPage = bookService.getBooksByGenre(genre, pageable);
+            return ResponseEntity.ok(new PaginatedResponse<>(bookPage.getContent(), bookPage.getTotalPages(), bookPage.getTotalElements()));
+
+        }
+
+
+//    cursor pages fetch size + 1 rows, keep the size sane
+        private int checkCursorPageSize(int size) {
+            if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be between 1 and " + MAX_CURSOR_PAGE_SIZE);
+            }
+            return size;
+        }
+
+
+//    size of a book's pdf as uploaded and as sent to readers, for admins
+        @GetMapping("/pdf-optimization/{id}")
+        public ResponseEntity<PdfOptimizationDTO> getPdfOptimization (@PathVariable Long id){
+            return ResponseEntity.ok(pdfOptimizationService.getReport(id, bookService.getBookPdfPath(id)));
+        }
+
 
+//    catalog cache counters for admins
+        @GetMapping("/cache/stats")
+        public ResponseEntity<CacheStatsDTO> getCatalogCacheStats () {
+            return ResponseEntity.ok(bookService.getCatalogCacheStats());
         }
 
 
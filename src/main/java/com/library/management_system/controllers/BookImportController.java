@@ -0,0 +1,50 @@
+package com.library.management_system.controllers;
+
+import com.library.management_system.DTOs.PaginatedResponse;
+import com.library.management_system.models.BookImportError;
+import com.library.management_system.models.BookImportJob;
+import com.library.management_system.services.BookImportService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+@RestController
+@RequestMapping("/api/books/import")
+public class BookImportController {
+
+    private final BookImportService importService;
+
+    public BookImportController(BookImportService importService) {
+        this.importService = importService;
+    }
+
+    //    start a bulk import, files come either as a zip archive or from a directory under the import root
+    @PostMapping(consumes = "multipart/form-data")
+    public ResponseEntity<BookImportJob> startImport(
+            @RequestPart("manifest") MultipartFile manifest,
+            @RequestPart(value = "archive", required = false) MultipartFile archive,
+            @RequestParam(value = "sourceDirectory", required = false) String sourceDirectory) {
+        BookImportJob job = importService.startImport(manifest, archive, sourceDirectory);
+        return ResponseEntity.accepted().body(job);
+    }
+
+    //    progress of an import
+    @GetMapping("/{jobId}")
+    public ResponseEntity<BookImportJob> getJob(@PathVariable Long jobId) {
+        return importService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    //    rows that could not be imported, in manifest order
+    @GetMapping("/{jobId}/errors")
+    public ResponseEntity<PaginatedResponse<BookImportError>> getErrors(
+            @PathVariable Long jobId,
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+            @RequestParam(value = "size", required = false, defaultValue = "50") int size) {
+        Page<BookImportError> errors = importService.getErrors(jobId, PageRequest.of(page, size));
+        return ResponseEntity.ok(new PaginatedResponse<>(errors.getContent(), errors.getTotalPages(), errors.getTotalElements()));
+    }
+}
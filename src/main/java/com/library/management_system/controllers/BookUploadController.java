@@ -0,0 +1,55 @@
+package com.library.management_system.controllers;
+
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.UploadSessionDTO;
+import com.library.management_system.DTOs.UploadSessionRequestDTO;
+import com.library.management_system.services.BookUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/books/uploads")
+public class BookUploadController {
+
+    private final BookUploadService uploadService;
+
+    public BookUploadController(BookUploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
+    //    open a resumable upload for the pdf of a book
+    @PostMapping
+    public ResponseEntity<UploadSessionDTO> createSession(@RequestBody UploadSessionRequestDTO request) {
+        return new ResponseEntity<>(uploadService.createSession(request), HttpStatus.CREATED);
+    }
+
+    //    state of an upload, missingChunks lists what still has to be sent
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionDTO> getSession(@PathVariable String sessionId) {
+        return ResponseEntity.ok(uploadService.getSession(sessionId));
+    }
+
+    //    one chunk as the raw request body, chunks can be sent in any order and in parallel
+    @PutMapping("/{sessionId}/chunks/{index}")
+    public ResponseEntity<UploadSessionDTO> uploadChunk(@PathVariable String sessionId,
+                                                        @PathVariable int index,
+                                                        HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(uploadService.writeChunk(sessionId, index, request.getInputStream(), request.getContentLengthLong()));
+    }
+
+    //    assemble the upload and attach it to the book
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<BookResponseDTO> complete(@PathVariable String sessionId) {
+        return ResponseEntity.ok(uploadService.complete(sessionId));
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abort(@PathVariable String sessionId) {
+        uploadService.abort(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+}
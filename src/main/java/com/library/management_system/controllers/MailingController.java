@@ -1,8 +1,17 @@
 package com.library.management_system.controllers;
 
+import com.library.management_system.DTOs.EmailOutboxStatsDTO;
 import com.library.management_system.DTOs.MailingListDto;
+import com.library.management_system.DTOs.NewsletterRequestDTO;
+import com.library.management_system.DTOs.PaginatedResponse;
+import com.library.management_system.models.NewsletterCampaign;
+import com.library.management_system.models.NewsletterDelivery;
+import com.library.management_system.services.EmailOutbox;
 import com.library.management_system.services.MailingService;
+import com.library.management_system.services.NewsletterService;
 import jakarta.validation.Valid;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -12,9 +21,13 @@ import java.util.Map;
 @RequestMapping("/api/mailing")
 public class MailingController {
     private final MailingService mailingService;
+    private final EmailOutbox emailOutbox;
+    private final NewsletterService newsletterService;
 
-    public MailingController(MailingService mailingService) {
+    public MailingController(MailingService mailingService, EmailOutbox emailOutbox, NewsletterService newsletterService) {
         this.mailingService = mailingService;
+        this.emailOutbox = emailOutbox;
+        this.newsletterService = newsletterService;
     }
 
     @PostMapping("/subscribe")
@@ -33,4 +46,41 @@ public class MailingController {
             return ResponseEntity.badRequest().body(Map.of("error", "Invalid verification token"));
         }
     }
+
+//    delivery state of outgoing emails, for admins
+    @GetMapping("/outbox")
+    public ResponseEntity<EmailOutboxStatsDTO> getOutboxStats(){
+        return ResponseEntity.ok(emailOutbox.getStats());
+    }
+
+//    send a newsletter to every verified subscriber, runs in the background
+    @PostMapping("/campaigns")
+    public ResponseEntity<NewsletterCampaign> startCampaign(@RequestBody @Valid NewsletterRequestDTO request){
+        return ResponseEntity.accepted().body(newsletterService.startCampaign(request));
+    }
+
+//    progress of a campaign
+    @GetMapping("/campaigns/{campaignId}")
+    public ResponseEntity<NewsletterCampaign> getCampaign(@PathVariable Long campaignId){
+        return newsletterService.getCampaign(campaignId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+//    carry on with a failed campaign from the last subscriber it recorded
+    @PostMapping("/campaigns/{campaignId}/resume")
+    public ResponseEntity<NewsletterCampaign> resumeCampaign(@PathVariable Long campaignId){
+        return ResponseEntity.accepted().body(newsletterService.resumeCampaign(campaignId));
+    }
+
+//    per subscriber outcome of a campaign, FAILED shows who didn't get it
+    @GetMapping("/campaigns/{campaignId}/deliveries")
+    public ResponseEntity<PaginatedResponse<NewsletterDelivery>> getDeliveries(
+            @PathVariable Long campaignId,
+            @RequestParam(value = "status", required = false, defaultValue = "FAILED") String status,
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+            @RequestParam(value = "size", required = false, defaultValue = "50") int size){
+        Page<NewsletterDelivery> deliveries = newsletterService.getDeliveries(campaignId, status, PageRequest.of(page, size));
+        return ResponseEntity.ok(new PaginatedResponse<>(deliveries.getContent(), deliveries.getTotalPages(), deliveries.getTotalElements()));
+    }
 }
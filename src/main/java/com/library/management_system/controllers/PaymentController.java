@@ -1,5 +1,6 @@
 package com.library.management_system.controllers;
 
+import com.library.management_system.DTOs.PaginatedResponse;
 import com.library.management_system.DTOs.PaymentRequestDto;
 import com.library.management_system.DTOs.PaymentResponseDto;
 import com.library.management_system.DTOs.TransactionResponseDto;
@@ -7,6 +8,7 @@ import com.library.management_system.services.PaymentService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
 
@@ -14,6 +16,8 @@ import java.util.List;
 @RequestMapping("/api/payments")
 public class PaymentController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final PaymentService paymentService;
 
     public PaymentController(PaymentService paymentService) {
@@ -34,6 +38,17 @@ public class PaymentController {
         return new ResponseEntity<>(transactions, HttpStatus.OK);
     }
 
+//    same history a page at a time, pass the nextCursor of the previous page to continue
+    @GetMapping("/transactions/page")
+    public ResponseEntity<PaginatedResponse<TransactionResponseDto>> getTransactionHistoryPage(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false, defaultValue = "20") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return ResponseEntity.ok(paymentService.getTransactionHistory(cursor, size));
+    }
+
 //    this route will let the user know if they have access to a book by returning true or false
     @GetMapping("/access/{bookId}")
     public ResponseEntity<Boolean> checkBookAccess(@PathVariable Long bookId) {
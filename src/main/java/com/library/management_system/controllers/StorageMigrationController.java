@@ -0,0 +1,32 @@
+package com.library.management_system.controllers;
+
+import com.library.management_system.DTOs.StorageMigrationDTO;
+import com.library.management_system.services.StorageMigrationService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/books/storage/migration")
+public class StorageMigrationController {
+
+    private final StorageMigrationService migrationService;
+
+    public StorageMigrationController(StorageMigrationService migrationService) {
+        this.migrationService = migrationService;
+    }
+
+    //    move the flat upload directories into the sharded layout, runs in the background
+    @PostMapping
+    public ResponseEntity<StorageMigrationDTO> startMigration() {
+        return ResponseEntity.accepted().body(migrationService.start());
+    }
+
+    //    progress of the current or last run
+    @GetMapping
+    public ResponseEntity<StorageMigrationDTO> getMigration() {
+        return ResponseEntity.ok(migrationService.getStatus());
+    }
+}
@@ -1,6 +1,6 @@
 package com.library.management_system.controllers;
 
-import com.library.management_system.services.PaymentService;
+import com.library.management_system.services.WebhookInbox;
 import com.stripe.exception.SignatureVerificationException;
 import com.stripe.model.Event;
 import com.stripe.net.Webhook;
@@ -19,13 +19,13 @@ import java.util.stream.Collectors;
 //@RequestMapping("/api")
 @Slf4j
 public class StripeWebhookController {
-    private final PaymentService paymentService;
+    private final WebhookInbox webhookInbox;
     private final String webhookSecret;
 
     public StripeWebhookController(
-            PaymentService paymentService,
+            WebhookInbox webhookInbox,
             @Value("${stripe.webhook.secret}") String webhookSecret) {
-        this.paymentService = paymentService;
+        this.webhookInbox = webhookInbox;
         this.webhookSecret = webhookSecret;
     }
 
@@ -36,10 +36,10 @@ public class StripeWebhookController {
 
         try {
             Event event = Webhook.constructEvent(payload, sigHeader, webhookSecret);
-            paymentService.capturePayment(event);
+            // stored for the webhook workers, the payment itself is applied after we answered
+            webhookInbox.accept(event, payload);
 
-
-            // Always return 200 so Stripe knows you accepted it
+            // Always return 200 so Stripe knows you accepted it, a redelivery included
             return ResponseEntity.ok("Webhook received");
         } catch (SignatureVerificationException e) {
             log.error("Webhook signature verification failed", e);
@@ -1,15 +1,19 @@
 package com.library.management_system.controllers;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
 import com.library.management_system.DTOs.*;
 import com.library.management_system.services.FileStorageService;
+import com.library.management_system.services.HotImageCache;
 import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -24,10 +28,13 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 
 import com.library.management_system.services.UserService;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -36,10 +43,12 @@ import org.springframework.web.multipart.MultipartFile;
 public class UserController {
     private UserService userService;
     private final FileStorageService fileStorageService;
+    private final HotImageCache hotImageCache;
 
-    public UserController(UserService userService, FileStorageService fileStorageService) {
+    public UserController(UserService userService, FileStorageService fileStorageService, HotImageCache hotImageCache) {
         this.fileStorageService= fileStorageService;
         this.userService = userService;
+        this.hotImageCache = hotImageCache;
     }
 
     //    --------- SIGNUP USER --------
@@ -125,37 +134,46 @@ public ResponseEntity<UserProfileResponseDTO> uploadProfilePicture(
         @AuthenticationPrincipal Jwt jwt,
         @RequestParam("image") MultipartFile imageFile) {
     String email = jwt.getClaim("email");
-    String imageUrl = userService.uploadProfilePicture(email, imageFile);
-
-    ProfileUpdateRequestDTO updateRequest = new ProfileUpdateRequestDTO(
-            null,
-            null,
-            null,
-            null,
-            imageUrl,
-            null,
-            null
-    );
-
-    UserProfileResponseDTO updatedProfile = userService.updateUserProfile(email, updateRequest);
+    UserProfileResponseDTO updatedProfile = userService.uploadProfilePicture(email, imageFile);
     return ResponseEntity.ok(updatedProfile);
 }
 
 //get profile picture
     @GetMapping("/profile/picture")
     public ResponseEntity<Resource> getProfilePicture(
-            @AuthenticationPrincipal Jwt jwt) {
+            @AuthenticationPrincipal Jwt jwt, WebRequest webRequest) {
         String email = jwt.getClaim("email");
         Resource imageResource = userService.getProfileImage(email);
 
         String filename = imageResource.getFilename();
         String contentType = fileStorageService.determineContentType(filename);
 
+        // every upload gets a new file name, so the name is enough to tell versions apart
+        String etag = "\"" + filename + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_TYPE, contentType)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(etag)
                 .body(imageResource);
     }
 
+//    versioned profile picture (profilePictureUrl of the profile), never changes under its name so the
+//    browser keeps it for a year. only the owner's own pictures, checked on the name without a database lookup
+    @GetMapping("/profile/picture/v/{name}")
+    public void getVersionedProfilePicture(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable String name,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Path file = userService.getProfileImageVersion(jwt.getClaim("email"), name);
+        hotImageCache.serveImmutable(file, fileStorageService.determineContentType(name), "\"" + name + "\"", false,
+                new ServletWebRequest(request, response));
+    }
+
 
     // -------- DELETE Profile Picture --------
     @DeleteMapping("/profile/picture")
@@ -0,0 +1,34 @@
+package com.library.management_system.migrations;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// The blurred cover shown while the real one loads, see CoverImageService.
+// Written in java for the same reason as V2__HotPathIndexes: a dev database ddl-auto=update already
+// gave the column to is skipped instead of failing, mysql has no ADD COLUMN IF NOT EXISTS.
+@Component
+public class V1_4__BookCoverPlaceholder extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        if (hasColumn(connection, "book", "cover_placeholder")) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE book ADD COLUMN cover_placeholder varchar(4000)");
+        }
+    }
+
+    private static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        try (ResultSet rows = connection.getMetaData().getColumns(connection.getCatalog(), connection.getSchema(), table, column)) {
+            return rows.next();
+        }
+    }
+}
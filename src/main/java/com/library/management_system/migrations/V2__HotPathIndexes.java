@@ -0,0 +1,72 @@
+package com.library.management_system.migrations;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+// Indexes for the lookups the repositories run on every request. Each one names the query it serves,
+// keep them in step when a @Query or derived method changes its WHERE or ORDER BY.
+// Written in java rather than sql so an index ddl-auto=update already made on a dev database
+// is skipped instead of failing the migration; mysql has no CREATE INDEX IF NOT EXISTS.
+// Spring Boot hands JavaMigration beans to Flyway, so being a @Component is enough to run it.
+@Component
+public class V2__HotPathIndexes extends BaseJavaMigration {
+
+    record IndexDefinition(String table, String name, String columns) {}
+
+    static final List<IndexDefinition> INDEXES = List.of(
+            // BookRepository.findNewest / findNewestAfter, and the offset listing sorted by createdAt
+            new IndexDefinition("book", "idx_book_created_at", "created_at, id"),
+            // BookRepository.findByGenre / findByGenreOrderedByTitle / findByGenreAfter
+            new IndexDefinition("book", "idx_book_genre_title", "genre, title, id"),
+            // BookAccessRepository.findActiveAccess / findActiveEndDates
+            new IndexDefinition("book_access", "idx_book_access_user_book_end", "user_id, book_id, end_date"),
+            // TransactionRepository.findHistory / findHistoryAfter / countAllTransations
+            new IndexDefinition("transactions", "idx_transactions_user_date", "user_id, transaction_date, id"),
+            // TransactionRepository.findByStripePaymentIntentId, every stripe webhook
+            new IndexDefinition("transactions", "idx_transactions_stripe_intent", "stripe_payment_intent_id"),
+            // UserRepository.findByVerificationToken / findByResetToken
+            new IndexDefinition("users", "idx_users_verification_token", "verification_token"),
+            new IndexDefinition("users", "idx_users_reset_token", "reset_token"),
+            // MailingRepository.findByVerificationToken / findByEmail
+            new IndexDefinition("email_subscribers", "idx_email_subscribers_verification_token", "verification_token"),
+            new IndexDefinition("email_subscribers", "idx_email_subscribers_email", "email"),
+            // BookImportErrorRepository.findByJobIdOrderByRowNumberAsc
+            new IndexDefinition("book_import_errors", "idx_book_import_errors_job_row", "job_id, manifest_row"),
+            // UploadSessionRepository.findByStatusAndExpiresAtBefore
+            new IndexDefinition("upload_sessions", "idx_upload_sessions_status_expires", "status, expires_at"),
+            // FileTombstoneRepository.findByDueAtBeforeOrderByDueAtAsc
+            new IndexDefinition("file_tombstones", "idx_file_tombstones_due_at", "due_at")
+    );
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            for (IndexDefinition index : INDEXES) {
+                if (!exists(connection, index)) {
+                    statement.execute("CREATE INDEX " + index.name() + " ON " + index.table() + " (" + index.columns() + ")");
+                }
+            }
+        }
+    }
+
+    private static boolean exists(Connection connection, IndexDefinition index) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rows = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), index.table(), false, true)) {
+            while (rows.next()) {
+                if (index.name().equalsIgnoreCase(rows.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -39,6 +39,10 @@ public class Book {
     @Column(name = "cover_image_path")
     private String coverImagePath;
 
+    // tiny blurred cover as a data URI, shown while the real cover loads
+    @Column(name = "cover_placeholder", length = 4000)
+    private String coverPlaceholder;
+
     @Column(name="price_per_month", nullable = false)
     private BigDecimal pricePerMonth;
 
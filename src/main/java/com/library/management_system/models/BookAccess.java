@@ -8,7 +8,8 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "book_access")
+// the index serves both the per user/book lookup and loading all of a user's grants
+@Table(name = "book_access", indexes = @Index(name = "idx_book_access_user_book_end", columnList = "user_id, book_id, end_date"))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -0,0 +1,29 @@
+package com.library.management_system.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// why a single manifest row could not be imported
+@Entity
+@Table(name = "book_import_errors")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookImportError {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    // 1-based position of the row in the manifest
+    @Column(name = "manifest_row", nullable = false)
+    private int rowNumber;
+
+    @Column(length = 1000)
+    private String message;
+}
@@ -0,0 +1,51 @@
+package com.library.management_system.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// progress of one bulk catalog import, polled by admins through /api/books/import/{id}
+@Entity
+@Table(name = "book_import_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookImportJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "requested_by")
+    private String requestedBy;
+
+    // PENDING, PROCESSING, COMPLETED or FAILED, same vocabulary as the report jobs
+    private String status;
+
+    @Column(name = "total_rows")
+    private int totalRows;
+
+    @Column(name = "processed_rows")
+    private int processedRows;
+
+    @Column(name = "imported_rows")
+    private int importedRows;
+
+    @Column(name = "failed_rows")
+    private int failedRows;
+
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,36 @@
+package com.library.management_system.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// a stored file a request let go of, StorageReconciler deletes it once it is due.
+// deleting later keeps file system work out of requests and lets streams already reading the file finish
+@Entity
+@Table(name = "file_tombstones", indexes = @Index(name = "idx_file_tombstones_due_at", columnList = "due_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileTombstone {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_path", nullable = false, length = 1024)
+    private String filePath;
+
+    @Column(name = "due_at", nullable = false)
+    private LocalDateTime dueAt;
+
+    private int attempts;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
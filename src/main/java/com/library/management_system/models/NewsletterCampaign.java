@@ -0,0 +1,64 @@
+package com.library.management_system.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// one newsletter sent to the verified mailing list, polled by admins through /api/mailing/campaigns/{id}.
+// lastSubscriberId is how far it got, a resumed campaign carries on after it
+@Entity
+@Table(name = "newsletter_campaigns")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NewsletterCampaign {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 500)
+    private String subject;
+
+    // freemarker html, ${email} is the recipient's address
+    @Column(nullable = false, length = 1048576)
+    private String template;
+
+    // PENDING, PROCESSING, COMPLETED or FAILED, same vocabulary as the import jobs
+    @Column(nullable = false)
+    private String status;
+
+    @Column(name = "total_recipients")
+    private long totalRecipients;
+
+    @Column(name = "sent_count")
+    private long sentCount;
+
+    @Column(name = "failed_count")
+    private long failedCount;
+
+    @Column(name = "last_subscriber_id")
+    private long lastSubscriberId;
+
+    @Column(name = "requested_by")
+    private String requestedBy;
+
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    // a PROCESSING campaign whose lease ran out lost its sender and is picked up again
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+}
@@ -0,0 +1,41 @@
+package com.library.management_system.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// what happened to a campaign's email to one subscriber, SENT or FAILED
+@Entity
+@Table(name = "newsletter_deliveries",
+        uniqueConstraints = @UniqueConstraint(name = "uk_newsletter_deliveries_subscriber", columnNames = {"campaign_id", "subscriber_id"}),
+        indexes = @Index(name = "idx_newsletter_deliveries_status", columnList = "campaign_id, status"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NewsletterDelivery {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "campaign_id", nullable = false)
+    private Long campaignId;
+
+    @Column(name = "subscriber_id", nullable = false)
+    private Long subscriberId;
+
+    @Column(nullable = false)
+    private String email;
+
+    @Column(nullable = false)
+    private String status;
+
+    @Column(length = 500)
+    private String error;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
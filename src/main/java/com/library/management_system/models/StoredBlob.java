@@ -0,0 +1,46 @@
+package com.library.management_system.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// one stored pdf or cover image, named by the SHA-256 of its bytes.
+// refCount is how many book columns point at the file, the file is removed when it drops to zero
+@Entity
+@Table(name = "stored_blobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredBlob {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(name = "file_path", nullable = false)
+    private String filePath;
+
+    private long size;
+
+    // pages of a pdf, 0 for images
+    @Column(name = "page_count")
+    private Integer pageCount;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    // size of the recompressed copy readers get, equal to size when optimizing did not pay off
+    // and null until PdfOptimizationService has looked at the pdf
+    @Column(name = "optimized_size")
+    private Long optimizedSize;
+
+    // last time a reference was added, the reconciler leaves recently used blobs alone
+    @Column(name = "last_referenced_at")
+    private LocalDateTime lastReferencedAt;
+}
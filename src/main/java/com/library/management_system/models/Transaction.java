@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "transactions")
+// history pages seek on (user_id, transaction_date, id)
+@Table(name = "transactions", indexes = @Index(name = "idx_transactions_user_date", columnList = "user_id, transaction_date, id"))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -0,0 +1,45 @@
+package com.library.management_system.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// a verified stripe event waiting in the inbox, keyed by stripe's event id so a redelivery is a no-op.
+// status is PENDING until WebhookInbox has applied it, then PROCESSED, or FAILED once it gave up
+@Entity
+@Table(name = "webhook_events", indexes = @Index(name = "idx_webhook_events_due", columnList = "status, next_attempt_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebhookEvent {
+
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private String type;
+
+    // raw body as stripe signed it, mediumtext on mysql
+    @Column(nullable = false, length = 1048576)
+    private String payload;
+
+    @Column(nullable = false)
+    private String status;
+
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "received_at")
+    private LocalDateTime receivedAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
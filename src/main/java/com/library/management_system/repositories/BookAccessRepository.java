@@ -6,11 +6,23 @@ import com.library.management_system.models.BookAccess;
 import com.library.management_system.models.UserModel;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 public interface BookAccessRepository extends JpaRepository<BookAccess, Long> {
     @Query("SELECT ba FROM BookAccess ba WHERE ba.user = :user AND ba.book = :book AND :currentDate BETWEEN ba.startDate AND ba.endDate")
     Optional<BookAccess> findActiveAccess(UserModel user, Book book, LocalDateTime currentDate);
+
+//    book id and latest end date of every grant a user holds right now, for EntitlementCache
+    @Query("SELECT ba.book.id, MAX(ba.endDate) FROM BookAccess ba WHERE ba.user.id = :userId " +
+            "AND ba.startDate <= :currentDate AND ba.endDate >= :currentDate GROUP BY ba.book.id")
+    List<Object[]> findActiveEndDates(@Param("userId") UUID userId, @Param("currentDate") LocalDateTime currentDate);
+
+//    number of access grants per book id, used as popularity
+    @Query("SELECT ba.book.id, COUNT(ba) FROM BookAccess ba GROUP BY ba.book.id")
+    List<Object[]> countAccessesByBook();
 }
@@ -0,0 +1,10 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.BookImportError;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface BookImportErrorRepository extends JpaRepository<BookImportError, Long> {
+    Page<BookImportError> findByJobIdOrderByRowNumberAsc(Long jobId, Pageable pageable);
+}
@@ -0,0 +1,12 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.BookImportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface BookImportJobRepository extends JpaRepository<BookImportJob, Long> {
+
+    List<BookImportJob> findByStatusIn(Collection<String> statuses);
+}
@@ -1,39 +1,92 @@
 package com.library.management_system.repositories;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.library.management_system.DTOs.BookResponseDTO;
 import com.library.management_system.models.Book;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 
 public interface BookRepository extends JpaRepository<Book, Long> {
 
-    @Query(value = "SELECT * FROM book WHERE " +
-            "LOWER(title) LIKE LOWER(CONCAT('%', :searchWord, '%')) OR " +
-            "LOWER(author) LIKE LOWER(CONCAT('%', :searchWord, '%')) OR " +
-            "LOWER(genre) LIKE LOWER(CONCAT('%', :searchWord, '%')) OR " +
-            "LOWER(isbn) LIKE LOWER(CONCAT('%', :searchWord, '%'))",
-            nativeQuery = true)
-    Page<Book> primarySearch(@Param("searchWord") String searchWord, Pageable pageable);
-
-    @Query(value = "SELECT * FROM book WHERE " +
-            "SOUNDEX(title) = SOUNDEX(:searchWord) OR " +
-            "SOUNDEX(author) = SOUNDEX(:searchWord) OR " +
-            "SOUNDEX(genre) = SOUNDEX(:searchWord) OR " +
-            "LOWER(title) LIKE LOWER(CONCAT('%', :searchWord, '%')) OR " +
-            "LOWER(author) LIKE LOWER(CONCAT('%', :searchWord, '%')) OR " +
-            "LOWER(genre) LIKE LOWER(CONCAT('%', :searchWord, '%'))",
-            nativeQuery = true)
-    Page<Book> recommendationSearch(@Param("searchWord") String searchWord, Pageable pageable);
+//    listings select straight into the response DTO, no managed entities on read paths.
+//    keep the argument order in step with BookResponseDTO and BookService.convertToDto
+    String BOOK_DTO = "new com.library.management_system.DTOs.BookResponseDTO(" +
+            "b.id, b.title, b.author, b.isbn, b.description, b.pdfPath, b.coverImagePath, b.coverPlaceholder, " +
+            "b.genre, b.publishedDate, b.pricePerMonth, b.accessType, b.numberOfPages, b.createdAt)";
+
+    String SEARCH_FILTER = "LOWER(b.title) LIKE LOWER(CONCAT('%', :searchWord, '%')) OR " +
+            "LOWER(b.author) LIKE LOWER(CONCAT('%', :searchWord, '%')) OR " +
+            "LOWER(b.genre) LIKE LOWER(CONCAT('%', :searchWord, '%')) OR " +
+            "LOWER(b.isbn) LIKE LOWER(CONCAT('%', :searchWord, '%'))";
+
+    @Query(value = "SELECT " + BOOK_DTO + " FROM Book b WHERE " + SEARCH_FILTER,
+            countQuery = "SELECT COUNT(b) FROM Book b WHERE " + SEARCH_FILTER)
+    Page<BookResponseDTO> primarySearch(@Param("searchWord") String searchWord, Pageable pageable);
+
+//    keyset pages of a search ordered by title, what cursor search answers with while the index is loading
+    @Query("SELECT " + BOOK_DTO + " FROM Book b WHERE (" + SEARCH_FILTER + ") ORDER BY b.title ASC, b.id ASC")
+    List<BookResponseDTO> searchOrderedByTitle(@Param("searchWord") String searchWord, Limit limit);
+
+    @Query("SELECT " + BOOK_DTO + " FROM Book b WHERE (" + SEARCH_FILTER + ") " +
+            "AND (b.title > :title OR (b.title = :title AND b.id > :id)) ORDER BY b.title ASC, b.id ASC")
+    List<BookResponseDTO> searchAfter(@Param("searchWord") String searchWord, @Param("title") String title,
+                                      @Param("id") Long id, Limit limit);
+
+//    all books as DTOs, paged
+    @Query(value = "SELECT " + BOOK_DTO + " FROM Book b",
+            countQuery = "SELECT COUNT(b) FROM Book b")
+    Page<BookResponseDTO> findAllAsDto(Pageable pageable);
 
 //    find book by genre
-    Page<Book> findByGenre(String genre, Pageable pageable);
+    @Query(value = "SELECT " + BOOK_DTO + " FROM Book b WHERE b.genre = :genre",
+            countQuery = "SELECT COUNT(b) FROM Book b WHERE b.genre = :genre")
+    Page<BookResponseDTO> findByGenre(@Param("genre") String genre, Pageable pageable);
+
+//    keyset pages of the catalog, newest first, no offset and no count query.
+//    old rows without created_at sort after every dated one (mysql puts NULLs last in DESC order),
+//    newest id first, so they stay reachable from the cursor
+    @Query("SELECT " + BOOK_DTO + " FROM Book b ORDER BY b.createdAt DESC, b.id DESC")
+    List<BookResponseDTO> findNewest(Limit limit);
+
+    @Query("SELECT " + BOOK_DTO + " FROM Book b WHERE b.createdAt < :createdAt OR (b.createdAt = :createdAt AND b.id < :id) " +
+            "OR b.createdAt IS NULL ORDER BY b.createdAt DESC, b.id DESC")
+    List<BookResponseDTO> findNewestAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Limit limit);
+
+//    the next page once the cursor is past the dated books
+    @Query("SELECT " + BOOK_DTO + " FROM Book b WHERE b.createdAt IS NULL AND b.id < :id ORDER BY b.id DESC")
+    List<BookResponseDTO> findUndatedAfter(@Param("id") Long id, Limit limit);
+
+//    keyset pages of a genre, ordered by title
+    @Query("SELECT " + BOOK_DTO + " FROM Book b WHERE b.genre = :genre ORDER BY b.title ASC, b.id ASC")
+    List<BookResponseDTO> findByGenreOrderedByTitle(@Param("genre") String genre, Limit limit);
+
+    @Query("SELECT " + BOOK_DTO + " FROM Book b WHERE b.genre = :genre AND (b.title > :title OR (b.title = :title AND b.id > :id)) " +
+            "ORDER BY b.title ASC, b.id ASC")
+    List<BookResponseDTO> findByGenreAfter(@Param("genre") String genre, @Param("title") String title, @Param("id") Long id, Limit limit);
 
     long count();
-}
 
+//    books written outside BookService, to register them with the search index and cache
+    @Query("SELECT " + BOOK_DTO + " FROM Book b WHERE b.id IN :ids")
+    List<BookResponseDTO> findAllAsDtoByIdIn(@Param("ids") Collection<Long> ids);
+
+//    books whose cover has no placeholder yet, in id order for the background backfill
+    @Query("SELECT b FROM Book b WHERE b.coverImagePath IS NOT NULL AND b.coverPlaceholder IS NULL AND b.id > :afterId ORDER BY b.id")
+    List<Book> findMissingCoverPlaceholders(@Param("afterId") long afterId, Limit limit);
 
+    @Modifying
+    @Transactional
+    @Query("UPDATE Book b SET b.coverPlaceholder = :placeholder WHERE b.id = :id")
+    int updateCoverPlaceholder(@Param("id") Long id, @Param("placeholder") String placeholder);
+}
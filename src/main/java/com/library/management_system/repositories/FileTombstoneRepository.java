@@ -0,0 +1,19 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.FileTombstone;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface FileTombstoneRepository extends JpaRepository<FileTombstone, Long> {
+    List<FileTombstone> findByDueAtBeforeOrderByDueAtAsc(LocalDateTime time, Limit limit);
+
+//    which of these files still have a deletion pending, their reference is not released yet
+    @Query("SELECT t.filePath FROM FileTombstone t WHERE t.filePath IN :paths")
+    List<String> findPendingPaths(@Param("paths") Collection<String> paths);
+}
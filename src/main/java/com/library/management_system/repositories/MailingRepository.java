@@ -1,12 +1,22 @@
 package com.library.management_system.repositories;
 
 import com.library.management_system.models.MailingList;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 
 public interface MailingRepository extends JpaRepository<MailingList, Long> {
     Optional<MailingList> findByEmail(String email);
     Optional<MailingList> findByVerificationToken(String token);
+
+//    confirmed subscribers (their token is cleared on verification) in id order, newsletters page through them
+    @Query("SELECT m FROM MailingList m WHERE m.verificationToken IS NULL AND m.id > :afterId ORDER BY m.id")
+    List<MailingList> findVerifiedAfter(@Param("afterId") long afterId, Limit limit);
+
+    long countByVerificationTokenIsNull();
 }
@@ -0,0 +1,40 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.NewsletterCampaign;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface NewsletterCampaignRepository extends JpaRepository<NewsletterCampaign, Long> {
+
+//    take a campaign to send, only one sender wins and a running one is left alone until its lease is over
+    @Modifying
+    @Transactional
+    @Query("UPDATE NewsletterCampaign c SET c.status = 'PROCESSING', c.leaseUntil = :leaseUntil, c.errorMessage = NULL, " +
+            "c.startedAt = COALESCE(c.startedAt, :now) WHERE c.id = :id " +
+            "AND (c.status IN ('PENDING', 'FAILED') OR (c.status = 'PROCESSING' AND c.leaseUntil < :now))")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+//    campaigns whose sender went away mid run
+    @Query("SELECT c.id FROM NewsletterCampaign c WHERE c.status = 'PROCESSING' AND c.leaseUntil < :now")
+    List<Long> findStalled(@Param("now") LocalDateTime now);
+
+//    move the cursor past a page that went out and add its counts
+    @Modifying
+    @Query("UPDATE NewsletterCampaign c SET c.lastSubscriberId = :lastSubscriberId, c.sentCount = c.sentCount + :sent, " +
+            "c.failedCount = c.failedCount + :failed, c.leaseUntil = :leaseUntil WHERE c.id = :id")
+    int recordPage(@Param("id") Long id, @Param("lastSubscriberId") long lastSubscriberId, @Param("sent") long sent,
+                   @Param("failed") long failed, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE NewsletterCampaign c SET c.status = :status, c.errorMessage = :errorMessage, c.completedAt = :completedAt, " +
+            "c.leaseUntil = NULL WHERE c.id = :id")
+    int finish(@Param("id") Long id, @Param("status") String status, @Param("errorMessage") String errorMessage,
+               @Param("completedAt") LocalDateTime completedAt);
+}
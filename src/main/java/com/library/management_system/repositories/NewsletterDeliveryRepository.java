@@ -0,0 +1,10 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.NewsletterDelivery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface NewsletterDeliveryRepository extends JpaRepository<NewsletterDelivery, Long> {
+    Page<NewsletterDelivery> findByCampaignIdAndStatusOrderByIdAsc(Long campaignId, String status, Pageable pageable);
+}
@@ -0,0 +1,49 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.OutboxEmail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxEmailRepository extends JpaRepository<OutboxEmail, Long> {
+
+//    due emails, rows another dispatcher has locked are skipped instead of waited on
+    @Query(value = "SELECT * FROM email_outbox WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+            "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<OutboxEmail> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+//    hide claimed emails from other dispatchers until the lease runs out
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.attempts = e.attempts + 1, e.nextAttemptAt = :leaseUntil WHERE e.id IN :ids")
+    int claim(@Param("ids") Collection<Long> ids, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEmail e SET e.status = 'SENT', e.sentAt = :sentAt, e.lastError = NULL WHERE e.id IN :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEmail e SET e.status = :status, e.nextAttemptAt = :nextAttemptAt, e.lastError = :lastError WHERE e.id = :id")
+    int markFailedAttempt(@Param("id") Long id, @Param("status") String status,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError);
+
+//    number of emails per status
+    @Query("SELECT e.status, COUNT(e) FROM OutboxEmail e GROUP BY e.status")
+    List<Object[]> countByStatus();
+
+    @Query("SELECT MIN(e.createdAt) FROM OutboxEmail e WHERE e.status = 'PENDING'")
+    LocalDateTime findOldestPending();
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OutboxEmail e WHERE e.status = 'SENT' AND e.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,64 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.StoredBlob;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+// reference counting is done with single UPDATE/DELETE statements so concurrent uploads of the
+// same bytes can't lose a count; the row lock they take is held until the caller's transaction ends
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+
+    @Modifying
+    @Query("UPDATE StoredBlob b SET b.refCount = b.refCount + 1, b.lastReferencedAt = CURRENT_TIMESTAMP WHERE b.hash = :hash")
+    int incrementReferences(@Param("hash") String hash);
+
+    @Modifying
+    @Query("UPDATE StoredBlob b SET b.refCount = b.refCount - 1 WHERE b.hash = :hash AND b.refCount > 0")
+    int decrementReferences(@Param("hash") String hash);
+
+    @Modifying
+    @Query("DELETE FROM StoredBlob b WHERE b.hash = :hash AND b.refCount = 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    // plain insert, save() would merge and hide a concurrent insert of the same hash
+    @Modifying
+    @Query(value = "INSERT INTO stored_blobs (hash, file_path, size, page_count, ref_count, created_at, last_referenced_at) " +
+            "VALUES (:hash, :filePath, :size, :pageCount, 1, :createdAt, :createdAt)",
+            nativeQuery = true)
+    int insert(@Param("hash") String hash, @Param("filePath") String filePath, @Param("size") long size,
+               @Param("pageCount") int pageCount, @Param("createdAt") LocalDateTime createdAt);
+
+//    blobs nobody added a reference to since the given time, in hash order for the reconciler
+    @Query("SELECT b FROM StoredBlob b WHERE b.hash > :afterHash AND COALESCE(b.lastReferencedAt, b.createdAt) < :before ORDER BY b.hash")
+    List<StoredBlob> findIdleAfter(@Param("afterHash") String afterHash, @Param("before") LocalDateTime before, Limit limit);
+
+//    pdfs PdfOptimizationService has not looked at yet, in hash order for the background backfill
+    @Query("SELECT b FROM StoredBlob b WHERE b.hash > :afterHash AND b.optimizedSize IS NULL AND b.pageCount > 0 ORDER BY b.hash")
+    List<StoredBlob> findUnoptimizedPdfs(@Param("afterHash") String afterHash, Limit limit);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE StoredBlob b SET b.optimizedSize = :optimizedSize WHERE b.hash = :hash")
+    int recordOptimizedSize(@Param("hash") String hash, @Param("optimizedSize") long optimizedSize);
+
+//    which of these hashes have a row
+    @Query("SELECT b.hash FROM StoredBlob b WHERE b.hash IN :hashes")
+    List<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+//    correct a count the reconciler found too high, only if nobody changed it meanwhile
+    @Modifying
+    @Query("UPDATE StoredBlob b SET b.refCount = :actual WHERE b.hash = :hash AND b.refCount = :expected")
+    int correctReferences(@Param("hash") String hash, @Param("expected") int expected, @Param("actual") int actual);
+
+    @Modifying
+    @Query("DELETE FROM StoredBlob b WHERE b.hash = :hash AND b.refCount = :expected")
+    int deleteIfCountIs(@Param("hash") String hash, @Param("expected") int expected);
+}
@@ -1,21 +1,47 @@
 package com.library.management_system.repositories;
 
 
+import com.library.management_system.DTOs.TransactionResponseDto;
 import com.library.management_system.models.Transaction;
 import com.library.management_system.models.UserModel;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface TransactionRepository extends JpaRepository<Transaction, UUID> {
+    // history row with the book title and the reader's currently active access window in one query,
+    // grouped so several overlapping grants for a book don't repeat the transaction
+    String HISTORY_DTO = "new com.library.management_system.DTOs.TransactionResponseDto(" +
+            "t.id, b.title, t.amount, t.currency, t.durationDays, t.paymentStatus, t.transactionDate, " +
+            "MIN(ba.startDate), MAX(ba.endDate)) " +
+            "FROM Transaction t JOIN t.book b " +
+            "LEFT JOIN BookAccess ba ON ba.user = t.user AND ba.book = b " +
+            "AND ba.startDate <= :currentDate AND ba.endDate >= :currentDate ";
+    String HISTORY_GROUP_ORDER = "GROUP BY t.id, b.title, t.amount, t.currency, t.durationDays, t.paymentStatus, t.transactionDate " +
+            "ORDER BY t.transactionDate DESC, t.id DESC";
+
     @Query("SELECT t FROM Transaction t JOIN FETCH t.user WHERE t.stripePaymentIntentId = :stripePaymentIntentId")
     Optional<Transaction> findByStripePaymentIntentId(String stripePaymentIntentId);
     List<Transaction> findByUser(UserModel user);
 
+//    keyset pages of a user's history, newest first
+    @Query("SELECT " + HISTORY_DTO + "WHERE t.user.id = :userId " + HISTORY_GROUP_ORDER)
+    List<TransactionResponseDto> findHistory(@Param("userId") UUID userId, @Param("currentDate") LocalDateTime currentDate,
+                                             Limit limit);
+
+    @Query("SELECT " + HISTORY_DTO + "WHERE t.user.id = :userId " +
+            "AND (t.transactionDate < :transactionDate OR (t.transactionDate = :transactionDate AND t.id < :id)) " +
+            HISTORY_GROUP_ORDER)
+    List<TransactionResponseDto> findHistoryAfter(@Param("userId") UUID userId, @Param("currentDate") LocalDateTime currentDate,
+                                                  @Param("transactionDate") LocalDateTime transactionDate, @Param("id") UUID id,
+                                                  Limit limit);
+
 
     long count();
 
@@ -0,0 +1,22 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.UploadChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface UploadChunkRepository extends JpaRepository<UploadChunk, Long> {
+    @Query("SELECT c.chunkIndex FROM UploadChunk c WHERE c.sessionId = :sessionId")
+    List<Integer> findChunkIndexes(@Param("sessionId") String sessionId);
+
+    boolean existsBySessionIdAndChunkIndex(String sessionId, int chunkIndex);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM UploadChunk c WHERE c.sessionId = :sessionId")
+    void deleteBySessionId(@Param("sessionId") String sessionId);
+}
@@ -0,0 +1,21 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    List<UploadSession> findByStatusAndExpiresAtBefore(String status, LocalDateTime time);
+
+//    move a session between states only if nobody else did first, returns 0 when it lost the race
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.status = :to WHERE s.id = :id AND s.status = :from")
+    int changeStatus(@Param("id") String id, @Param("from") String from, @Param("to") String to);
+}
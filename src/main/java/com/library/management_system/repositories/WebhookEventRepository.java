@@ -0,0 +1,45 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.models.WebhookEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface WebhookEventRepository extends JpaRepository<WebhookEvent, String> {
+
+    // returns 0 when an event with this id is already in the inbox, stripe delivers at least once
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO webhook_events (id, type, payload, status, attempts, next_attempt_at, received_at) " +
+            "VALUES (:id, :type, :payload, 'PENDING', 0, :receivedAt, :receivedAt)",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("id") String id, @Param("type") String type, @Param("payload") String payload,
+                       @Param("receivedAt") LocalDateTime receivedAt);
+
+//    due events, rows another worker has locked are skipped instead of waited on
+    @Query(value = "SELECT * FROM webhook_events WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+            "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<WebhookEvent> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+//    hide claimed events from other workers until the lease runs out, a crashed worker's events come back then
+    @Modifying
+    @Query("UPDATE WebhookEvent e SET e.attempts = e.attempts + 1, e.nextAttemptAt = :leaseUntil WHERE e.id IN :ids")
+    int claim(@Param("ids") Collection<String> ids, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Modifying
+    @Query("UPDATE WebhookEvent e SET e.status = 'PROCESSED', e.processedAt = :processedAt, e.lastError = NULL WHERE e.id = :id")
+    int markProcessed(@Param("id") String id, @Param("processedAt") LocalDateTime processedAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE WebhookEvent e SET e.status = :status, e.nextAttemptAt = :nextAttemptAt, e.lastError = :lastError WHERE e.id = :id")
+    int markFailedAttempt(@Param("id") String id, @Param("status") String status,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError);
+}
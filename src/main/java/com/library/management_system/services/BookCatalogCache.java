@@ -0,0 +1,55 @@
+package com.library.management_system.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.CacheStatsDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+// Bounded read-through cache of book metadata keyed by id.
+// Caffeine's W-TinyLFU policy keeps the frequently read titles and lets one-off reads fall out.
+// BookService writes through it on create/update and invalidates on delete; the expiry only
+// bounds how stale another instance's copy can get.
+@Component
+public class BookCatalogCache {
+    private final Cache<Long, BookResponseDTO> cache;
+
+    public BookCatalogCache(@Value("${catalog.cache.max-size:10000}") long maxSize,
+                            @Value("${catalog.cache.expire-after-write-minutes:30}") long expireAfterWriteMinutes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(expireAfterWriteMinutes))
+                .recordStats()
+                .build();
+    }
+
+//    cached book, or load it with the given loader; missing books are not cached
+    public Optional<BookResponseDTO> get(Long bookId, Function<Long, Optional<BookResponseDTO>> loader) {
+        return Optional.ofNullable(cache.get(bookId, id -> loader.apply(id).orElse(null)));
+    }
+
+    public void put(BookResponseDTO book) {
+        cache.put(book.id(), book);
+    }
+
+    public void invalidate(Long bookId) {
+        cache.invalidate(bookId);
+    }
+
+    public CacheStatsDTO stats() {
+        CacheStats stats = cache.stats();
+        return new CacheStatsDTO(
+                cache.estimatedSize(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                stats.hitRate()
+        );
+    }
+}
@@ -0,0 +1,396 @@
+package com.library.management_system.services;
+
+import com.library.management_system.enums.BookAccessType;
+import com.library.management_system.models.BookImportError;
+import com.library.management_system.models.BookImportJob;
+import com.library.management_system.models.UserModel;
+import com.library.management_system.repositories.BookImportErrorRepository;
+import com.library.management_system.repositories.BookImportJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Bulk catalog import: a manifest (CSV or JSON) plus the PDFs and covers it points to,
+// either uploaded as a zip archive or already sitting in a directory under catalog.import.root.
+// Rows are handled in chunks: files of a chunk are copied and checked in parallel, then the
+// good rows go to the database as one JDBC batch and the bad ones are recorded as import errors.
+@Service
+@Slf4j
+public class BookImportService {
+    private static final String INSERT_BOOK = "INSERT INTO book (title, author, isbn, published_date, description, genre, " +
+            "number_of_pages, pdf_path, cover_image_path, cover_placeholder, price_per_month, access_type, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final BookImportJobRepository jobRepository;
+    private final BookImportErrorRepository errorRepository;
+    private final FileStorageService fileStorageService;
+    private final CoverImageService coverImageService;
+    private final BookService bookService;
+    private final ContactService contactService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor importExecutor;
+    private final ThreadPoolTaskExecutor importFileExecutor;
+    private final Path importRoot;
+    private final int chunkSize;
+
+    public BookImportService(BookImportJobRepository jobRepository,
+                             BookImportErrorRepository errorRepository,
+                             FileStorageService fileStorageService,
+                             CoverImageService coverImageService,
+                             BookService bookService,
+                             ContactService contactService,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             @Qualifier("importExecutor") ThreadPoolTaskExecutor importExecutor,
+                             @Qualifier("importFileExecutor") ThreadPoolTaskExecutor importFileExecutor,
+                             @Value("${catalog.import.root:imports}") String importRoot,
+                             @Value("${catalog.import.chunk-size:500}") int chunkSize) {
+        this.jobRepository = jobRepository;
+        this.errorRepository = errorRepository;
+        this.fileStorageService = fileStorageService;
+        this.coverImageService = coverImageService;
+        this.bookService = bookService;
+        this.contactService = contactService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.importExecutor = importExecutor;
+        this.importFileExecutor = importFileExecutor;
+        this.importRoot = Paths.get(importRoot).toAbsolutePath().normalize();
+        this.chunkSize = chunkSize;
+    }
+
+//    stage the manifest and files, create the job and hand it to the import thread
+    public BookImportJob startImport(MultipartFile manifest, MultipartFile archive, String sourceDirectory) {
+        if (manifest == null || manifest.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Manifest is required");
+        }
+        String manifestName = manifest.getOriginalFilename() == null ? "" : manifest.getOriginalFilename().toLowerCase(Locale.ROOT);
+        if (!manifestName.endsWith(".csv") && !manifestName.endsWith(".json")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Manifest must be a .csv or .json file");
+        }
+        boolean hasArchive = archive != null && !archive.isEmpty();
+        boolean hasDirectory = sourceDirectory != null && !sourceDirectory.isBlank();
+        if (hasArchive == hasDirectory) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Provide either an archive or a source directory");
+        }
+        Path filesDirectory = hasDirectory ? resolveSourceDirectory(sourceDirectory) : null;
+
+        BookImportJob job = new BookImportJob();
+        UserModel user = contactService.getCurrentAuthenticatedUser();
+        job.setRequestedBy(user != null ? user.getEmail() : null);
+        job.setStatus("PENDING");
+        job.setCreatedAt(LocalDateTime.now());
+        job = jobRepository.save(job);
+
+        Path staging = fileStorageService.createImportStagingDirectory("job-" + job.getId());
+        try {
+            Path manifestPath = staging.resolve(manifestName.endsWith(".csv") ? "manifest.csv" : "manifest.json");
+            try (InputStream in = manifest.getInputStream()) {
+                Files.copy(in, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (hasArchive) {
+                filesDirectory = Files.createDirectories(staging.resolve("files"));
+                extractArchive(archive, filesDirectory);
+            }
+
+            Long jobId = job.getId();
+            Path files = filesDirectory;
+            try {
+                importExecutor.execute(() -> runImport(jobId, manifestPath, files, staging));
+            } catch (TaskRejectedException e) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many imports waiting, try again later");
+            }
+            return job;
+        } catch (IOException | RuntimeException e) {
+            fileStorageService.deleteImportStagingDirectory(staging);
+            job.setStatus("FAILED");
+            job.setErrorMessage(truncate(e.getMessage()));
+            job.setCompletedAt(LocalDateTime.now());
+            jobRepository.save(job);
+            if (e instanceof ResponseStatusException statusException) {
+                throw statusException;
+            }
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not stage import: " + e.getMessage());
+        }
+    }
+
+//    jobs run on the in-memory queue of the instance that accepted them, whatever was queued or running
+//    when it stopped will never finish. rows imported before that stay imported
+    @EventListener(ApplicationReadyEvent.class)
+    public void failInterruptedImports() {
+        for (BookImportJob job : jobRepository.findByStatusIn(List.of("PENDING", "PROCESSING"))) {
+            log.warn("Import job {} was interrupted by a restart after {} of {} rows", job.getId(), job.getProcessedRows(), job.getTotalRows());
+            job.setStatus("FAILED");
+            job.setErrorMessage("Interrupted by a restart after " + job.getProcessedRows() + " rows, import the remaining rows again");
+            job.setCompletedAt(LocalDateTime.now());
+            jobRepository.save(job);
+            try {
+                fileStorageService.deleteImportStagingDirectory(fileStorageService.importStagingDirectory("job-" + job.getId()));
+            } catch (RuntimeException e) {
+                log.warn("Could not remove the staging directory of import job {}", job.getId(), e);
+            }
+        }
+    }
+
+    public Optional<BookImportJob> getJob(Long jobId) {
+        return jobRepository.findById(jobId);
+    }
+
+    public Page<BookImportError> getErrors(Long jobId, Pageable pageable) {
+        return errorRepository.findByJobIdOrderByRowNumberAsc(jobId, pageable);
+    }
+
+//    the whole import, runs on the import thread
+    void runImport(Long jobId, Path manifest, Path filesDirectory, Path staging) {
+        BookImportJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("Import job not found"));
+        job.setStatus("PROCESSING");
+        job.setStartedAt(LocalDateTime.now());
+        jobRepository.save(job);
+
+        try {
+            List<ImportManifestParser.Row> rows = ImportManifestParser.parse(manifest);
+            job.setTotalRows(rows.size());
+            jobRepository.save(job);
+
+            for (int from = 0; from < rows.size(); from += chunkSize) {
+                List<ImportManifestParser.Row> chunk = rows.subList(from, Math.min(from + chunkSize, rows.size()));
+                importChunk(job, chunk, filesDirectory);
+                jobRepository.save(job);
+            }
+
+            job.setStatus("COMPLETED");
+            log.info("Import job {} finished: {} imported, {} failed", jobId, job.getImportedRows(), job.getFailedRows());
+        } catch (Exception e) {
+            log.error("Import job {} failed", jobId, e);
+            job.setStatus("FAILED");
+            job.setErrorMessage(truncate(e.getMessage()));
+        } finally {
+            fileStorageService.deleteImportStagingDirectory(staging);
+        }
+        job.setCompletedAt(LocalDateTime.now());
+        jobRepository.save(job);
+    }
+
+    private void importChunk(BookImportJob job, List<ImportManifestParser.Row> chunk, Path filesDirectory) {
+        // copy and validate every row of the chunk in parallel
+        List<CompletableFuture<PreparedRow>> futures = chunk.stream()
+                .map(row -> CompletableFuture.supplyAsync(() -> prepare(row, filesDirectory), importFileExecutor))
+                .toList();
+        List<PreparedRow> prepared = futures.stream().map(CompletableFuture::join).toList();
+
+        List<PreparedRow> valid = new ArrayList<>();
+        List<BookImportError> errors = new ArrayList<>();
+        for (PreparedRow row : prepared) {
+            if (row.error() == null) {
+                valid.add(row);
+            } else {
+                errors.add(new BookImportError(null, job.getId(), row.row().rowNumber(), row.error()));
+            }
+        }
+
+        List<Long> ids = List.of();
+        try {
+            // the driver may split a large batch into several statements, the transaction keeps it all or nothing
+            ids = transactionTemplate.execute(status -> insertBatch(valid));
+        } catch (RuntimeException e) {
+            // rolled back, none of the batch's rows made it in and their files can go
+            log.warn("Batch insert failed for import job {}", job.getId(), e);
+            for (PreparedRow row : valid) {
+                deleteStoredFiles(row);
+                errors.add(new BookImportError(null, job.getId(), row.row().rowNumber(), truncate("Database insert failed: " + e.getMessage())));
+            }
+        }
+
+        errorRepository.saveAll(errors);
+        bookService.refreshBooks(ids);
+        job.setProcessedRows(job.getProcessedRows() + chunk.size());
+        job.setImportedRows(job.getImportedRows() + ids.size());
+        job.setFailedRows(job.getFailedRows() + errors.size());
+    }
+
+    private record PreparedRow(ImportManifestParser.Row row, BigDecimal price, int pages,
+                               String pdfPath, String coverPath, String coverPlaceholder, String error) {
+
+        static PreparedRow failed(ImportManifestParser.Row row, String error) {
+            return new PreparedRow(row, null, 0, null, null, null, error);
+        }
+    }
+
+//    validate one row and copy its files into storage
+    private PreparedRow prepare(ImportManifestParser.Row row, Path filesDirectory) {
+        if (row.title() == null) {
+            return PreparedRow.failed(row, "Title is required");
+        }
+        if (row.author() == null) {
+            return PreparedRow.failed(row, "Author is required");
+        }
+        if (row.pdfFile() == null || row.coverFile() == null) {
+            return PreparedRow.failed(row, "Both pdfFile and coverFile are required");
+        }
+
+        BigDecimal price;
+        int pages;
+        try {
+            price = row.pricePerMonth() == null ? BigDecimal.ZERO : new BigDecimal(row.pricePerMonth());
+            pages = row.numberOfPages() == null ? 0 : Integer.parseInt(row.numberOfPages());
+        } catch (NumberFormatException e) {
+            return PreparedRow.failed(row, "pricePerMonth and numberOfPages must be numbers");
+        }
+        if (price.signum() < 0 || pages < 0) {
+            return PreparedRow.failed(row, "pricePerMonth and numberOfPages can't be negative");
+        }
+
+        String pdfPath = null;
+        try {
+            Path pdf = resolveInside(filesDirectory, row.pdfFile());
+            Path cover = resolveInside(filesDirectory, row.coverFile());
+            FileStorageService.StoredPdf storedPdf = fileStorageService.storePdf(pdf);
+            pdfPath = storedPdf.path();
+            String coverPath = fileStorageService.storeCoverImage(cover);
+            String coverPlaceholder = coverImageService.process(coverPath);
+            // the manifest may leave the page count out, the pdf knows it
+            return new PreparedRow(row, price, pages > 0 ? pages : storedPdf.pageCount(), pdfPath, coverPath,
+                    coverPlaceholder, null);
+        } catch (RuntimeException e) {
+            if (pdfPath != null) {
+                fileStorageService.deleteFile(pdfPath);
+            }
+            return PreparedRow.failed(row, truncate(e.getMessage()));
+        }
+    }
+
+//    one multi-row insert for the chunk, ids come back from the auto increment column
+    private List<Long> insertBatch(List<PreparedRow> rows) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_BOOK, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        PreparedRow prepared = rows.get(i);
+                        ImportManifestParser.Row row = prepared.row();
+                        ps.setString(1, row.title());
+                        ps.setString(2, row.author());
+                        ps.setString(3, row.isbn());
+                        ps.setString(4, row.publishedDate());
+                        ps.setString(5, row.description());
+                        ps.setString(6, row.genre());
+                        ps.setInt(7, prepared.pages());
+                        ps.setString(8, prepared.pdfPath());
+                        ps.setString(9, prepared.coverPath());
+                        ps.setString(10, prepared.coverPlaceholder());
+                        ps.setBigDecimal(11, prepared.price());
+                        ps.setString(12, (prepared.price().signum() == 0 ? BookAccessType.FREE : BookAccessType.PAID).name());
+                        ps.setObject(13, now, Types.TIMESTAMP);
+                        ps.setObject(14, now, Types.TIMESTAMP);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                },
+                keys);
+
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Map<String, Object> key : keys.getKeyList()) {
+            ids.add(((Number) key.values().iterator().next()).longValue());
+        }
+        return ids;
+    }
+
+    private void deleteStoredFiles(PreparedRow row) {
+        try {
+            fileStorageService.deleteFile(row.pdfPath());
+            fileStorageService.deleteFile(row.coverPath());
+        } catch (RuntimeException e) {
+            log.warn("Could not remove files of import row {}", row.row().rowNumber(), e);
+        }
+    }
+
+//    a server side directory can only be read from under the configured import root
+    private Path resolveSourceDirectory(String sourceDirectory) {
+        Path directory = importRoot.resolve(sourceDirectory).normalize();
+        if (!directory.startsWith(importRoot)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Source directory must be inside the import root");
+        }
+        if (!Files.isDirectory(directory)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Source directory not found: " + sourceDirectory);
+        }
+        return directory;
+    }
+
+    private Path resolveInside(Path directory, String name) {
+        Path file = directory.resolve(name).normalize();
+        if (!file.startsWith(directory)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File path escapes the import directory: " + name);
+        }
+        return file;
+    }
+
+//    unzip the uploaded archive, entries that would land outside the target are rejected (zip slip)
+    private void extractArchive(MultipartFile archive, Path target) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(archive.getInputStream())) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                Path destination = resolveInside(target, entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(destination);
+                } else {
+                    Files.createDirectories(destination.getParent());
+                    Files.copy(zip, destination, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
@@ -0,0 +1,416 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.BookResponseDTO;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+// In-memory trigram index over title, author, genre and isbn.
+// Keeps the same "contains" semantics as the old LIKE '%word%' query but
+// answers from memory: candidates come from the trigram postings and are
+// then checked with a plain substring match.
+// Words from titles and authors also feed a TermSuggester for "did you mean" corrections.
+// A rebuild loads into fresh structures without holding the lock and swaps them in at the end,
+// replaying the books indexed or removed while it was loading so none of them are lost.
+@Component
+public class BookSearchIndex {
+    private static final int GRAM_SIZE = 3;
+    private static final int CANDIDATES_PER_WORD = 3;
+    private static final Pattern WORD_SPLIT = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // results are ordered the same way the search endpoint always sorted them
+    static final Comparator<BookResponseDTO> TITLE_ORDER = Comparator
+            .comparing((BookResponseDTO book) -> book.title() == null ? "" : book.title().toLowerCase(Locale.ROOT))
+            .thenComparing(BookResponseDTO::id);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Contents contents = new Contents();
+    // books indexed (or removed, null) while a rebuild is loading, by id; null when no rebuild runs
+    private Map<Long, BookResponseDTO> changedDuringRebuild;
+    private volatile boolean ready = false;
+
+//    replace the whole index with the given books
+    public void rebuild(Collection<BookResponseDTO> books) {
+        rebuild(() -> books);
+    }
+
+//    replace the whole index with what the loader reads, searches keep using the old one meanwhile
+    public synchronized void rebuild(Supplier<? extends Collection<BookResponseDTO>> loader) {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Contents fresh = new Contents();
+        try {
+            for (BookResponseDTO book : loader.get()) {
+                fresh.add(book);
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // the loader may have read a book before it changed, the change wins
+            changedDuringRebuild.forEach((id, book) -> {
+                fresh.remove(id);
+                if (book != null) {
+                    fresh.add(book);
+                }
+            });
+            changedDuringRebuild = null;
+            contents = fresh;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+//    add or replace a single book
+    public void index(BookResponseDTO book) {
+        lock.writeLock().lock();
+        try {
+            contents.remove(book.id());
+            contents.add(book);
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(book.id(), book);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+//    remove a single book
+    public void remove(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            contents.remove(bookId);
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(bookId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+//    copy of every indexed book
+    public List<BookResponseDTO> snapshot() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(contents.documents.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return contents.documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+//    every book matching the search word, ordered by title
+    public List<BookResponseDTO> searchAll(String searchWord) {
+        String query = normalize(searchWord);
+        if (query.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            List<BookResponseDTO> matches = new ArrayList<>();
+            for (Long id : candidates(query)) {
+                BookResponseDTO book = contents.documents.get(id);
+                if (book != null && matches(book, query)) {
+                    matches.add(book);
+                }
+            }
+            matches.sort(TITLE_ORDER);
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+//    one page of matches, sorted by title like the old query
+    public Page<BookResponseDTO> search(String searchWord, Pageable pageable) {
+        List<BookResponseDTO> matches = searchAll(searchWord);
+        int from = (int) Math.min(pageable.getOffset(), matches.size());
+        int to = Math.min(from + pageable.getPageSize(), matches.size());
+        return new PageImpl<>(matches.subList(from, to), pageable, matches.size());
+    }
+
+//    keyset page of matches: the books ordered right after (afterTitle, afterId), or the first ones when afterId is null
+    public List<BookResponseDTO> searchAfter(String searchWord, String afterTitle, Long afterId, int limit) {
+        String query = normalize(searchWord);
+        if (query.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        BookResponseDTO probe = afterId == null ? null
+                : new BookResponseDTO(afterId, afterTitle, null, null, null, null, null, null, null, null, null, null, 0, null);
+
+        lock.readLock().lock();
+        try {
+            Collection<Long> candidates = candidates(query);
+            if (candidates == contents.documents.keySet()) {
+                // no postings to narrow it down, walk the books in title order from the cursor
+                List<BookResponseDTO> page = new ArrayList<>(limit);
+                for (BookResponseDTO book : probe == null ? contents.byTitle : contents.byTitle.tailSet(probe, false)) {
+                    if (matches(book, query)) {
+                        page.add(book);
+                        if (page.size() == limit) {
+                            break;
+                        }
+                    }
+                }
+                return page;
+            }
+
+            // keep only the first limit candidates after the cursor, no need to sort all of them
+            PriorityQueue<BookResponseDTO> firstAfter = new PriorityQueue<>(limit + 1, TITLE_ORDER.reversed());
+            for (Long id : candidates) {
+                BookResponseDTO book = contents.documents.get(id);
+                if (book == null || (probe != null && TITLE_ORDER.compare(book, probe) <= 0) || !matches(book, query)) {
+                    continue;
+                }
+                firstAfter.add(book);
+                if (firstAfter.size() > limit) {
+                    firstAfter.poll();
+                }
+            }
+            List<BookResponseDTO> page = new ArrayList<>(firstAfter);
+            page.sort(TITLE_ORDER);
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+//    corrected versions of a query, best first, built from words that really occur in titles and authors.
+//    every correction returned finds at least one book when searched
+    public List<String> corrections(String searchWord, int limit) {
+        List<String> words = words(normalize(searchWord));
+        if (words.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            // per word: keep known words, otherwise look up the closest terms
+            List<List<TermSuggester.Suggestion>> options = new ArrayList<>();
+            boolean anyCorrected = false;
+            for (String word : words) {
+                List<TermSuggester.Suggestion> candidates = contents.suggester.contains(word)
+                        ? List.of()
+                        : contents.suggester.suggest(word, CANDIDATES_PER_WORD);
+                anyCorrected |= !candidates.isEmpty();
+                options.add(candidates);
+            }
+            if (!anyCorrected) {
+                return List.of();
+            }
+
+            // best phrase takes the top candidate everywhere, the others swap in one runner-up at a time
+            List<Correction> phrases = new ArrayList<>();
+            phrases.add(phrase(words, options, -1, 0));
+            for (int position = 0; position < words.size(); position++) {
+                for (int rank = 1; rank < options.get(position).size(); rank++) {
+                    phrases.add(phrase(words, options, position, rank));
+                }
+            }
+            phrases.sort(Comparator.comparingInt(Correction::distance)
+                    .thenComparing(Comparator.comparingInt(Correction::frequency).reversed()));
+
+            // search treats the query as one substring, a phrase mixing words from the title and the
+            // author would find nothing, so only offer corrections that really return books
+            return phrases.stream()
+                    .map(Correction::text)
+                    .distinct()
+                    .filter(this::hasMatch)
+                    .limit(limit)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private record Correction(String text, int distance, int frequency) {}
+
+    private Correction phrase(List<String> words, List<List<TermSuggester.Suggestion>> options, int swapPosition, int swapRank) {
+        List<String> parts = new ArrayList<>();
+        int distance = 0;
+        int frequency = 0;
+        for (int i = 0; i < words.size(); i++) {
+            List<TermSuggester.Suggestion> candidates = options.get(i);
+            if (candidates.isEmpty()) {
+                parts.add(words.get(i));
+                continue;
+            }
+            TermSuggester.Suggestion chosen = candidates.get(i == swapPosition ? swapRank : 0);
+            parts.add(chosen.term());
+            distance += chosen.distance();
+            frequency += chosen.frequency();
+        }
+        return new Correction(String.join(" ", parts), distance, frequency);
+    }
+
+    // ----- internals, callers hold the lock -----
+
+    private Collection<Long> candidates(String query) {
+        // queries shorter than a gram can't use the postings, scan the documents instead
+        if (query.length() < GRAM_SIZE) {
+            return contents.documents.keySet();
+        }
+
+        Set<String> grams = grams(query);
+        Set<Long> smallest = null;
+        for (String gram : grams) {
+            Set<Long> posting = contents.postings.get(gram);
+            if (posting == null) {
+                return List.of();
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+
+        // intersect starting from the rarest gram to keep the work small
+        List<Long> result = new ArrayList<>();
+        for (Long id : smallest) {
+            Set<String> docGrams = contents.documentGrams.get(id);
+            if (docGrams != null && docGrams.containsAll(grams)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private boolean hasMatch(String query) {
+        for (Long id : candidates(query)) {
+            BookResponseDTO book = contents.documents.get(id);
+            if (book != null && matches(book, query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(BookResponseDTO book, String query) {
+        return contains(book.title(), query)
+                || contains(book.author(), query)
+                || contains(book.genre(), query)
+                || contains(book.isbn(), query);
+    }
+
+    private boolean contains(String field, String query) {
+        return field != null && normalize(field).contains(query);
+    }
+
+    // everything one generation of the index holds, a rebuild fills a new one and swaps it in
+    private static final class Contents {
+        final Map<Long, BookResponseDTO> documents = new HashMap<>();
+        final Map<Long, Set<String>> documentGrams = new HashMap<>();
+        final Map<String, Set<Long>> postings = new HashMap<>();
+        final NavigableSet<BookResponseDTO> byTitle = new TreeSet<>(TITLE_ORDER);
+        final TermSuggester suggester = new TermSuggester();
+
+        void add(BookResponseDTO book) {
+            Set<String> grams = new HashSet<>();
+            grams.addAll(grams(normalize(book.title())));
+            grams.addAll(grams(normalize(book.author())));
+            grams.addAll(grams(normalize(book.genre())));
+            grams.addAll(grams(normalize(book.isbn())));
+
+            documents.put(book.id(), book);
+            documentGrams.put(book.id(), grams);
+            byTitle.add(book);
+            dictionaryWords(book).forEach(suggester::add);
+            for (String gram : grams) {
+                postings.computeIfAbsent(gram, key -> new HashSet<>()).add(book.id());
+            }
+        }
+
+        void remove(Long bookId) {
+            BookResponseDTO previous = documents.remove(bookId);
+            if (previous != null) {
+                byTitle.remove(previous);
+                dictionaryWords(previous).forEach(suggester::remove);
+            }
+            Set<String> grams = documentGrams.remove(bookId);
+            if (grams == null) {
+                return;
+            }
+            for (String gram : grams) {
+                Set<Long> posting = postings.get(gram);
+                if (posting != null) {
+                    posting.remove(bookId);
+                    if (posting.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<String> dictionaryWords(BookResponseDTO book) {
+        List<String> words = new ArrayList<>(words(normalize(book.title())));
+        words.addAll(words(normalize(book.author())));
+        return words;
+    }
+
+    private static List<String> words(String value) {
+        List<String> words = new ArrayList<>();
+        for (String word : WORD_SPLIT.split(value)) {
+            if (word.length() > 1) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> grams(String value) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_SIZE <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM_SIZE));
+        }
+        return grams;
+    }
+}
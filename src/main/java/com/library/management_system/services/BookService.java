@@ -3,32 +3,130 @@ package com.library.management_system.services;
 
 import com.library.management_system.DTOs.BookRequestDTO;
 import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.BookSearchResponseDTO;
+import com.library.management_system.DTOs.BookSuggestionDTO;
+import com.library.management_system.DTOs.CacheStatsDTO;
+import com.library.management_system.DTOs.PaginatedResponse;
 import com.library.management_system.enums.BookAccessType;
 import com.library.management_system.models.Book;
 import com.library.management_system.models.UserModel;
 import com.library.management_system.repositories.BookRepository;
+import com.library.management_system.utils.PageCursor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 @Service
+@Slf4j
 public class BookService {
+    private static final int INDEX_BATCH_SIZE = 500;
+    private static final int MAX_SUGGESTIONS = 5;
+
     private final BookRepository bookRepository;
     private final FileStorageService fileStorageService;
-
-    public BookService(BookRepository bookRepository, FileStorageService fileStorageService) {
+    private final CoverImageService coverImageService;
+    private final BookSearchIndex searchIndex;
+    private final BookCatalogCache catalogCache;
+    private final BookSuggestIndex suggestIndex;
+    private final int cachePreloadSize;
+    private final Executor taskExecutor;
+
+    public BookService(BookRepository bookRepository,
+                       FileStorageService fileStorageService,
+                       CoverImageService coverImageService,
+                       BookSearchIndex searchIndex,
+                       BookCatalogCache catalogCache,
+                       BookSuggestIndex suggestIndex,
+                       @Value("${catalog.cache.preload-size:100}") int cachePreloadSize,
+                       @Qualifier("taskExecutor") Executor taskExecutor) {
         this.bookRepository = bookRepository;
         this.fileStorageService = fileStorageService;
+        this.coverImageService = coverImageService;
+        this.searchIndex = searchIndex;
+        this.catalogCache = catalogCache;
+        this.suggestIndex = suggestIndex;
+        this.cachePreloadSize = cachePreloadSize;
+        this.taskExecutor = taskExecutor;
+    }
+
+//    load the whole catalog into the search index once the app is up, page by page.
+//    books created or changed while the pages are read are replayed by the index, not lost
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildSearchIndex() {
+        searchIndex.rebuild(() -> {
+            List<BookResponseDTO> books = new ArrayList<>();
+            Pageable pageable = PageRequest.of(0, INDEX_BATCH_SIZE, Sort.by("id"));
+            Page<BookResponseDTO> batch;
+            do {
+                batch = bookRepository.findAllAsDto(pageable);
+                books.addAll(batch.getContent());
+                pageable = pageable.next();
+            } while (batch.hasNext());
+            return books;
+        });
+        suggestIndex.rebuild();
+        log.info("Search index built with {} books", searchIndex.size());
+    }
+
+//    covers stored before the derivative pipeline have no placeholder yet, build them in the background
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillCoverPlaceholders() {
+        taskExecutor.execute(() -> {
+            long afterId = 0;
+            int filled = 0;
+            List<Book> batch;
+            do {
+                batch = bookRepository.findMissingCoverPlaceholders(afterId, Limit.of(INDEX_BATCH_SIZE));
+                List<Long> updated = new ArrayList<>();
+                for (Book book : batch) {
+                    afterId = book.getId();
+                    String placeholder = coverImageService.process(book.getCoverImagePath());
+                    if (placeholder != null) {
+                        bookRepository.updateCoverPlaceholder(book.getId(), placeholder);
+                        updated.add(book.getId());
+                    }
+                }
+                refreshBooks(updated);
+                filled += updated.size();
+            } while (!batch.isEmpty());
+            if (filled > 0) {
+                log.info("Built cover placeholders for {} books", filled);
+            }
+        });
     }
 
+//    warm the catalog cache with the newest books, they are the ones the home page shows
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadCatalogCache() {
+        if (cachePreloadSize <= 0) {
+            return;
+        }
+        bookRepository.findNewest(Limit.of(cachePreloadSize)).forEach(catalogCache::put);
+    }
 
 
     public BookResponseDTO createBook(BookRequestDTO bookRequest, MultipartFile pdfFile, MultipartFile coverImage) {
@@ -50,20 +148,51 @@ public class BookService {
             book.setAccessType(BookAccessType.PAID);
         }
 
-        // Store files
-        String pdfFilename = generatePdfFilename(bookRequest.title(), pdfFile.getOriginalFilename());
-        String pdfPath = fileStorageService.storePdf(pdfFile, pdfFilename);
-        book.setPdfPath(pdfPath);
-
-        String coverFilename = generateCoverFilename(bookRequest.title(), coverImage.getOriginalFilename());
-        String coverPath = fileStorageService.storeCoverImage(coverImage, coverFilename);
+        // Store files, named by content so identical uploads share one copy.
+        // the pdf is hashed and checked on another thread while the cover is stored on this one
+        CompletableFuture<FileStorageService.StoredPdf> pdfUpload =
+                CompletableFuture.supplyAsync(() -> fileStorageService.storePdf(pdfFile), taskExecutor);
+        String coverPath;
+        String coverPlaceholder;
+        try {
+            coverPath = fileStorageService.storeCoverImage(coverImage);
+            coverPlaceholder = coverImageService.process(coverPath);
+        } catch (RuntimeException e) {
+            pdfUpload.thenAccept(stored -> fileStorageService.deleteFileLater(stored.path()));
+            throw e;
+        }
+        FileStorageService.StoredPdf pdf;
+        try {
+            pdf = pdfUpload.join();
+        } catch (CompletionException e) {
+            fileStorageService.deleteFileLater(coverPath);
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        book.setPdfPath(pdf.path());
         book.setCoverImagePath(coverPath);
+        book.setCoverPlaceholder(coverPlaceholder);
+        if (book.getNumberOfPages() <= 0) {
+            book.setNumberOfPages(pdf.pageCount());
+        }
 
-        Book savedBook = bookRepository.save(book);
-        return convertToDto(savedBook);
+        Book savedBook;
+        try {
+            savedBook = bookRepository.save(book);
+        } catch (RuntimeException e) {
+            // no row points at the files we just stored
+            fileStorageService.deleteFileLater(pdf.path());
+            fileStorageService.deleteFileLater(coverPath);
+            throw e;
+        }
+        BookResponseDTO dto = convertToDto(savedBook);
+        searchIndex.index(dto);
+        suggestIndex.markDirty();
+        catalogCache.put(dto);
+        return dto;
     }
 
 
+//    the one entity -> DTO mapping, listing queries build the same DTO through BookRepository.BOOK_DTO
     private BookResponseDTO convertToDto(Book book) {
         return new BookResponseDTO(
                 book.getId(),
@@ -73,29 +202,67 @@ public class BookService {
                 book.getDescription(),
                 book.getPdfPath(),
                 book.getCoverImagePath(),
-                book.getPublishedDate(),
+                book.getCoverPlaceholder(),
                 book.getGenre(),
+                book.getPublishedDate(),
                 book.getPricePerMonth(),
                 book.getAccessType(),
-                book.getNumberOfPages()
+                book.getNumberOfPages(),
+                book.getCreatedAt()
         );
     }
 
 
 
 
+//    books written without going through this service (bulk import, placeholder backfill), re-read them
+//    into the search index and the catalog cache
+    public void refreshBooks(Collection<Long> bookIds) {
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        for (BookResponseDTO dto : bookRepository.findAllAsDtoByIdIn(bookIds)) {
+            searchIndex.index(dto);
+            catalogCache.put(dto);
+        }
+        suggestIndex.markDirty();
+    }
+
+
 //    get the pdf of the book
     public Resource getBookPdf(Long bookId) {
-        Book book = bookRepository.findById(bookId)
+        BookResponseDTO book = getBookById(bookId)
                 .orElseThrow(() -> new RuntimeException("Book not found"));
-        return fileStorageService.loadPdf(fileStorageService.extractFilenameFromPath(book.getPdfPath()));
+        return fileStorageService.loadPdf(fileStorageService.extractFilenameFromPath(book.pdfPath()));
+    }
+
+//    path of the pdf readers are sent, the optimized copy when there is one
+    public Path getBookReadingPdfPath(Long bookId) {
+        return fileStorageService.readingCopyOf(getBookPdfPath(bookId));
+    }
+
+//    location of the pdf on disk, used by the range streaming endpoint
+    public Path getBookPdfPath(Long bookId) {
+        BookResponseDTO book = getBookById(bookId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found"));
+        return fileStorageService.resolvePdf(fileStorageService.extractFilenameFromPath(book.pdfPath()));
     }
 
 //    get the image of the book cover
     public Resource getBookCover(Long bookId) {
-        Book book = bookRepository.findById(bookId)
+        BookResponseDTO book = getBookById(bookId)
                 .orElseThrow(() -> new RuntimeException("Book not found"));
-        return fileStorageService.loadCoverImage(fileStorageService.extractFilenameFromPath(book.getCoverImagePath()));
+        return fileStorageService.loadCoverImage(fileStorageService.extractFilenameFromPath(book.coverImagePath()));
+    }
+
+//    a resized version of the cover, width and format picked by CoverImageService
+    public CoverImageService.Variant getBookCoverVariant(Long bookId, int width, boolean webp) {
+        BookResponseDTO book = getBookById(bookId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found"));
+        if (book.coverImagePath() == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Book has no cover");
+        }
+        return coverImageService.variant(book.coverImagePath(), width, webp);
     }
 
 
@@ -114,26 +281,25 @@ public BookResponseDTO updateBook(Long id, BookRequestDTO bookRequest, Multipart
 
 
 
-    // Update PDF file if provided
+    // Update PDF file if provided. new files are stored first and the replaced ones only released
+    // once the row points at the new ones, so a failed save never leaves the book without its files
+    List<String> replaced = new ArrayList<>();
+    List<String> stored = new ArrayList<>();
     if (pdfFile != null && !pdfFile.isEmpty()) {
-            // Delete old PDF file if exists
-        if (book.getPdfPath() != null) {
-                fileStorageService.deleteFile(book.getPdfPath());
-            }
-            String pdfFilename = generatePdfFilename(book.getTitle(), pdfFile.getOriginalFilename());
-            String pdfPath = fileStorageService.storePdf(pdfFile, pdfFilename);
-            book.setPdfPath(pdfPath);
+            replaced.add(book.getPdfPath());
+            FileStorageService.StoredPdf pdf = fileStorageService.storePdf(pdfFile);
+            stored.add(pdf.path());
+            book.setPdfPath(pdf.path());
+            book.setNumberOfPages(pdf.pageCount());
         }
 
         // Update cover image if provided
         if (coverImage != null && !coverImage.isEmpty()) {
-            // Delete old cover image if exists
-            if (book.getCoverImagePath() != null) {
-                fileStorageService.deleteFile(book.getCoverImagePath());
-            }
-            String coverFilename = generateCoverFilename(book.getTitle(), coverImage.getOriginalFilename());
-            String coverPath = fileStorageService.storeCoverImage(coverImage, coverFilename);
+            replaced.add(book.getCoverImagePath());
+            String coverPath = fileStorageService.storeCoverImage(coverImage);
+            stored.add(coverPath);
             book.setCoverImagePath(coverPath);
+            book.setCoverPlaceholder(coverImageService.process(coverPath));
         }
 
 //    automatically update accessType BASED ON PRICE
@@ -143,8 +309,55 @@ public BookResponseDTO updateBook(Long id, BookRequestDTO bookRequest, Multipart
         book.setAccessType(BookAccessType.PAID);
     }
 
-    Book updatedBook = bookRepository.save(book);
-    return convertToDto(updatedBook);
+    Book updatedBook;
+    try {
+        updatedBook = bookRepository.save(book);
+    } catch (RuntimeException e) {
+        stored.forEach(fileStorageService::deleteFileLater);
+        throw e;
+    }
+    replaced.forEach(fileStorageService::deleteFileLater);
+    BookResponseDTO dto = convertToDto(updatedBook);
+    searchIndex.index(dto);
+    suggestIndex.markDirty();
+    catalogCache.put(dto);
+    return dto;
+    }
+
+//    replace the pdf of a book with a raw streamed upload, nothing is buffered on the way to storage
+    public BookResponseDTO replacePdf(Long id, InputStream body, long contentLength) {
+        if (!bookRepository.existsById(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found with id: " + id);
+        }
+        return attachPdf(id, fileStorageService.storePdf(body, contentLength));
+    }
+
+//    point a book at an already stored pdf and release the one it had
+    public BookResponseDTO attachPdf(Long id, FileStorageService.StoredPdf pdf) {
+        Book book = bookRepository.findById(id).orElse(null);
+        if (book == null) {
+            // the book went away while the file was uploading
+            fileStorageService.deleteFileLater(pdf.path());
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found with id: " + id);
+        }
+
+        String oldPdfPath = book.getPdfPath();
+        book.setPdfPath(pdf.path());
+        book.setNumberOfPages(pdf.pageCount());
+        Book updatedBook;
+        try {
+            updatedBook = bookRepository.save(book);
+        } catch (RuntimeException e) {
+            fileStorageService.deleteFileLater(pdf.path());
+            throw e;
+        }
+        fileStorageService.deleteFileLater(oldPdfPath);
+
+        BookResponseDTO dto = convertToDto(updatedBook);
+        searchIndex.index(dto);
+        suggestIndex.markDirty();
+        catalogCache.put(dto);
+        return dto;
     }
 
 //    Get all books
@@ -155,15 +368,34 @@ public BookResponseDTO updateBook(Long id, BookRequestDTO bookRequest, Multipart
                 pageable.getPageSize(),
                 Sort.by("createdAt").descending()
         );
-        Page<Book> book= bookRepository.findAll(sortedPageable);
-        return book.map(this::convertToDto);
+        return bookRepository.findAllAsDto(sortedPageable);
+    }
+
+
+//    cursor page of the catalog, newest first
+    public PaginatedResponse<BookResponseDTO> getAllBooks(String cursor, int size) {
+        Limit limit = Limit.of(size + 1);
+        List<BookResponseDTO> books;
+        if (cursor == null || cursor.isEmpty()) {
+            books = bookRepository.findNewest(limit);
+        } else {
+            PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.CREATED_AT);
+            books = after.createdAt() == null
+                    ? bookRepository.findUndatedAfter(after.longId(), limit)
+                    : bookRepository.findNewestAfter(after.createdAt(), after.longId(), limit);
+        }
+        return toCursorPage(books, size, book -> PageCursor.ofCreatedAt(book.createdAt(), book.id()));
     }
 
 
-//      Get book by ID
+//      Get book by ID, served from the catalog cache when possible
     public Optional<BookResponseDTO> getBookById(Long id) {
-        return bookRepository.findById(id)
-                .map(this::convertToDto);
+        return catalogCache.get(id, bookId -> bookRepository.findById(bookId).map(this::convertToDto));
+    }
+
+//    hit/miss/eviction counters of the catalog cache
+    public CacheStatsDTO getCatalogCacheStats() {
+        return catalogCache.stats();
     }
 
 
@@ -172,49 +404,101 @@ public BookResponseDTO updateBook(Long id, BookRequestDTO bookRequest, Multipart
         Book book = bookRepository.findById(bookId)
                 .orElseThrow(() -> new RuntimeException("Book not found with id: " + bookId));
 
-        // Delete associated files from storage
-        if (book.getPdfPath() != null) {
-            fileStorageService.deleteFile(book.getPdfPath());
+        // Delete book from database, its files follow once the row is gone
+        bookRepository.delete(book);
+        fileStorageService.deleteFileLater(book.getPdfPath());
+        fileStorageService.deleteFileLater(book.getCoverImagePath());
+        searchIndex.remove(bookId);
+        suggestIndex.markDirty();
+        catalogCache.invalidate(bookId);
+    }
+
+
+//    search book by title or author or genre or isbn from the in-memory index
+    public Page<BookResponseDTO> primarySearch(String searchWord, Pageable pageable) {
+        if (searchIndex.isReady()) {
+            return searchIndex.search(searchWord, pageable);
         }
-        if (book.getCoverImagePath() != null) {
-            fileStorageService.deleteFile(book.getCoverImagePath());
+
+        // index is still being built at startup, answer from the database meanwhile
+        return bookRepository.primarySearch(searchWord, pageable);
+    }
+
+
+//    search, and when nothing matches return "did you mean" corrections with the results of the best one
+    public BookSearchResponseDTO searchWithSuggestions(String searchWord, Pageable pageable) {
+        Page<BookResponseDTO> results = primarySearch(searchWord, pageable);
+        if (results.getTotalElements() > 0 || !searchIndex.isReady()) {
+            return new BookSearchResponseDTO(results.getContent(), results.getTotalPages(), results.getTotalElements(), null, List.of());
         }
 
-        // Delete book from database
-        bookRepository.delete(book);
+        List<String> suggestions = searchIndex.corrections(searchWord, MAX_SUGGESTIONS);
+        for (String suggestion : suggestions) {
+            Page<BookResponseDTO> corrected = searchIndex.search(suggestion, pageable);
+            if (corrected.getTotalElements() > 0) {
+                return new BookSearchResponseDTO(corrected.getContent(), corrected.getTotalPages(), corrected.getTotalElements(), suggestion, suggestions);
+            }
+        }
+        return new BookSearchResponseDTO(results.getContent(), results.getTotalPages(), results.getTotalElements(), null, suggestions);
     }
 
 
-//    generate pdf filename so that it is unique
-    private String generatePdfFilename(String bookTitle, String originalFilename) {
-        String cleanTitle = bookTitle.replaceAll("[^a-zA-Z0-9]", "-").toLowerCase();
-        String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-        return cleanTitle + "-" + System.currentTimeMillis() + extension;
+//    autocomplete titles and authors from memory
+    public List<BookSuggestionDTO> suggest(String prefix, int limit) {
+        return suggestIndex.suggest(prefix, limit);
     }
 
 
-//    generate cover image filename so that it is unique
-    private String generateCoverFilename(String bookTitle, String originalFilename) {
-        String cleanTitle = bookTitle.replaceAll("[^a-zA-Z0-9]", "-").toLowerCase();
-        String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-        return cleanTitle + "-cover-" + System.currentTimeMillis() + extension;
+//    get book by genre
+    public Page<BookResponseDTO> getBooksByGenre(String genre, Pageable pageable){
+        return bookRepository.findByGenre(genre, pageable);
     }
 
-//    search book by title or author or genre with recomendation if search doesn't exist
-public Page<Book> primarySearch(String searchWord, Pageable pageable) {
-    try {
-        return bookRepository.primarySearch(searchWord, pageable);
-    } catch (Exception e) {
-        // Fallback to recommendation search if primary search is not found
-        return bookRepository.recommendationSearch(searchWord, pageable);
+
+//    cursor page of a genre, ordered by title
+    public PaginatedResponse<BookResponseDTO> getBooksByGenre(String genre, String cursor, int size) {
+        Limit limit = Limit.of(size + 1);
+        List<BookResponseDTO> books;
+        if (cursor == null || cursor.isEmpty()) {
+            books = bookRepository.findByGenreOrderedByTitle(genre, limit);
+        } else {
+            PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.TITLE);
+            books = bookRepository.findByGenreAfter(genre, after.sortKey(), after.longId(), limit);
+        }
+        return toCursorPage(books, size, book -> PageCursor.ofTitle(book.title(), book.id()));
     }
 
+
+//    cursor page of search results, ordered by title like the offset search
+    public PaginatedResponse<BookResponseDTO> searchBooks(String searchWord, String cursor, int size) {
+        String afterTitle = null;
+        Long afterId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.TITLE);
+            afterTitle = after.sortKey();
+            afterId = after.longId();
+        }
+        List<BookResponseDTO> books;
+        if (searchIndex.isReady()) {
+            books = searchIndex.searchAfter(searchWord, afterTitle, afterId, size + 1);
+        } else if (afterTitle == null) {
+            // index is still being built at startup, answer from the database meanwhile
+            books = bookRepository.searchOrderedByTitle(searchWord, Limit.of(size + 1));
+        } else {
+            books = bookRepository.searchAfter(searchWord, afterTitle, afterId, Limit.of(size + 1));
+        }
+        return toCursorPage(books, size, book -> PageCursor.ofTitle(book.title(), book.id()));
     }
 
 
-//    get book by genre
-    public Page<Book> getBooksByGenre(String genre, Pageable pageable){
-        return bookRepository.findByGenre(genre, pageable);
+//    one row more than the page size is fetched, if it came back there is a next page
+    private PaginatedResponse<BookResponseDTO> toCursorPage(List<BookResponseDTO> rows, int size,
+                                                            Function<BookResponseDTO, PageCursor> cursorOf) {
+        if (rows.size() <= size) {
+            return new PaginatedResponse<>(rows, null);
+        }
+        List<BookResponseDTO> page = rows.subList(0, size);
+        return new PaginatedResponse<>(page, cursorOf.apply(page.get(size - 1)).encode());
     }
 
 
@@ -0,0 +1,133 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.BookSuggestionDTO;
+import com.library.management_system.repositories.BookAccessRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Autocomplete over titles and authors, weighted by how often a book has been bought.
+// Lookups read an immutable PrefixSuggester snapshot without locking. Catalog writes only
+// mark the snapshot dirty; a scheduled task rebuilds it from the search index, so a burst of
+// admin edits costs one rebuild. Keys and prefixes are lower cased and stripped of accents, so
+// "bront" finds "Brontë".
+@Component
+@Slf4j
+public class BookSuggestIndex {
+    private static final String TITLE = "TITLE";
+    private static final String AUTHOR = "AUTHOR";
+    // also match from the 2nd, 3rd... word on, so "hobb" finds "The Hobbit"
+    private static final int MAX_WORD_STARTS = 4;
+    private static final Pattern WORD_BOUNDARY = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+
+    private final BookSearchIndex searchIndex;
+    private final BookAccessRepository bookAccessRepository;
+
+    private volatile PrefixSuggester<BookSuggestionDTO> suggester = PrefixSuggester.empty();
+    private volatile Map<Long, Long> popularity = Map.of();
+    private volatile boolean popularityLoaded = false;
+    private volatile boolean dirty = false;
+
+    public BookSuggestIndex(BookSearchIndex searchIndex, BookAccessRepository bookAccessRepository) {
+        this.searchIndex = searchIndex;
+        this.bookAccessRepository = bookAccessRepository;
+    }
+
+    public List<BookSuggestionDTO> suggest(String prefix, int limit) {
+        return suggester.suggest(fold(prefix), limit);
+    }
+
+//    called on catalog writes, the next scheduled run picks it up
+    public void markDirty() {
+        dirty = true;
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.suggest.rebuild-delay-ms:2000}")
+    public void rebuildIfDirty() {
+        if (dirty && searchIndex.isReady()) {
+            rebuild();
+        }
+    }
+
+//    purchase counts drift slowly, reload them every few minutes
+    @Scheduled(fixedDelayString = "${catalog.suggest.popularity-refresh-ms:600000}",
+            initialDelayString = "${catalog.suggest.popularity-refresh-ms:600000}")
+    public void refreshPopularity() {
+        loadPopularity();
+        dirty = true;
+    }
+
+    public void rebuild() {
+        // only the first build waits for the counts, after that refreshPopularity keeps them current
+        if (!popularityLoaded) {
+            loadPopularity();
+        }
+        dirty = false;
+
+        List<PrefixSuggester.Entry<BookSuggestionDTO>> entries = new ArrayList<>();
+        Map<String, Long> authorWeights = new HashMap<>();
+        Map<String, String> authorNames = new HashMap<>();
+        for (BookResponseDTO book : searchIndex.snapshot()) {
+            long weight = 1 + popularity.getOrDefault(book.id(), 0L);
+            if (book.title() != null && !book.title().isBlank()) {
+                BookSuggestionDTO title = new BookSuggestionDTO(book.title().trim(), TITLE, book.id());
+                for (String key : keys(book.title())) {
+                    entries.add(new PrefixSuggester.Entry<>(key, title, weight));
+                }
+            }
+            if (book.author() != null && !book.author().isBlank()) {
+                String author = fold(book.author());
+                authorWeights.merge(author, weight, Long::sum);
+                authorNames.putIfAbsent(author, book.author().trim());
+            }
+        }
+        // one entry per author, weighted by all of their books
+        authorWeights.forEach((author, weight) -> {
+            BookSuggestionDTO suggestion = new BookSuggestionDTO(authorNames.get(author), AUTHOR, null);
+            for (String key : keys(author)) {
+                entries.add(new PrefixSuggester.Entry<>(key, suggestion, weight));
+            }
+        });
+
+        suggester = new PrefixSuggester<>(entries);
+        log.debug("Suggest index rebuilt with {} keys", suggester.size());
+    }
+
+    private void loadPopularity() {
+        Map<Long, Long> counts = new HashMap<>();
+        for (Object[] row : bookAccessRepository.countAccessesByBook()) {
+            counts.put((Long) row[0], (Long) row[1]);
+        }
+        popularity = counts;
+        popularityLoaded = true;
+    }
+
+    private static List<String> keys(String text) {
+        String normalized = fold(text);
+        List<String> keys = new ArrayList<>();
+        keys.add(normalized);
+        String[] words = WORD_BOUNDARY.split(normalized);
+        int position = 0;
+        for (int i = 0; i < words.length && keys.size() <= MAX_WORD_STARTS; i++) {
+            position = normalized.indexOf(words[i], position);
+            if (i > 0 && position > 0 && !words[i].isEmpty()) {
+                keys.add(normalized.substring(position));
+            }
+            position += words[i].length();
+        }
+        return keys;
+    }
+
+    static String fold(String text) {
+        return ACCENTS.matcher(Normalizer.normalize(BookSearchIndex.normalize(text), Normalizer.Form.NFD)).replaceAll("");
+    }
+}
@@ -0,0 +1,286 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.UploadSessionDTO;
+import com.library.management_system.DTOs.UploadSessionRequestDTO;
+import com.library.management_system.models.UploadChunk;
+import com.library.management_system.models.UploadSession;
+import com.library.management_system.models.UserModel;
+import com.library.management_system.repositories.BookRepository;
+import com.library.management_system.repositories.UploadChunkRepository;
+import com.library.management_system.repositories.UploadSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Resumable chunked pdf uploads: open a session for a book, PUT numbered chunks in any order
+// (or several at once), then complete. Each chunk is written straight to its offset in a
+// pre-sized file, so a dropped connection only costs the chunks that were in flight.
+@Service
+@Slf4j
+public class BookUploadService {
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final UploadSessionRepository sessionRepository;
+    private final UploadChunkRepository chunkRepository;
+    private final BookRepository bookRepository;
+    private final BookService bookService;
+    private final FileStorageService fileStorageService;
+    private final ContactService contactService;
+    private final int defaultChunkSize;
+    private final int sessionTtlHours;
+    // chunk writes hold the read side, status changes the write side: a session is never completed,
+    // aborted or expired while a chunk is still going into its file. only open sessions keep an entry
+    private final Map<String, ReadWriteLock> sessionLocks = new ConcurrentHashMap<>();
+
+    public BookUploadService(UploadSessionRepository sessionRepository,
+                             UploadChunkRepository chunkRepository,
+                             BookRepository bookRepository,
+                             BookService bookService,
+                             FileStorageService fileStorageService,
+                             ContactService contactService,
+                             @Value("${catalog.upload.chunk-size:8388608}") int defaultChunkSize,
+                             @Value("${catalog.upload.session-ttl-hours:24}") int sessionTtlHours) {
+        this.sessionRepository = sessionRepository;
+        this.chunkRepository = chunkRepository;
+        this.bookRepository = bookRepository;
+        this.bookService = bookService;
+        this.fileStorageService = fileStorageService;
+        this.contactService = contactService;
+        this.defaultChunkSize = defaultChunkSize;
+        this.sessionTtlHours = sessionTtlHours;
+    }
+
+//    open a session, the file on disk is created at its final size right away
+    public UploadSessionDTO createSession(UploadSessionRequestDTO request) {
+        if (request.bookId() == null || !bookRepository.existsById(request.bookId())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found");
+        }
+        if (request.fileSize() <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "fileSize must be positive");
+        }
+        // a size over the limit would only fail on complete, better to say so before anything is sent
+        if (request.fileSize() > fileStorageService.getMaxStreamedPdfSize()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "File is too large");
+        }
+        int chunkSize = request.chunkSize() != null ? request.chunkSize() : defaultChunkSize;
+        if (chunkSize < MIN_CHUNK_SIZE && chunkSize < request.fileSize() || chunkSize > MAX_CHUNK_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "chunkSize must be between 1MB and 64MB");
+        }
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setBookId(request.bookId());
+        session.setFileSize(request.fileSize());
+        session.setChunkSize(chunkSize);
+        session.setChunkCount((int) ((request.fileSize() + chunkSize - 1) / chunkSize));
+        session.setStatus("OPEN");
+        UserModel user = contactService.getCurrentAuthenticatedUser();
+        session.setCreatedBy(user != null ? user.getEmail() : null);
+        session.setCreatedAt(LocalDateTime.now());
+        session.setExpiresAt(session.getCreatedAt().plusHours(sessionTtlHours));
+
+        fileStorageService.createUploadFile(session.getId(), request.fileSize());
+        sessionRepository.save(session);
+        return toDto(session, allChunks(session));
+    }
+
+    public UploadSessionDTO getSession(String sessionId) {
+        UploadSession session = findSession(sessionId);
+        return toDto(session, missingChunks(session));
+    }
+
+//    write one chunk at its offset, sending the same chunk twice just overwrites it
+    public UploadSessionDTO writeChunk(String sessionId, int index, InputStream body, long contentLength) {
+        Lock lock = sessionLock(sessionId).readLock();
+        lock.lock();
+        try {
+            // checked under the lock, once the session has left OPEN its file may already be adopted or deleted
+            UploadSession session = findOpenSession(sessionId);
+            if (index < 0 || index >= session.getChunkCount()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Chunk index out of range");
+            }
+            long position = (long) index * session.getChunkSize();
+            long expected = Math.min(session.getChunkSize(), session.getFileSize() - position);
+            if (contentLength >= 0 && contentLength != expected) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Chunk " + index + " must be " + expected + " bytes");
+            }
+
+            long written = fileStorageService.writeChunk(fileStorageService.uploadFile(sessionId), position, body, expected);
+            boolean extraBytes;
+            try {
+                extraBytes = body.read() != -1;
+            } catch (IOException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not read chunk");
+            }
+            if (written != expected || extraBytes) {
+                // not recorded, the client will see it as missing and send it again
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Chunk " + index + " must be " + expected + " bytes");
+            }
+
+            // the lock only covers this instance, another one may have moved the session on meanwhile
+            session = findOpenSession(sessionId);
+            recordChunk(sessionId, index, written);
+            return toDto(session, missingChunks(session));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+//    all chunks are there: turn the file into the book's pdf
+    public BookResponseDTO complete(String sessionId) {
+        UploadSession session;
+        Lock lock = sessionLock(sessionId).writeLock();
+        lock.lock();
+        try {
+            session = findOpenSession(sessionId);
+            List<Integer> missing = missingChunks(session);
+            if (!missing.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Missing chunks: " + missing);
+            }
+            if (sessionRepository.changeStatus(sessionId, "OPEN", "ASSEMBLING") == 0) {
+                sessionLocks.remove(sessionId);
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload session is already being completed");
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        BookResponseDTO book;
+        try {
+            FileStorageService.StoredPdf pdf = fileStorageService.adoptPdf(fileStorageService.uploadFile(sessionId));
+            book = bookService.attachPdf(session.getBookId(), pdf);
+        } catch (RuntimeException e) {
+            // the assembled file was not a usable pdf (or the book is gone) and has been removed, nothing left to retry
+            finish(session, "ABORTED");
+            throw e;
+        }
+        finish(session, "COMPLETED");
+        return book;
+    }
+
+    public void abort(String sessionId) {
+        UploadSession session = findSession(sessionId);
+        if (!changeStatus(sessionId, "OPEN", "ABORTED")) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload session is " + session.getStatus());
+        }
+        finish(session, "ABORTED");
+    }
+
+//    drop sessions nobody finished, along with their half written files
+    @Scheduled(fixedDelayString = "${catalog.upload.cleanup-interval-ms:3600000}")
+    public void expireSessions() {
+        for (UploadSession session : sessionRepository.findByStatusAndExpiresAtBefore("OPEN", LocalDateTime.now())) {
+            if (changeStatus(session.getId(), "OPEN", "EXPIRED")) {
+                finish(session, "EXPIRED");
+                log.info("Expired upload session {} for book {}", session.getId(), session.getBookId());
+            }
+        }
+    }
+
+//    leave OPEN once no chunk of the session is being written, false when someone else moved it first
+    private boolean changeStatus(String sessionId, String from, String to) {
+        Lock lock = sessionLock(sessionId).writeLock();
+        lock.lock();
+        try {
+            if (sessionRepository.changeStatus(sessionId, from, to) > 0) {
+                return true;
+            }
+            // someone else closed it, finish may already have dropped the lock we just made
+            sessionLocks.remove(sessionId);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReadWriteLock sessionLock(String sessionId) {
+        return sessionLocks.computeIfAbsent(sessionId, id -> new ReentrantReadWriteLock());
+    }
+
+    private void recordChunk(String sessionId, int index, long size) {
+        if (chunkRepository.existsBySessionIdAndChunkIndex(sessionId, index)) {
+            return;
+        }
+        try {
+            chunkRepository.save(new UploadChunk(null, sessionId, index, size, LocalDateTime.now()));
+        } catch (DataIntegrityViolationException e) {
+            // the same chunk was retried in parallel and the other request recorded it
+        }
+    }
+
+    private void finish(UploadSession session, String status) {
+        fileStorageService.deleteUploadFile(session.getId());
+        chunkRepository.deleteBySessionId(session.getId());
+        session.setStatus(status);
+        session.setCompletedAt(LocalDateTime.now());
+        sessionRepository.save(session);
+        // a late chunk gets a fresh lock and then finds the session closed
+        sessionLocks.remove(session.getId());
+    }
+
+    private UploadSession findSession(String sessionId) {
+        return sessionRepository.findById(sessionId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found"));
+    }
+
+    private UploadSession findOpenSession(String sessionId) {
+        Optional<UploadSession> session = sessionRepository.findById(sessionId);
+        if (session.isPresent() && "OPEN".equals(session.get().getStatus())) {
+            return session.get();
+        }
+        // a session never opens again, drop the lock a late or made up request has just created for it
+        sessionLocks.remove(sessionId);
+        if (session.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found");
+        }
+        throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload session is " + session.get().getStatus());
+    }
+
+    private List<Integer> missingChunks(UploadSession session) {
+        if (!"OPEN".equals(session.getStatus())) {
+            return List.of();
+        }
+        Set<Integer> received = new HashSet<>(chunkRepository.findChunkIndexes(session.getId()));
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            if (!received.contains(i)) {
+                missing.add(i);
+            }
+        }
+        return missing;
+    }
+
+    private static List<Integer> allChunks(UploadSession session) {
+        List<Integer> chunks = new ArrayList<>(session.getChunkCount());
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            chunks.add(i);
+        }
+        return chunks;
+    }
+
+    private static UploadSessionDTO toDto(UploadSession session, List<Integer> missingChunks) {
+        return new UploadSessionDTO(session.getId(), session.getBookId(), session.getFileSize(), session.getChunkSize(),
+                session.getChunkCount(), session.getStatus(), missingChunks, session.getExpiresAt());
+    }
+}
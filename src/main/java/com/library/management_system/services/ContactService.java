@@ -5,23 +5,23 @@ import com.library.management_system.models.ContactUsModel;
 import com.library.management_system.models.UserModel;
 import com.library.management_system.repositories.ContactUsRepository;
 import com.library.management_system.repositories.UserRepository;
-import jakarta.mail.MessagingException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 @Service
 public class ContactService {
-    private final EmailService emailService;
+    private final EmailOutbox emailOutbox;
     private final ContactUsRepository contactUsRepository;
     private final UserRepository userRepository;
 
 
-    public ContactService(EmailService emailService, ContactUsRepository contactUsRepository, UserRepository userRepository) {
-        this.emailService = emailService;
+    public ContactService(EmailOutbox emailOutbox, ContactUsRepository contactUsRepository, UserRepository userRepository) {
+        this.emailOutbox = emailOutbox;
         this.contactUsRepository = contactUsRepository;
         this.userRepository= userRepository;
     }
@@ -58,6 +58,7 @@ public class ContactService {
     }
 
 
+    @Transactional
     public ContactUsModel createContactMessage(ContactUsDto contactUsDto) {
         // Get the authenticated user
         UserModel user = getCurrentAuthenticatedUser();
@@ -78,17 +79,12 @@ public class ContactService {
 
         ContactUsModel savedMessage = contactUsRepository.save(contactMessage);
 
-        // Send HTML notification email to admin
-        try {
-            String adminEmail = "robertjones237@yahoo.com";
-            String emailSubject = "New Support Message: " + contactUsDto.subject();
-            String htmlContent =sendMessageToAdmin(savedMessage, user != null);
+        // HTML notification email to admin, sent once the message is saved
+        String adminEmail = "robertjones237@yahoo.com";
+        String emailSubject = "New Support Message: " + contactUsDto.subject();
+        String htmlContent =sendMessageToAdmin(savedMessage, user != null);
 
-            emailService.sendHtmlEmail(adminEmail, emailSubject, htmlContent);
-        } catch (MessagingException e) {
-            // Log the error but don't fail the contact submission
-            System.err.println("Failed to send admin notification email: " + e.getMessage());
-        }
+        emailOutbox.enqueue(adminEmail, emailSubject, htmlContent, true);
 
         return savedMessage;
     }
@@ -0,0 +1,201 @@
+package com.library.management_system.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+// Catalog tiles don't need a 10 MB cover. Every stored cover gets fixed width JPEG derivatives
+// (and WebP ones when an ImageIO WebP writer is on the classpath) plus a tiny blurred JPEG as a
+// data URI that the DTO carries, so the page can paint a placeholder before any image request.
+// Derivatives live next to the cover's content hash and are built once per distinct image;
+// covers stored before this existed get theirs on first request.
+@Service
+@Slf4j
+public class CoverImageService {
+    public static final List<Integer> WIDTHS = List.of(120, 240, 480);
+    private static final int PLACEHOLDER_WIDTH = 16;
+    private static final String PLACEHOLDER_FILE = "placeholder.txt";
+
+    public record Variant(Path file, String contentType, String etag) {}
+
+    private final FileStorageService fileStorageService;
+    private final boolean webpSupported;
+
+    public CoverImageService(FileStorageService fileStorageService) {
+        this.fileStorageService = fileStorageService;
+        this.webpSupported = ImageIO.getImageWritersByMIMEType("image/webp").hasNext();
+        if (!webpSupported) {
+            log.info("No ImageIO WebP writer available, cover derivatives are JPEG only");
+        }
+    }
+
+//    build the derivatives of a stored cover and return its placeholder data URI, cheap when they exist
+    public String process(String coverPath) {
+        Path directory = derivativeDirectory(coverPath);
+        Path placeholderFile = directory.resolve(PLACEHOLDER_FILE);
+        try {
+            if (Files.exists(placeholderFile)) {
+                return Files.readString(placeholderFile, StandardCharsets.US_ASCII);
+            }
+
+            BufferedImage original = ImageIO.read(Paths.get(coverPath).toFile());
+            if (original == null) {
+                // a format ImageIO can't decode, keep serving the original
+                log.warn("Could not decode cover {}, no derivatives built", coverPath);
+                return null;
+            }
+            BufferedImage rgb = toRgb(original);
+            Files.createDirectories(directory);
+            for (int width : WIDTHS) {
+                BufferedImage scaled = resize(rgb, width);
+                write(directory.resolve(variantName(width, "jpg")), out -> writeJpeg(scaled, 0.8f, out));
+                if (webpSupported) {
+                    write(directory.resolve(variantName(width, "webp")), out -> writeImage(scaled, "image/webp", out));
+                }
+            }
+
+            ByteArrayOutputStream tiny = new ByteArrayOutputStream();
+            writeJpeg(resize(rgb, PLACEHOLDER_WIDTH), 0.5f, tiny);
+            String placeholder = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(tiny.toByteArray());
+            // written last, its presence means the set is complete
+            write(placeholderFile, out -> out.write(placeholder.getBytes(StandardCharsets.US_ASCII)));
+            return placeholder;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not build derivatives for cover {}", coverPath, e);
+            return null;
+        }
+    }
+
+//    the derivative closest to the requested width (never smaller unless the widest is asked for),
+//    WebP when the client accepts it and we can produce it
+    public Variant variant(String coverPath, int requestedWidth, boolean acceptsWebp) {
+        int width = WIDTHS.get(WIDTHS.size() - 1);
+        for (int candidate : WIDTHS) {
+            if (candidate >= requestedWidth) {
+                width = candidate;
+                break;
+            }
+        }
+        String extension = acceptsWebp && webpSupported ? "webp" : "jpg";
+
+        Path directory = derivativeDirectory(coverPath);
+        Path file = directory.resolve(variantName(width, extension));
+        if (!Files.exists(file)) {
+            process(coverPath);
+            if (!Files.exists(file)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No resized version of this cover");
+            }
+        }
+
+        String version = directory.getFileName() + "-" + variantName(width, extension);
+        return new Variant(file, "webp".equals(extension) ? "image/webp" : "image/jpeg", "\"" + version + "\"");
+    }
+
+    public boolean isWebpSupported() {
+        return webpSupported;
+    }
+
+    private Path derivativeDirectory(String coverPath) {
+        return fileStorageService.getCoverDerivativeDirectory(Paths.get(coverPath).getFileName().toString());
+    }
+
+    private static String variantName(int width, String extension) {
+        return "w" + width + "." + extension;
+    }
+
+    // jpeg has no alpha, flatten transparent covers onto white
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+
+    // halve with bilinear filtering until close to the target, a single big step would alias badly.
+    // images narrower than the target are kept as they are
+    static BufferedImage resize(BufferedImage image, int targetWidth) {
+        BufferedImage current = image;
+        while (current.getWidth() > targetWidth) {
+            int width = Math.max(current.getWidth() / 2, targetWidth);
+            int height = Math.max(1, (int) Math.round((double) current.getHeight() * width / current.getWidth()));
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, width, height, null);
+            g.dispose();
+            current = next;
+        }
+        return current;
+    }
+
+    private static void writeJpeg(BufferedImage image, float quality, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static void writeImage(BufferedImage image, String mimeType, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(mimeType);
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            writer.write(image);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private interface Encoder {
+        void encode(OutputStream out) throws IOException;
+    }
+
+    // temp file + rename, a reader never sees half an image
+    private static void write(Path target, Encoder encoder) throws IOException {
+        Path temp = target.resolveSibling("." + UUID.randomUUID() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                encoder.encode(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
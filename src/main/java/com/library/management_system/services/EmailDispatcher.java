@@ -0,0 +1,180 @@
+package com.library.management_system.services;
+
+import com.library.management_system.models.OutboxEmail;
+import com.library.management_system.repositories.OutboxEmailRepository;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Sends what EmailOutbox collected, on the mail pool and never on a request thread. Due emails are
+// locked with SKIP LOCKED and leased like webhook events, then a whole batch goes out over one
+// smtp connection. Emails the server refused, or all of them when it could not be reached, are
+// retried with a growing delay until mail.outbox.max-attempts. An email is marked SENT only after
+// the server took it, so a crash in between sends it again rather than losing it.
+@Service
+@Slf4j
+public class EmailDispatcher {
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(2);
+
+    private final OutboxEmailRepository outboxRepository;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor mailExecutor;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final int keepSentDays;
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+    private final AtomicBoolean dispatchAgain = new AtomicBoolean();
+
+    public EmailDispatcher(OutboxEmailRepository outboxRepository,
+                           EmailService emailService,
+                           PlatformTransactionManager transactionManager,
+                           @Qualifier("mailExecutor") Executor mailExecutor,
+                           @Value("${mail.outbox.batch-size:50}") int batchSize,
+                           @Value("${mail.outbox.max-attempts:8}") int maxAttempts,
+                           @Value("${mail.outbox.lease:5m}") Duration lease,
+                           @Value("${mail.outbox.keep-sent-days:30}") int keepSentDays) {
+        this.outboxRepository = outboxRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mailExecutor = mailExecutor;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.lease = lease;
+        this.keepSentDays = keepSentDays;
+    }
+
+//    called after a commit that wrote emails
+    public void dispatchSoon() {
+        try {
+            mailExecutor.execute(this::dispatch);
+        } catch (RejectedExecutionException e) {
+            // mail pool is full, the next poll sends it
+        }
+    }
+
+//    picks up retries that came due and emails a busy or restarted instance left behind
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms:10000}")
+    public void dispatch() {
+        if (!dispatching.compareAndSet(false, true)) {
+            dispatchAgain.set(true);
+            return;
+        }
+        try {
+            do {
+                dispatchAgain.set(false);
+                while (dispatchBatch() == batchSize) {
+                    // full batch, there may be more
+                }
+            } while (dispatchAgain.get());
+        } catch (RuntimeException e) {
+            log.error("Dispatching the email outbox failed", e);
+        } finally {
+            dispatching.set(false);
+        }
+    }
+
+    // claim a batch and send it over one connection, returns how many were claimed
+    int dispatchBatch() {
+        List<OutboxEmail> batch = transactionTemplate.execute(status -> {
+            List<OutboxEmail> due = outboxRepository.lockDue(LocalDateTime.now(), batchSize);
+            if (!due.isEmpty()) {
+                outboxRepository.claim(due.stream().map(OutboxEmail::getId).toList(), LocalDateTime.now().plus(lease));
+            }
+            return due;
+        });
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<MimeMessage, OutboxEmail> messages = new HashMap<>();
+        for (OutboxEmail email : batch) {
+            try {
+                messages.put(emailService.createMessage(email.getRecipient(), email.getSubject(), email.getBody(), email.isHtml()), email);
+            } catch (MessagingException e) {
+                // a bad address won't get better, stop trying
+                failed(email, e, true);
+            }
+        }
+        if (messages.isEmpty()) {
+            return batch.size();
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        try {
+            emailService.sendAll(messages.keySet().toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            failures = e.getFailedMessages();
+            if (failures.isEmpty()) {
+                // nothing says which, none of them can count as sent
+                failures = new HashMap<>();
+                for (MimeMessage message : messages.keySet()) {
+                    failures.put(message, e);
+                }
+            }
+        } catch (MailException e) {
+            // login or connection trouble, the whole batch waits for the next attempt
+            Map<Object, Exception> all = new HashMap<>();
+            for (MimeMessage message : messages.keySet()) {
+                all.put(message, e);
+            }
+            failures = all;
+        }
+
+        List<Long> sent = new ArrayList<>();
+        for (Map.Entry<MimeMessage, OutboxEmail> entry : messages.entrySet()) {
+            Exception failure = failures.get(entry.getKey());
+            if (failure == null) {
+                sent.add(entry.getValue().getId());
+            } else {
+                failed(entry.getValue(), failure, false);
+            }
+        }
+        if (!sent.isEmpty()) {
+            outboxRepository.markSent(sent, LocalDateTime.now());
+        }
+        return batch.size();
+    }
+
+    private void failed(OutboxEmail email, Exception e, boolean permanent) {
+        // the claim already counted this attempt in the database
+        int attempts = email.getAttempts() + 1;
+        String message = String.valueOf(e.getMessage());
+        message = message.length() > 500 ? message.substring(0, 500) : message;
+        if (permanent || attempts >= maxAttempts) {
+            outboxRepository.markFailedAttempt(email.getId(), EmailOutbox.FAILED, LocalDateTime.now(), message);
+            log.error("Giving up on email {} to {} after {} attempts: {}", email.getId(), email.getRecipient(), attempts, message);
+        } else {
+            Duration delay = Duration.ofMinutes(1L << Math.min(attempts - 1, 10));
+            outboxRepository.markFailedAttempt(email.getId(), EmailOutbox.PENDING,
+                    LocalDateTime.now().plus(delay.compareTo(MAX_RETRY_DELAY) < 0 ? delay : MAX_RETRY_DELAY), message);
+            log.warn("Email {} to {} failed (attempt {}), retrying later: {}", email.getId(), email.getRecipient(), attempts, message);
+        }
+    }
+
+//    sent emails are only kept for the delivery stats
+    @Scheduled(cron = "${mail.outbox.cleanup-cron:0 15 4 * * *}")
+    public void deleteOldSentEmails() {
+        int deleted = outboxRepository.deleteSentBefore(LocalDateTime.now().minusDays(keepSentDays));
+        log.info("Deleted {} sent emails from the outbox", deleted);
+    }
+}
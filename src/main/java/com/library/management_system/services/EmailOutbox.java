@@ -0,0 +1,57 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.EmailOutboxStatsDTO;
+import com.library.management_system.models.OutboxEmail;
+import com.library.management_system.repositories.OutboxEmailRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+// Where services put the emails they want sent. The row is written in the caller's transaction, so
+// an email exists exactly when the change it announces was committed, and EmailDispatcher is woken
+// once that commit happened. No request waits on the mail server.
+@Service
+public class EmailOutbox {
+    static final String PENDING = "PENDING";
+    static final String SENT = "SENT";
+    static final String FAILED = "FAILED";
+
+    private final OutboxEmailRepository outboxRepository;
+    private final EmailDispatcher emailDispatcher;
+
+    public EmailOutbox(OutboxEmailRepository outboxRepository, EmailDispatcher emailDispatcher) {
+        this.outboxRepository = outboxRepository;
+        this.emailDispatcher = emailDispatcher;
+    }
+
+    @Transactional
+    public void enqueue(String to, String subject, String text, boolean html) {
+        LocalDateTime now = LocalDateTime.now();
+        outboxRepository.save(new OutboxEmail(null, to, subject, text, html, PENDING, 0, now, null, now, null));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                emailDispatcher.dispatchSoon();
+            }
+        });
+    }
+
+//    how many emails are waiting, went out or were given up on
+    @Transactional(readOnly = true)
+    public EmailOutboxStatsDTO getStats() {
+        long pending = 0, sent = 0, failed = 0;
+        for (Object[] row : outboxRepository.countByStatus()) {
+            long count = (Long) row[1];
+            switch ((String) row[0]) {
+                case PENDING -> pending = count;
+                case SENT -> sent = count;
+                case FAILED -> failed = count;
+                default -> { }
+            }
+        }
+        return new EmailOutboxStatsDTO(pending, sent, failed, outboxRepository.findOldestPending());
+    }
+}
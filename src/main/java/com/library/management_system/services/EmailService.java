@@ -7,31 +7,34 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+// talks to the smtp server. requests don't call this directly anymore, they write to EmailOutbox
+// and EmailDispatcher sends from there
 @Service
 public class EmailService {
 
     @Autowired
     private JavaMailSender emailSender;
     public  void sendEmail(String to, String subject, String text) throws MessagingException {
-        MimeMessage message = emailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, true);
-
-        helper.setTo(to);
-        helper.setSubject(subject);
-        helper.setText(text, true);
-
-        emailSender.send(message);
+        emailSender.send(createMessage(to, subject, text, true));
 
     }
 
     public void sendHtmlEmail(String to, String subject, String htmlContent) throws MessagingException {
+        emailSender.send(createMessage(to, subject, htmlContent, true));
+    }
+
+    public MimeMessage createMessage(String to, String subject, String text, boolean html) throws MessagingException {
         MimeMessage message = emailSender.createMimeMessage();
         MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
 
         helper.setTo(to);
         helper.setSubject(subject);
-        helper.setText(htmlContent, true);
+        helper.setText(text, html);
+        return message;
+    }
 
-        emailSender.send(message);
+//    send over a single smtp connection, a MailSendException lists the messages that failed
+    public void sendAll(MimeMessage... messages) {
+        emailSender.send(messages);
     }
 }
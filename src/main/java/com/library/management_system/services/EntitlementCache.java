@@ -0,0 +1,101 @@
+package com.library.management_system.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.library.management_system.repositories.BookAccessRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+// Which paid books each reader may open, so PaymentService.hasAccessToBook is a memory lookup.
+// A user's active grants are loaded on their first check as two sorted arrays (book ids and end
+// times) and looked up by binary search; a grant simply stops matching once its end time passes.
+// PaymentService adds new purchases after their transaction commits. Denials are confirmed
+// against the database before they count, so a purchase made through another instance is never
+// refused, and expire-after-minutes bounds how long any other change can go unseen.
+@Component
+public class EntitlementCache {
+    private final Cache<UUID, Grants> cache;
+    private final BookAccessRepository bookAccessRepository;
+
+    public EntitlementCache(BookAccessRepository bookAccessRepository,
+                            @Value("${catalog.entitlements.max-users:100000}") long maxUsers,
+                            @Value("${catalog.entitlements.expire-after-minutes:30}") long expireAfterMinutes) {
+        this.bookAccessRepository = bookAccessRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(Duration.ofMinutes(expireAfterMinutes))
+                .build();
+    }
+
+    public boolean hasAccess(UUID userId, Long bookId) {
+        long now = epochSecond(LocalDateTime.now());
+        if (cache.get(userId, this::load).allows(bookId, now)) {
+            return true;
+        }
+        // maybe bought since we loaded, possibly on another instance
+        Grants fresh = load(userId);
+        cache.put(userId, fresh);
+        return fresh.allows(bookId, now);
+    }
+
+//    record a purchase for a user whose grants are loaded, others pick it up on their next load
+    public void grant(UUID userId, Long bookId, LocalDateTime endDate) {
+        cache.asMap().computeIfPresent(userId, (id, grants) -> grants.with(bookId, epochSecond(endDate)));
+    }
+
+    public void invalidate(UUID userId) {
+        cache.invalidate(userId);
+    }
+
+    private Grants load(UUID userId) {
+        List<Object[]> rows = new ArrayList<>(bookAccessRepository.findActiveEndDates(userId, LocalDateTime.now()));
+        long[] bookIds = new long[rows.size()];
+        long[] endsAt = new long[rows.size()];
+        rows.sort((a, b) -> Long.compare((Long) a[0], (Long) b[0]));
+        for (int i = 0; i < rows.size(); i++) {
+            bookIds[i] = (Long) rows.get(i)[0];
+            endsAt[i] = epochSecond((LocalDateTime) rows.get(i)[1]);
+        }
+        return new Grants(bookIds, endsAt);
+    }
+
+    private static long epochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    // book ids in ascending order with the end of access to each, as epoch seconds
+    record Grants(long[] bookIds, long[] endsAt) {
+
+        boolean allows(long bookId, long now) {
+            int i = Arrays.binarySearch(bookIds, bookId);
+            return i >= 0 && now <= endsAt[i];
+        }
+
+        Grants with(long bookId, long endAt) {
+            int i = Arrays.binarySearch(bookIds, bookId);
+            if (i >= 0) {
+                long[] ends = endsAt.clone();
+                ends[i] = Math.max(ends[i], endAt);
+                return new Grants(bookIds, ends);
+            }
+            int at = -i - 1;
+            long[] ids = new long[bookIds.length + 1];
+            long[] ends = new long[bookIds.length + 1];
+            System.arraycopy(bookIds, 0, ids, 0, at);
+            System.arraycopy(endsAt, 0, ends, 0, at);
+            ids[at] = bookId;
+            ends[at] = endAt;
+            System.arraycopy(bookIds, at, ids, at + 1, bookIds.length - at);
+            System.arraycopy(endsAt, at, ends, at + 1, bookIds.length - at);
+            return new Grants(ids, ends);
+        }
+    }
+}
@@ -1,17 +1,56 @@
 package com.library.management_system.services;
 
+import com.library.management_system.models.FileTombstone;
+import com.library.management_system.models.StoredBlob;
+import com.library.management_system.repositories.FileTombstoneRepository;
+import com.library.management_system.repositories.StoredBlobRepository;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 // Custom exception class for file storage errors
 class FileStorageException extends RuntimeException {
@@ -34,22 +73,76 @@ class FileStorageException extends RuntimeException {
 
 @Service
 public class FileStorageService {
-    private final Path pdfStorageLocation;
-    private final Path coverImageStorageLocation;
-    private final Path profilePicturesLocation;
+    private final ShardedDirectory pdfStorage;
+    private final ShardedDirectory coverImageStorage;
+    private final ShardedDirectory profilePictureStorage;
     private final Path pdfReportLocation;
-
-    public FileStorageService() {
-        this.pdfStorageLocation = Paths.get("uploads/books/pdfs").toAbsolutePath().normalize();
-        this.coverImageStorageLocation = Paths.get("uploads/books/coverImages").toAbsolutePath().normalize();
-        this.profilePicturesLocation = Paths.get("uploads/users/profilePictures").toAbsolutePath().normalize();
-        this.pdfReportLocation = Paths.get("uploads/reports/pdf").toAbsolutePath().normalize();
+    private final Path importStagingLocation;
+    private final ShardedDirectory pdfSegmentStorage;
+    private final ShardedDirectory coverDerivativeStorage;
+    private final ShardedDirectory optimizedPdfStorage;
+    private final Path uploadsRoot;
+    private final Path quarantineLocation;
+    private final FileTombstoneRepository tombstoneRepository;
+    private final Duration tombstoneDelay;
+    private final Path uploadSessionLocation;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StoredBlobRepository blobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long maxStreamedPdfSize;
+    private final HotImageCache imageCache;
+    private final MappedPdfPool mappedPdfPool;
+
+    static final String OPTIMIZED_PDF = "optimized.pdf";
+    private static final long MAX_PDF_SIZE = 100 * 1024 * 1024;
+    private static final long MAX_COVER_SIZE = 10 * 1024 * 1024;
+    private static final String[] COVER_TYPES = {"image/jpeg", "image/png", "image/gif", "image/webp"};
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern SHARD_NAME = Pattern.compile("[0-9a-f]{2}");
+    private static final Pattern COVER_DERIVATIVE = Pattern.compile("([^.]+)-(w\\d+\\.(?:jpg|webp))");
+
+    public FileStorageService(ApplicationEventPublisher eventPublisher,
+                              StoredBlobRepository blobRepository,
+                              PlatformTransactionManager transactionManager,
+                              HotImageCache imageCache,
+                              MappedPdfPool mappedPdfPool,
+                              FileTombstoneRepository tombstoneRepository,
+                              @Value("${catalog.upload.max-streamed-pdf-size:500MB}") DataSize maxStreamedPdfSize,
+                              @Value("${catalog.storage.tombstone-delay:5m}") Duration tombstoneDelay,
+                              @Value("${catalog.storage.root:uploads}") String storageRoot) {
+        this.tombstoneRepository = tombstoneRepository;
+        this.tombstoneDelay = tombstoneDelay;
+        this.maxStreamedPdfSize = maxStreamedPdfSize.toBytes();
+        this.eventPublisher = eventPublisher;
+        this.imageCache = imageCache;
+        this.mappedPdfPool = mappedPdfPool;
+        this.blobRepository = blobRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // books, covers and pictures fan out into ab/cd/ subdirectories, see ShardedDirectory
+        Path root = Paths.get(storageRoot);
+        this.pdfStorage = new ShardedDirectory(root.resolve("books/pdfs"));
+        this.coverImageStorage = new ShardedDirectory(root.resolve("books/coverImages"));
+        this.profilePictureStorage = new ShardedDirectory(root.resolve("users/profilePictures"));
+        this.pdfReportLocation = root.resolve("reports/pdf").toAbsolutePath().normalize();
+        this.importStagingLocation = root.resolve("imports").toAbsolutePath().normalize();
+        this.pdfSegmentStorage = new ShardedDirectory(root.resolve("books/segments"));
+        this.coverDerivativeStorage = new ShardedDirectory(root.resolve("books/coverDerivatives"));
+        this.optimizedPdfStorage = new ShardedDirectory(root.resolve("books/optimized"));
+        this.uploadSessionLocation = root.resolve("sessions").toAbsolutePath().normalize();
+        this.uploadsRoot = root.toAbsolutePath().normalize();
+        this.quarantineLocation = uploadsRoot.resolve("quarantine");
 
         try {
-            Files.createDirectories(pdfStorageLocation);
-            Files.createDirectories(coverImageStorageLocation);
-            Files.createDirectories(profilePicturesLocation);
+            Files.createDirectories(pdfStorage.root());
+            Files.createDirectories(coverImageStorage.root());
+            Files.createDirectories(profilePictureStorage.root());
             Files.createDirectories(pdfReportLocation);
+            Files.createDirectories(importStagingLocation);
+            Files.createDirectories(pdfSegmentStorage.root());
+            Files.createDirectories(coverDerivativeStorage.root());
+            Files.createDirectories(optimizedPdfStorage.root());
+            Files.createDirectories(uploadSessionLocation);
+            Files.createDirectories(quarantineLocation);
         } catch (Exception ex) {
             throw new FileStorageException("Could not create the directory where the uploaded files will be stored.", HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -79,33 +172,418 @@ public class FileStorageService {
         }
     }
 
+//    same checks as validateFile for files read from disk, the type comes from the extension
+    public void validateLocalFile(Path file, long maxSize, String[] allowedTypes) {
+        try {
+            if (!Files.isRegularFile(file)) {
+                throw new FileStorageException("File not found: " + file.getFileName(), HttpStatus.BAD_REQUEST);
+            }
+            long size = Files.size(file);
+            if (size == 0) {
+                throw new FileStorageException("File is empty", HttpStatus.BAD_REQUEST);
+            }
+            if (size > maxSize) {
+                throw new FileStorageException("File is too large", HttpStatus.BAD_REQUEST);
+            }
+        } catch (IOException e) {
+            throw new FileStorageException("Could not read file: " + file.getFileName(), e, HttpStatus.BAD_REQUEST);
+        }
+        String contentType = determineContentType(file.getFileName().toString());
+        for (String type : allowedTypes) {
+            if (contentType.startsWith(type)) {
+                return;
+            }
+        }
+        throw new FileStorageException("Invalid file type. Allowed: " + String.join(", ", allowedTypes), HttpStatus.BAD_REQUEST);
+    }
+
+    public long getMaxStreamedPdfSize() {
+        return maxStreamedPdfSize;
+    }
+
+//    sparse file a chunked upload is assembled in, sized up front so chunks can land in any order
+    public Path createUploadFile(String sessionId, long size) {
+        Path file = uploadFile(sessionId);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size);
+            return file;
+        } catch (IOException e) {
+            throw new FileStorageException("Could not create upload file", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    public Path uploadFile(String sessionId) {
+        Path file = uploadSessionLocation.resolve(sessionId + ".part").normalize();
+        if (!file.startsWith(uploadSessionLocation)) {
+            throw new FileStorageException("Invalid upload session id", HttpStatus.BAD_REQUEST);
+        }
+        return file;
+    }
+
+//    write one chunk at its offset, chunks of the same upload can be written in parallel.
+//    returns the number of bytes written, which is never more than length
+    public long writeChunk(Path file, long position, InputStream in, long length) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(in);
+            long written = 0;
+            while (written < length) {
+                long n = channel.transferFrom(source, position + written, length - written);
+                if (n <= 0) {
+                    break;
+                }
+                written += n;
+            }
+            return written;
+        } catch (IOException e) {
+            throw new FileStorageException("Could not write chunk", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    public void deleteUploadFile(String sessionId) {
+        try {
+            Files.deleteIfExists(uploadFile(sessionId));
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to delete upload file", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+//    where the page segments of a stored pdf live, one directory per pdf
+    public Path getSegmentDirectory(String pdfFilename) {
+        String name = pdfFilename.endsWith(".pdf") ? pdfFilename.substring(0, pdfFilename.length() - 4) : pdfFilename;
+        return pdfSegmentStorage.locate(name);
+    }
+
+//    where the recompressed copy of a stored pdf lives, one directory per pdf
+    public Path getOptimizedPdfDirectory(String pdfFilename) {
+        return optimizedPdfStorage.locate(stem(pdfFilename));
+    }
+
+//    the copy of a stored pdf readers get: the optimized one once PdfOptimizationService has built it
+    public Path readingCopyOf(Path pdf) {
+        Path optimized = getOptimizedPdfDirectory(pdf.getFileName().toString()).resolve(OPTIMIZED_PDF);
+        return Files.isRegularFile(optimized) ? optimized : pdf;
+    }
+
+//    where the resized versions and placeholder of a stored cover live, one directory per cover
+    public Path getCoverDerivativeDirectory(String coverFilename) {
+        return coverDerivativeStorage.locate(stem(coverFilename));
+    }
+
+//    fresh working directory for one import job
+    public Path createImportStagingDirectory(String name) {
+        try {
+            return Files.createDirectories(importStagingDirectory(name));
+        } catch (IOException e) {
+            throw new FileStorageException("Could not create import directory", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+//    where the working directory of that name lives, it may not exist
+    public Path importStagingDirectory(String name) {
+        return importStagingLocation.resolve(name);
+    }
+
+//    remove an import working directory and everything in it
+    public void deleteImportStagingDirectory(Path directory) {
+        if (!directory.toAbsolutePath().normalize().startsWith(importStagingLocation)) {
+            return;
+        }
+        try {
+            deleteDirectory(directory);
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to delete import directory", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+//    remove a directory tree, missing directories are fine
+    public void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
 //    extract filename from path
     public String extractFilenameFromPath(String path) {
         return Paths.get(path).getFileName().toString();
     }
 
-    // PDF methods
-    public String storePdf(MultipartFile file, String filename) {
-        validateFile(file, 100 * 1024 * 1024, new String[]{"application/pdf"});
-        return storeFile(file, pdfStorageLocation, filename);
+    // PDF methods, book pdfs are stored once per distinct content and named by their SHA-256
+    public StoredPdf storePdf(MultipartFile file) {
+        validateFile(file, MAX_PDF_SIZE, new String[]{"application/pdf"});
+        try (InputStream in = file.getInputStream()) {
+            return storePdfBlob(new ValidatingPdfStream(in, MAX_PDF_SIZE));
+        } catch (IOException e) {
+            throw new FileStorageException("Could not read upload", e, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+//    store a pdf that is already on local disk (bulk import)
+    public StoredPdf storePdf(Path source) {
+        validateLocalFile(source, MAX_PDF_SIZE, new String[]{"application/pdf"});
+        try (InputStream in = Files.newInputStream(source)) {
+            return storePdfBlob(new ValidatingPdfStream(in, MAX_PDF_SIZE));
+        } catch (IOException e) {
+            throw new FileStorageException("Could not read file: " + source.getFileName(), e, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+//    store a pdf sent as the raw request body, bytes go from the socket straight into the pdf directory
+    public StoredPdf storePdf(InputStream body, long declaredLength) {
+        if (declaredLength > maxStreamedPdfSize) {
+            throw new FileStorageException("File is too large", HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        return storePdfBlob(new ValidatingPdfStream(body, maxStreamedPdfSize));
+    }
+
+//    take over a pdf that was assembled on local disk (chunked upload): it is read once to hash and
+//    check it, then renamed into storage, or deleted when the same content is already stored
+    public StoredPdf adoptPdf(Path file) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(new ValidatingPdfStream(Files.newInputStream(file), maxStreamedPdfSize), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            return published(commitBlob(file, hash, pdfStorage, ".pdf", this::countPages));
+        } catch (IOException e) {
+            throw new FileStorageException("Could not read file: " + file.getFileName(), e, HttpStatus.BAD_REQUEST);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // a stray upload file is removed with its session
+            }
+        }
+    }
+
+    private StoredPdf storePdfBlob(InputStream in) {
+        return published(storeBlob(in, pdfStorage, ".pdf", this::countPages));
+    }
+
+    private StoredPdf published(StoredContent stored) {
+        // identical bytes were already segmented when they were first stored
+        if (stored.created()) {
+            eventPublisher.publishEvent(new PdfStoredEvent(stored.path()));
+        }
+        return new StoredPdf(stored.path(), stored.pageCount());
+    }
+
+    // a file PDFBox can't open is not a pdf a reader could use either
+    private int countPages(Path pdf) {
+        try (PDDocument document = Loader.loadPDF(pdf.toFile(), null, null, null, IOUtils.createTempFileOnlyStreamCache())) {
+            return document.getNumberOfPages();
+        } catch (IOException e) {
+            throw new FileStorageException("File is not a readable PDF", e, HttpStatus.BAD_REQUEST);
+        }
     }
 
 
 //    load pdf
     public Resource loadPdf(String filename) {
-        return loadFile(pdfStorageLocation, filename);
+        return loadResource(pdfStorage.locate(filename), filename);
+    }
+
+//    path of a stored pdf, for streaming straight from disk
+    public Path resolvePdf(String filename) {
+        Path filePath = pdfStorage.locate(filename);
+        if (!Files.isRegularFile(filePath)) {
+            throw new FileStorageException("File not found: " + filename, HttpStatus.NOT_FOUND);
+        }
+        return filePath;
     }
 
     // allowed image formats
-    public String storeCoverImage(MultipartFile file, String filename) {
-        validateFile(file, 10 * 1024 * 1024, new String[]{"image/jpeg", "image/png", "image/gif", "image/webp"});
-        return storeFile(file, coverImageStorageLocation, filename);
+    public String storeCoverImage(MultipartFile file) {
+        validateFile(file, MAX_COVER_SIZE, COVER_TYPES);
+        try (InputStream in = file.getInputStream()) {
+            return storeBlob(in, coverImageStorage, extensionFor(file.getContentType()), path -> 0).path();
+        } catch (IOException e) {
+            throw new FileStorageException("Could not read upload", e, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+//    store a cover image that is already on local disk (bulk import)
+    public String storeCoverImage(Path source) {
+        validateLocalFile(source, MAX_COVER_SIZE, COVER_TYPES);
+        try (InputStream in = Files.newInputStream(source)) {
+            String contentType = determineContentType(source.getFileName().toString());
+            return storeBlob(in, coverImageStorage, extensionFor(contentType), path -> 0).path();
+        } catch (IOException e) {
+            throw new FileStorageException("Could not read file: " + source.getFileName(), e, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+//    strong validator for a stored pdf or cover: the content hash for content addressed files, null for older files
+    public static String contentTag(String filePath) {
+        if (filePath == null) {
+            return null;
+        }
+        String filename = Paths.get(filePath).getFileName().toString();
+        int dot = filename.lastIndexOf('.');
+        String hash = dot < 0 ? filename : filename.substring(0, dot);
+        return CONTENT_HASH.matcher(hash).matches() ? "\"" + hash + "\"" : null;
+    }
+
+    public record StoredPdf(String path, int pageCount) {}
+
+    private record StoredContent(String path, boolean created, int pageCount) {}
+
+//    hash the bytes while they are copied to a temp file, then either count one more reference to an
+//    identical blob (and drop the copy) or move the copy into place as a new blob.
+//    inspect looks at new content before it is accepted and returns its page count
+    private StoredContent storeBlob(InputStream in, ShardedDirectory storage, String extension, ToIntFunction<Path> inspect) {
+        Path temp = storage.root().resolve(".upload-" + UUID.randomUUID() + ".tmp");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (DigestInputStream hashing = new DigestInputStream(in, digest)) {
+                Files.copy(hashing, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return commitBlob(temp, HexFormat.of().formatHex(digest.digest()), storage, extension, inspect);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not store file", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // a stray temp file is harmless
+            }
+        }
+    }
+
+    // turn a fully written file into a stored blob, the file is moved into place or left for the caller to delete
+    private StoredContent commitBlob(Path file, String hash, ShardedDirectory storage, String extension, ToIntFunction<Path> inspect)
+            throws IOException {
+        long size = Files.size(file);
+        Path target = storage.prepare(hash + extension);
+
+        // known content was inspected when it was first stored
+        Integer knownPages = blobRepository.findById(hash).map(StoredBlob::getPageCount).orElse(null);
+        int pageCount = knownPages != null ? knownPages : inspect.applyAsInt(file);
+
+        // two uploads of new bytes can race to insert the same row, the loser just counts a reference
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> addReference(hash, size, pageCount, file, target));
+            } catch (DataIntegrityViolationException e) {
+                if (attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // runs inside a transaction, the row lock from the update/insert keeps a concurrent release from
+    // deleting the file until we commit
+    private StoredContent addReference(String hash, long size, int pageCount, Path temp, Path target) {
+        try {
+            if (blobRepository.incrementReferences(hash) > 0) {
+                Path existing = currentLocation(Paths.get(blobRepository.findById(hash).orElseThrow().getFilePath()));
+                if (!Files.exists(existing)) {
+                    // the row outlived its file, put the bytes back
+                    Files.move(temp, existing, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return new StoredContent(existing.toString(), false, pageCount);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            blobRepository.insert(hash, target.toString(), size, pageCount, LocalDateTime.now());
+            return new StoredContent(target.toString(), true, pageCount);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not store file", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // checks the %PDF- header on the first bytes and stops at the size limit, so a bad upload is
+    // rejected while it is still arriving instead of after all of it was written out
+    private static final class ValidatingPdfStream extends FilterInputStream {
+        private static final byte[] MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+        private final long maxSize;
+        private long count;
+
+        ValidatingPdfStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                check(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                check(buffer, offset, n);
+            }
+            return n;
+        }
+
+        private void check(byte[] buffer, int offset, int length) {
+            for (int i = 0; i < length && count + i < MAGIC.length; i++) {
+                if (buffer[offset + i] != MAGIC[(int) (count + i)]) {
+                    throw new FileStorageException("File is not a PDF", HttpStatus.BAD_REQUEST);
+                }
+            }
+            count += length;
+            if (count > maxSize) {
+                throw new FileStorageException("File is too large", HttpStatus.PAYLOAD_TOO_LARGE);
+            }
+        }
+    }
+
+    private static String extensionFor(String contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        if (contentType.startsWith("image/jpeg")) {
+            return ".jpg";
+        } else if (contentType.startsWith("image/png")) {
+            return ".png";
+        } else if (contentType.startsWith("image/gif")) {
+            return ".gif";
+        } else if (contentType.startsWith("image/webp")) {
+            return ".webp";
+        }
+        return "";
     }
 
 
 //    load cover image of book
     public Resource loadCoverImage(String filename) {
-        return loadFile(coverImageStorageLocation, filename);
+        return loadResource(coverImageStorage.locate(filename), filename);
+    }
+
+//    file behind a versioned cover name: the stored cover itself, or "<cover name>-w240.jpg" for a resized version
+    public Path resolveCoverVersion(String name) {
+        Matcher derivative = COVER_DERIVATIVE.matcher(name);
+        if (derivative.matches()) {
+            return resolveInside(getCoverDerivativeDirectory(derivative.group(1)), derivative.group(2));
+        }
+        return coverImageStorage.locate(name);
+    }
+
+//    file behind a versioned profile picture name
+    public Path resolveProfilePicture(String filename) {
+        return profilePictureStorage.locate(filename);
+    }
+
+    private static Path resolveInside(Path location, String filename) {
+        Path file = location.resolve(filename).normalize();
+        if (!file.getParent().equals(location)) {
+            throw new FileStorageException("Invalid filename: " + filename, HttpStatus.BAD_REQUEST);
+        }
+        return file;
     }
 
 
@@ -135,11 +613,15 @@ public class FileStorageService {
     // Profile Picture Methods
     public String storeProfilePicture(MultipartFile file, String filename) {
         validateFile(file, 5 * 1024 * 1024, new String[]{"image/jpeg", "image/png", "image/gif"});
-        return storeFile(file, profilePicturesLocation, filename);
+        try {
+            return storeFile(file, profilePictureStorage.prepare(filename).getParent(), filename);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not store file: " + filename, e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
     }
 
     public Resource loadProfilePicture(String filename) {
-        return loadFile(profilePicturesLocation, filename);
+        return loadResource(profilePictureStorage.locate(filename), filename);
     }
 
 
@@ -161,8 +643,11 @@ public class FileStorageService {
 
 //    how files will be loaded
     private Resource loadFile(Path location, String filename) {
+        return loadResource(location.resolve(filename).normalize(), filename);
+    }
+
+    private Resource loadResource(Path filePath, String filename) {
         try {
-            Path filePath = location.resolve(filename).normalize();
             Resource resource = new UrlResource(filePath.toUri());
 
             if (resource.exists()) {
@@ -175,15 +660,229 @@ public class FileStorageService {
         }
     }
 
+//    where a file recorded in the database is now, it may have moved into its shard since it was recorded
+    private Path currentLocation(Path recorded) {
+        for (ShardedDirectory storage : List.of(pdfStorage, coverImageStorage, profilePictureStorage)) {
+            if (storage.contains(recorded)) {
+                return storage.locate(recorded.getFileName().toString());
+            }
+        }
+        return recorded;
+    }
+
+//    move a file from its flat location into its shard, together with the segments or resized
+//    versions that belong to it, and return where it is now. safe to repeat
+    public Path moveToShard(Path recorded) {
+        for (ShardedDirectory storage : List.of(pdfStorage, coverImageStorage, profilePictureStorage)) {
+            if (storage.contains(recorded)) {
+                String name = recorded.getFileName().toString();
+                Path flat = storage.root().resolve(name);
+                Path target = storage.pathFor(name);
+                try {
+                    moveEntry(flat, target);
+                    if (storage == pdfStorage) {
+                        moveEntry(pdfSegmentStorage.root().resolve(stem(name)), pdfSegmentStorage.pathFor(stem(name)));
+                    } else if (storage == coverImageStorage) {
+                        moveEntry(coverDerivativeStorage.root().resolve(stem(name)), coverDerivativeStorage.pathFor(stem(name)));
+                    }
+                } catch (IOException e) {
+                    throw new FileStorageException("Could not move " + name + " into its shard", e, HttpStatus.INTERNAL_SERVER_ERROR);
+                }
+                return Files.exists(target) ? target : recorded;
+            }
+        }
+        return recorded;
+    }
+
+//    move whatever is still in the flat roots and not referenced from the database into its shard,
+//    returns the number of entries moved
+    public int moveLooseEntriesToShards() throws IOException {
+        int moved = 0;
+        for (ShardedDirectory storage : List.of(pdfStorage, coverImageStorage, profilePictureStorage,
+                pdfSegmentStorage, coverDerivativeStorage)) {
+            List<Path> loose = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(storage.root())) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    // shard directories, uploads in progress and half built segment sets stay where they are
+                    if (SHARD_NAME.matcher(name).matches() || name.startsWith(".") || name.endsWith(".tmp")) {
+                        continue;
+                    }
+                    loose.add(entry);
+                }
+            }
+            for (Path entry : loose) {
+                if (storage == pdfStorage || storage == coverImageStorage) {
+                    moveToShard(entry);
+                } else {
+                    moveEntry(entry, storage.pathFor(entry.getFileName().toString()));
+                }
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    // rename within the same file system. when the target is already there (an earlier, interrupted
+    // run) the flat copy is the same content and goes away
+    private void moveEntry(Path flat, Path target) throws IOException {
+        if (!Files.exists(flat)) {
+            return;
+        }
+        mappedPdfPool.invalidate(flat);
+        imageCache.invalidate(flat);
+        if (Files.exists(target)) {
+            if (Files.isDirectory(flat)) {
+                deleteDirectory(flat);
+            } else {
+                Files.deleteIfExists(flat);
+            }
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        Files.move(flat, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String stem(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot > 0 ? filename.substring(0, dot) : filename;
+    }
+
+//    release a file from a request: a tombstone is recorded now and StorageReconciler does the
+//    deleting off-thread once tombstone-delay has passed, so streams still reading it can finish
+    public void deleteFileLater(String filePath) {
+        if (filePath == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        tombstoneRepository.save(new FileTombstone(null, filePath, now.plus(tombstoneDelay), 0, null, now));
+    }
+
+//    every form a path to this file may have been recorded in: as given, flat and sharded
+    public List<String> knownLocations(Path file) {
+        for (ShardedDirectory storage : List.of(pdfStorage, coverImageStorage, profilePictureStorage)) {
+            if (storage.contains(file)) {
+                String name = file.getFileName().toString();
+                return List.of(file.toString(), storage.root().resolve(name).toString(), storage.pathFor(name).toString())
+                        .stream().distinct().toList();
+            }
+        }
+        return List.of(file.toString());
+    }
+
+//    move an unreferenced file out of the way, into quarantine/<date>/ under the same relative path.
+//    returns where it went so a file that turns out to be wanted can be put back
+    public Path quarantine(Path file) throws IOException {
+        Path relative = uploadsRoot.relativize(file.toAbsolutePath().normalize());
+        Path target = quarantineLocation.resolve(LocalDate.now().toString()).resolve(relative);
+        Files.createDirectories(target.getParent());
+        mappedPdfPool.invalidate(file);
+        imageCache.invalidate(file);
+        Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    public void restoreFromQuarantine(Path quarantined, Path original) throws IOException {
+        Files.createDirectories(original.getParent());
+        Files.move(quarantined, original, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+//    delete quarantine days older than the given date, returns how many were removed
+    public int purgeQuarantine(LocalDate before) throws IOException {
+        int purged = 0;
+        try (DirectoryStream<Path> days = Files.newDirectoryStream(quarantineLocation)) {
+            for (Path day : days) {
+                try {
+                    if (LocalDate.parse(day.getFileName().toString()).isBefore(before)) {
+                        deleteDirectory(day);
+                        purged++;
+                    }
+                } catch (DateTimeParseException e) {
+                    // not ours, leave it
+                }
+            }
+        }
+        return purged;
+    }
+
+    ShardedDirectory pdfStorage() {
+        return pdfStorage;
+    }
+
+    ShardedDirectory coverImageStorage() {
+        return coverImageStorage;
+    }
+
+    ShardedDirectory profilePictureStorage() {
+        return profilePictureStorage;
+    }
+
+    ShardedDirectory pdfSegmentStorage() {
+        return pdfSegmentStorage;
+    }
+
+    ShardedDirectory coverDerivativeStorage() {
+        return coverDerivativeStorage;
+    }
+
+    ShardedDirectory optimizedPdfStorage() {
+        return optimizedPdfStorage;
+    }
+
+//    content addressed files only go away when the last reference to them is released
     public void deleteFile(String filePath) {
+        Path path = currentLocation(Paths.get(filePath));
+        String tag = contentTag(filePath);
+        if (tag != null) {
+            String hash = tag.substring(1, tag.length() - 1);
+            Boolean released = transactionTemplate.execute(status -> releaseReference(hash, path));
+            if (Boolean.TRUE.equals(released)) {
+                return;
+            }
+        }
+
         try {
-            Path path = Paths.get(filePath);
-            Files.deleteIfExists(path);
+            deleteStoredFile(path);
         } catch (IOException e) {
             throw new FileStorageException("Failed to delete file: " + filePath, e, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    // false when the hash has no row, the file then predates reference counting
+    private boolean releaseReference(String hash, Path path) {
+        if (blobRepository.decrementReferences(hash) == 0) {
+            return false;
+        }
+        if (blobRepository.deleteIfUnreferenced(hash) > 0) {
+            try {
+                // deleted before commit, a concurrent store of the same bytes waits on our row lock
+                deleteStoredFile(path);
+            } catch (IOException e) {
+                throw new FileStorageException("Failed to delete file: " + path, e, HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        return true;
+    }
+
+    private void deleteStoredFile(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        imageCache.invalidate(path);
+        // a book pdf takes its page segments, its optimized copy and their memory mappings with it
+        if (pdfStorage.contains(path)) {
+            mappedPdfPool.invalidate(path);
+            deleteDirectory(getSegmentDirectory(path.getFileName().toString()));
+            Path optimized = getOptimizedPdfDirectory(path.getFileName().toString());
+            mappedPdfPool.invalidate(optimized.resolve(OPTIMIZED_PDF));
+            deleteDirectory(optimized);
+        }
+        // and a cover its resized versions
+        if (coverImageStorage.contains(path)) {
+            Path derivatives = getCoverDerivativeDirectory(path.getFileName().toString());
+            deleteDirectory(derivatives);
+            imageCache.invalidate(derivatives);
+        }
+    }
+
     //  method for storing PDF from byte array (for report generation)
     public String storePdf(byte[] content, String filename) {
         // Validate filename
@@ -0,0 +1,120 @@
+package com.library.management_system.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+// Bytes of the most requested images (covers, their resized versions, profile pictures) kept in
+// direct buffers, so they live outside the Java heap and a hit is a memory copy with no stat, no
+// open and no database lookup. Caffeine bounds the total size and keeps the frequently read images.
+// Keys are absolute file paths; FileStorageService invalidates them when it deletes files, and
+// since stored images are named by content a cached entry can never hold stale bytes.
+@Component
+public class HotImageCache {
+    private final Cache<String, ByteBuffer> cache;
+    private final long maxEntrySize;
+
+    public HotImageCache(@Value("${catalog.image-cache.max-size:64MB}") DataSize maxSize,
+                         @Value("${catalog.image-cache.max-entry-size:1MB}") DataSize maxEntrySize) {
+        this.maxEntrySize = maxEntrySize.toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, ByteBuffer bytes) -> bytes.capacity())
+                .build();
+    }
+
+//    write an image that never changes under its URL: 304 when the client has it, else the bytes
+    public void serveImmutable(Path file, String contentType, String etag, boolean shared,
+                               ServletWebRequest webRequest) throws IOException {
+        if (webRequest.checkNotModified(etag)) {
+            return;
+        }
+        CacheControl cacheControl = CacheControl.maxAge(Duration.ofDays(365)).immutable();
+        cacheControl = shared ? cacheControl.cachePublic() : cacheControl.cachePrivate();
+
+        HttpServletResponse response = webRequest.getResponse();
+        ByteBuffer bytes = get(file);
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        response.setHeader(HttpHeaders.ETAG, etag);
+
+        if (bytes != null) {
+            response.setContentLength(bytes.remaining());
+            if (!"HEAD".equalsIgnoreCase(webRequest.getRequest().getMethod())) {
+                WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+            }
+            return;
+        }
+
+        // too big to be worth caching, stream it from disk
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            response.setContentLengthLong(size);
+            if (!"HEAD".equalsIgnoreCase(webRequest.getRequest().getMethod())) {
+                WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+                long position = 0;
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, out);
+                }
+            }
+        }
+    }
+
+//    cached bytes of a file as a fresh read-only view, null when the file is larger than one entry may be
+    ByteBuffer get(Path file) throws IOException {
+        String key = file.toAbsolutePath().normalize().toString();
+        ByteBuffer cached = cache.getIfPresent(key);
+        if (cached == null) {
+            cached = load(file);
+            if (cached == null) {
+                return null;
+            }
+            cache.put(key, cached);
+        }
+        return cached.asReadOnlyBuffer();
+    }
+
+    private ByteBuffer load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxEntrySize) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the file is in
+            }
+            return buffer.flip();
+        } catch (NoSuchFileException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Image not found");
+        }
+    }
+
+//    drop a file, or everything under a directory, from the cache
+    public void invalidate(Path path) {
+        String prefix = path.toAbsolutePath().normalize().toString();
+        cache.asMap().keySet().removeIf(key -> key.equals(prefix) || key.startsWith(prefix + File.separator));
+    }
+}
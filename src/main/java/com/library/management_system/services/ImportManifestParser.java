@@ -0,0 +1,173 @@
+package com.library.management_system.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Reads a bulk import manifest, either CSV with a header row or a JSON array of objects.
+// Column names are matched loosely: "pricePerMonth", "price_per_month" and "Price Per Month" are the same column.
+public class ImportManifestParser {
+
+    public record Row(
+            int rowNumber,
+            String title,
+            String author,
+            String isbn,
+            String description,
+            String genre,
+            String publishedDate,
+            String pricePerMonth,
+            String numberOfPages,
+            String pdfFile,
+            String coverFile
+    ) {}
+
+    private ImportManifestParser() {
+    }
+
+    public static List<Row> parse(Path manifest) {
+        String name = manifest.getFileName().toString().toLowerCase(Locale.ROOT);
+        try {
+            if (name.endsWith(".json")) {
+                return parseJson(manifest);
+            }
+            if (name.endsWith(".csv")) {
+                return parseCsv(manifest);
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not read manifest: " + e.getMessage());
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Manifest must be a .csv or .json file");
+    }
+
+    private static List<Row> parseJson(Path manifest) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(manifest.toFile());
+        if (root == null || !root.isArray()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "JSON manifest must be an array of books");
+        }
+        List<Row> rows = new ArrayList<>();
+        int rowNumber = 0;
+        for (JsonNode node : root) {
+            rowNumber++;
+            Map<String, String> values = new HashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                values.put(columnKey(field.getKey()), field.getValue().isNull() ? null : field.getValue().asText());
+            }
+            rows.add(toRow(rowNumber, values));
+        }
+        return rows;
+    }
+
+    private static List<Row> parseCsv(Path manifest) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            List<String> header = readRecord(reader);
+            if (header == null) {
+                return rows;
+            }
+            List<String> columns = header.stream().map(ImportManifestParser::columnKey).toList();
+
+            int rowNumber = 0;
+            List<String> record;
+            while ((record = readRecord(reader)) != null) {
+                rowNumber++;
+                if (record.size() == 1 && record.get(0).isBlank()) {
+                    continue;
+                }
+                Map<String, String> values = new HashMap<>();
+                for (int i = 0; i < columns.size() && i < record.size(); i++) {
+                    values.put(columns.get(i), record.get(i));
+                }
+                rows.add(toRow(rowNumber, values));
+            }
+        }
+        return rows;
+    }
+
+    // one CSV record, quoted fields may hold commas, doubled quotes and line breaks
+    private static List<String> readRecord(Reader reader) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            any = true;
+            char ch = (char) c;
+            if (quoted) {
+                if (ch == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (ch == '\n') {
+                break;
+            } else if (ch != '\r') {
+                field.append(ch);
+            }
+        }
+        if (!any) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static Row toRow(int rowNumber, Map<String, String> values) {
+        return new Row(
+                rowNumber,
+                trimmed(values.get("title")),
+                trimmed(values.get("author")),
+                trimmed(values.get("isbn")),
+                trimmed(values.get("description")),
+                trimmed(values.get("genre")),
+                trimmed(values.get("publisheddate")),
+                trimmed(values.get("pricepermonth")),
+                trimmed(values.get("numberofpages")),
+                trimmed(values.get("pdffile")),
+                trimmed(values.get("coverfile"))
+        );
+    }
+
+    private static String columnKey(String column) {
+        return column.replaceAll("[^A-Za-z0-9]", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static String trimmed(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
@@ -4,10 +4,10 @@ import com.library.management_system.DTOs.MailingListDto;
 import com.library.management_system.models.MailingList;
 import com.library.management_system.models.UserModel;
 import com.library.management_system.repositories.MailingRepository;
-import jakarta.mail.MessagingException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Optional;
@@ -15,12 +15,12 @@ import java.util.UUID;
 
 @Service
 public class MailingService {
-    private final EmailService emailService;
+    private final EmailOutbox emailOutbox;
     private final MailingRepository mailingRepository;
 
 
-    public MailingService(EmailService emailService, MailingRepository mailingRepository) {
-        this.emailService = emailService;
+    public MailingService(EmailOutbox emailOutbox, MailingRepository mailingRepository) {
+        this.emailOutbox = emailOutbox;
         this.mailingRepository = mailingRepository;
     }
 
@@ -29,6 +29,7 @@ public class MailingService {
         return mailingRepository.findByEmail(email);
     }
 
+    @Transactional
     public void subscribe(String email) {
         if (findByEmail(email).isPresent()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "you have already subscribe ");
@@ -44,13 +45,7 @@ public class MailingService {
         String baseUrl = "http://localhost:8080";
         String verificationLink = baseUrl + "/api/mailing/verify-email?token=" + token;
 
-        try {
-            emailService.sendEmail(email, "click on the link to confirm you subscribtion to our mailing list", verificationLink);
-        } catch (MessagingException e) {
-
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-                    "Failed to send verification email. Please try again.");
-        }
+        emailOutbox.enqueue(email, "click on the link to confirm you subscribtion to our mailing list", verificationLink, true);
 
 
     }
@@ -0,0 +1,243 @@
+package com.library.management_system.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Read-only memory mappings of the most streamed pdfs, shared by every request reading the same book.
+// A range read is a slice of the mapping, so concurrent readers of a bestseller share one set of
+// page cache pages and nothing is copied through the heap.
+// The pool is LRU, bounded by file count and mapped bytes. Each mapping is reference counted: the pool
+// holds one reference and every open lease another, and the mapping is unmapped the moment the last
+// one is released, on eviction, on invalidate() from FileStorageService.deleteFile, or on shutdown.
+@Component
+@Slf4j
+public class MappedPdfPool implements AutoCloseable {
+    // a single MappedByteBuffer can't go past 2 GB, larger files are mapped in pieces
+    static final long CHUNK_SIZE = 1L << 30;
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private final int maxFiles;
+    private final long maxBytes;
+    private final LinkedHashMap<Path, Mapping> mappings = new LinkedHashMap<>(16, 0.75f, true);
+    private long mappedBytes;
+
+    public MappedPdfPool(@Value("${catalog.pdf-mapping.max-files:32}") int maxFiles,
+                         @Value("${catalog.pdf-mapping.max-size:4GB}") DataSize maxSize) {
+        this.maxFiles = maxFiles;
+        this.maxBytes = maxSize.toBytes();
+    }
+
+//    a lease on the mapping of a file, close it once the response is written
+    public Lease acquire(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (this) {
+            Mapping mapping = mappings.get(key);
+            if (mapping != null && mapping.retain()) {
+                return new Lease(mapping);
+            }
+        }
+
+        // mapping takes a system call per chunk, keep it outside the lock
+        Mapping fresh = map(key);
+        List<Mapping> evicted = new ArrayList<>();
+        Lease lease;
+        synchronized (this) {
+            Mapping existing = mappings.get(key);
+            if (existing != null && existing.retain()) {
+                // another request mapped it meanwhile, share theirs
+                lease = new Lease(existing);
+                evicted.add(fresh);
+            } else if (maxFiles <= 0 || fresh.size > maxBytes) {
+                // too big to pool, the lease owns the only reference
+                return new Lease(fresh);
+            } else {
+                if (existing != null) {
+                    mappedBytes -= existing.size;
+                }
+                fresh.retain();
+                mappings.put(key, fresh);
+                mappedBytes += fresh.size;
+                lease = new Lease(fresh);
+                Iterator<Map.Entry<Path, Mapping>> eldest = mappings.entrySet().iterator();
+                while ((mappings.size() > maxFiles || mappedBytes > maxBytes) && eldest.hasNext()) {
+                    Mapping candidate = eldest.next().getValue();
+                    if (candidate == fresh) {
+                        continue;
+                    }
+                    eldest.remove();
+                    mappedBytes -= candidate.size;
+                    evicted.add(candidate);
+                }
+            }
+        }
+        evicted.forEach(Mapping::release);
+        return lease;
+    }
+
+//    forget the mapping of a file, it is unmapped as soon as the last reader is done with it
+    public void invalidate(Path file) {
+        Mapping removed;
+        synchronized (this) {
+            removed = mappings.remove(file.toAbsolutePath().normalize());
+            if (removed != null) {
+                mappedBytes -= removed.size;
+            }
+        }
+        if (removed != null) {
+            removed.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        List<Mapping> all;
+        synchronized (this) {
+            all = new ArrayList<>(mappings.values());
+            mappings.clear();
+            mappedBytes = 0;
+        }
+        all.forEach(Mapping::release);
+    }
+
+    synchronized int size() {
+        return mappings.size();
+    }
+
+    private static Mapping map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<MappedByteBuffer> chunks = new ArrayList<>();
+            for (long position = 0; position < size; position += CHUNK_SIZE) {
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position)));
+            }
+            // the mapping stays valid after the channel is closed
+            return new Mapping(file, size, chunks);
+        }
+    }
+
+    // a mapped file and how many holders it has, the pool being one of them while pooled
+    static final class Mapping {
+        private final Path file;
+        private final long size;
+        private final List<MappedByteBuffer> chunks;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Mapping(Path file, long size, List<MappedByteBuffer> chunks) {
+            this.file = file;
+            this.size = size;
+            this.chunks = chunks;
+        }
+
+        // false once the mapping is gone, the caller then maps the file again
+        private boolean retain() {
+            int current;
+            do {
+                current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                chunks.forEach(MappedPdfPool::unmap);
+                log.debug("Unmapped {}", file.getFileName());
+            }
+        }
+
+        boolean isReleased() {
+            return references.get() == 0;
+        }
+    }
+
+    // one reader's hold on a mapping
+    public static final class Lease implements AutoCloseable {
+        private final Mapping mapping;
+        private boolean closed;
+
+        private Lease(Mapping mapping) {
+            this.mapping = mapping;
+        }
+
+        public long size() {
+            return mapping.size;
+        }
+
+//        read-only views of bytes [start, start + length), one per mapped chunk the range touches
+        public List<ByteBuffer> slices(long start, long length) {
+            List<ByteBuffer> slices = new ArrayList<>();
+            long position = start;
+            long end = Math.min(start + length, mapping.size);
+            while (position < end) {
+                int chunk = (int) (position / CHUNK_SIZE);
+                int offset = (int) (position % CHUNK_SIZE);
+                int count = (int) Math.min(end - position, CHUNK_SIZE - offset);
+                slices.add(mapping.chunks.get(chunk).asReadOnlyBuffer().position(offset).limit(offset + count).slice());
+                position += count;
+            }
+            return slices;
+        }
+
+        Mapping mapping() {
+            return mapping;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                mapping.release();
+            }
+        }
+    }
+
+    // unmap right away instead of whenever the GC gets to the buffer. only ever called once no lease
+    // can reach the buffer anymore, touching an unmapped buffer would crash the JVM
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            log.warn("Could not unmap pdf buffer, leaving it to the garbage collector", e);
+        }
+    }
+
+    // sun.misc.Unsafe.invokeCleaner, the one supported way to unmap a MappedByteBuffer before Java's FFM api
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(unsafe);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.info("Mapped pdfs will be unmapped by the garbage collector: {}", e.toString());
+            return null;
+        }
+    }
+}
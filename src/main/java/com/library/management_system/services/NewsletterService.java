@@ -0,0 +1,359 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.NewsletterRequestDTO;
+import com.library.management_system.models.MailingList;
+import com.library.management_system.models.NewsletterCampaign;
+import com.library.management_system.models.NewsletterDelivery;
+import com.library.management_system.models.UserModel;
+import com.library.management_system.repositories.MailingRepository;
+import com.library.management_system.repositories.NewsletterCampaignRepository;
+import com.library.management_system.repositories.NewsletterDeliveryRepository;
+import freemarker.template.Configuration;
+import freemarker.core.TemplateClassResolver;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Newsletter campaigns to the verified mailing list, started by an admin and run on the newsletter thread.
+// Subscribers are read a page at a time in id order and the template is parsed once per run, so memory
+// stays flat however long the list is. Each page is cut into batches that go out over one smtp
+// connection each, on mail.newsletter.connections threads, no faster than mail.newsletter.rate-per-second.
+// After a page the delivery rows and the campaign's cursor are written in one transaction; a campaign
+// stopped by a crash or restart is picked up after its lease runs out and carries on from the cursor,
+// only the page that was in flight can be sent twice.
+@Service
+@Slf4j
+public class NewsletterService {
+    static final String SENT = "SENT";
+    static final String FAILED = "FAILED";
+
+    private static final String INSERT_DELIVERY = "INSERT IGNORE INTO newsletter_deliveries " +
+            "(campaign_id, subscriber_id, email, status, error, sent_at) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final NewsletterCampaignRepository campaignRepository;
+    private final NewsletterDeliveryRepository deliveryRepository;
+    private final MailingRepository mailingRepository;
+    private final EmailService emailService;
+    private final ContactService contactService;
+    // admin written bodies get their own sandboxed configuration, not the one the app's mail templates use
+    private final Configuration templateConfiguration = newsletterTemplateConfiguration();
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor newsletterExecutor;
+    private final Executor newsletterSendExecutor;
+    private final int pageSize;
+    private final int batchSize;
+    private final double ratePerSecond;
+    private final Duration lease;
+    private final Object rateLock = new Object();
+    private long nextSendAt;
+
+    public NewsletterService(NewsletterCampaignRepository campaignRepository,
+                             NewsletterDeliveryRepository deliveryRepository,
+                             MailingRepository mailingRepository,
+                             EmailService emailService,
+                             ContactService contactService,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             @Qualifier("newsletterExecutor") Executor newsletterExecutor,
+                             @Qualifier("newsletterSendExecutor") Executor newsletterSendExecutor,
+                             @Value("${mail.newsletter.page-size:500}") int pageSize,
+                             @Value("${mail.newsletter.batch-size:50}") int batchSize,
+                             @Value("${mail.newsletter.rate-per-second:20}") double ratePerSecond,
+                             @Value("${mail.newsletter.lease:10m}") Duration lease) {
+        this.campaignRepository = campaignRepository;
+        this.deliveryRepository = deliveryRepository;
+        this.mailingRepository = mailingRepository;
+        this.emailService = emailService;
+        this.contactService = contactService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newsletterExecutor = newsletterExecutor;
+        this.newsletterSendExecutor = newsletterSendExecutor;
+        this.pageSize = pageSize;
+        this.batchSize = batchSize;
+        this.ratePerSecond = ratePerSecond;
+        this.lease = lease;
+    }
+
+//    create the campaign and hand it to the newsletter thread, a template that doesn't parse or render is refused here
+    public NewsletterCampaign startCampaign(NewsletterRequestDTO request) {
+        Template template = parse("newsletter", request.body());
+        try {
+            render(template, "subscriber@example.com");
+        } catch (IOException | TemplateException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid newsletter template: " + e.getMessage());
+        }
+
+        NewsletterCampaign campaign = new NewsletterCampaign();
+        UserModel user = contactService.getCurrentAuthenticatedUser();
+        campaign.setRequestedBy(user != null ? user.getEmail() : null);
+        campaign.setSubject(request.subject());
+        campaign.setTemplate(request.body());
+        campaign.setStatus("PENDING");
+        campaign.setTotalRecipients(mailingRepository.countByVerificationTokenIsNull());
+        campaign.setCreatedAt(LocalDateTime.now());
+        campaign = campaignRepository.save(campaign);
+
+        Long campaignId = campaign.getId();
+        try {
+            newsletterExecutor.execute(() -> runCampaign(campaignId));
+        } catch (RejectedExecutionException e) {
+            // saved already, FAILED is what resume picks up once the queue has room again
+            String message = "Too many campaigns waiting, resume it later";
+            campaignRepository.finish(campaignId, FAILED, message, LocalDateTime.now());
+            campaign.setStatus(FAILED);
+            campaign.setErrorMessage(message);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many campaigns waiting, try again later");
+        }
+        return campaign;
+    }
+
+//    carry on with a FAILED campaign from where it stopped
+    public NewsletterCampaign resumeCampaign(Long campaignId) {
+        NewsletterCampaign campaign = campaignRepository.findById(campaignId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Campaign not found"));
+        if (!FAILED.equals(campaign.getStatus())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Only a failed campaign can be resumed, this one is " + campaign.getStatus());
+        }
+        try {
+            newsletterExecutor.execute(() -> runCampaign(campaignId));
+        } catch (RejectedExecutionException e) {
+            // still FAILED, it can be resumed again later
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many campaigns waiting, try again later");
+        }
+        return campaign;
+    }
+
+    public Optional<NewsletterCampaign> getCampaign(Long campaignId) {
+        return campaignRepository.findById(campaignId);
+    }
+
+    public Page<NewsletterDelivery> getDeliveries(Long campaignId, String status, Pageable pageable) {
+        return deliveryRepository.findByCampaignIdAndStatusOrderByIdAsc(campaignId, status, pageable);
+    }
+
+//    campaigns whose instance died or restarted mid run
+    @Scheduled(fixedDelayString = "${mail.newsletter.stalled-check-ms:60000}")
+    public void resumeStalledCampaigns() {
+        for (Long campaignId : campaignRepository.findStalled(LocalDateTime.now())) {
+            log.info("Newsletter campaign {} lost its sender, resuming", campaignId);
+            try {
+                newsletterExecutor.execute(() -> runCampaign(campaignId));
+            } catch (RejectedExecutionException e) {
+                // its lease stays expired, the next check tries again
+                log.warn("Newsletter queue is full, campaign {} waits for the next check", campaignId);
+                return;
+            }
+        }
+    }
+
+//    the whole campaign, runs on the newsletter thread
+    void runCampaign(Long campaignId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (campaignRepository.claim(campaignId, now, now.plus(lease)) == 0) {
+            // finished, or another instance is sending it
+            return;
+        }
+        NewsletterCampaign campaign = campaignRepository.findById(campaignId)
+                .orElseThrow(() -> new RuntimeException("Campaign not found"));
+        try {
+            Template template = parse("newsletter-" + campaignId, campaign.getTemplate());
+            long afterId = campaign.getLastSubscriberId();
+            List<MailingList> page;
+            do {
+                page = mailingRepository.findVerifiedAfter(afterId, Limit.of(pageSize));
+                if (page.isEmpty()) {
+                    break;
+                }
+                List<NewsletterDelivery> deliveries = sendPage(campaign, template, page);
+                afterId = page.get(page.size() - 1).getId();
+                recordPage(campaignId, afterId, deliveries);
+            } while (page.size() == pageSize);
+
+            campaignRepository.finish(campaignId, "COMPLETED", null, LocalDateTime.now());
+            log.info("Newsletter campaign {} finished", campaignId);
+        } catch (RuntimeException e) {
+            log.error("Newsletter campaign {} failed", campaignId, e);
+            String message = String.valueOf(e.getMessage());
+            campaignRepository.finish(campaignId, FAILED, message.length() > 1000 ? message.substring(0, 1000) : message, LocalDateTime.now());
+        }
+    }
+
+    // render and send one page of subscribers, a batch per connection spread over the send threads
+    private List<NewsletterDelivery> sendPage(NewsletterCampaign campaign, Template template, List<MailingList> page) {
+        List<NewsletterDelivery> deliveries = new ArrayList<>(page.size());
+        List<CompletableFuture<List<NewsletterDelivery>>> batches = new ArrayList<>();
+        List<MailingList> batch = new ArrayList<>(batchSize);
+        List<MimeMessage> messages = new ArrayList<>(batchSize);
+        for (MailingList subscriber : page) {
+            try {
+                messages.add(emailService.createMessage(subscriber.getEmail(), campaign.getSubject(),
+                        render(template, subscriber.getEmail()), true));
+                batch.add(subscriber);
+            } catch (MessagingException | IOException | TemplateException e) {
+                deliveries.add(delivery(campaign.getId(), subscriber, e));
+            }
+            if (batch.size() == batchSize) {
+                batches.add(sendBatch(campaign.getId(), batch, messages));
+                batch = new ArrayList<>(batchSize);
+                messages = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(sendBatch(campaign.getId(), batch, messages));
+        }
+        for (CompletableFuture<List<NewsletterDelivery>> sent : batches) {
+            deliveries.addAll(sent.join());
+        }
+        return deliveries;
+    }
+
+    private CompletableFuture<List<NewsletterDelivery>> sendBatch(Long campaignId, List<MailingList> subscribers, List<MimeMessage> messages) {
+        return CompletableFuture.supplyAsync(() -> {
+            throttle(messages.size());
+            Map<Object, Exception> failures = Map.of();
+            try {
+                emailService.sendAll(messages.toArray(MimeMessage[]::new));
+            } catch (MailSendException e) {
+                failures = e.getFailedMessages();
+                if (failures.isEmpty()) {
+                    failures = allFailed(messages, e);
+                }
+            } catch (MailException e) {
+                failures = allFailed(messages, e);
+            }
+            List<NewsletterDelivery> deliveries = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                deliveries.add(delivery(campaignId, subscribers.get(i), failures.get(messages.get(i))));
+            }
+            return deliveries;
+        }, newsletterSendExecutor);
+    }
+
+    private static Map<Object, Exception> allFailed(List<MimeMessage> messages, Exception e) {
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        for (MimeMessage message : messages) {
+            failures.put(message, e);
+        }
+        return failures;
+    }
+
+    // wait until sending this many more messages keeps us under the configured rate
+    private void throttle(int messages) {
+        long wait;
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            if (nextSendAt < now) {
+                nextSendAt = now;
+            }
+            wait = nextSendAt - now;
+            nextSendAt += (long) (messages * TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while sending a newsletter", e);
+            }
+        }
+    }
+
+    // delivery rows and the cursor move together, a resumed campaign starts after the last recorded page
+    private void recordPage(Long campaignId, long lastSubscriberId, List<NewsletterDelivery> deliveries) {
+        long failed = deliveries.stream().filter(d -> FAILED.equals(d.getStatus())).count();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_DELIVERY, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    NewsletterDelivery delivery = deliveries.get(i);
+                    ps.setLong(1, delivery.getCampaignId());
+                    ps.setLong(2, delivery.getSubscriberId());
+                    ps.setString(3, delivery.getEmail());
+                    ps.setString(4, delivery.getStatus());
+                    ps.setString(5, delivery.getError());
+                    ps.setTimestamp(6, delivery.getSentAt() == null ? null : Timestamp.valueOf(delivery.getSentAt()));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return deliveries.size();
+                }
+            });
+            campaignRepository.recordPage(campaignId, lastSubscriberId, deliveries.size() - failed, failed,
+                    LocalDateTime.now().plus(lease));
+        });
+    }
+
+    private static NewsletterDelivery delivery(Long campaignId, MailingList subscriber, Exception failure) {
+        if (failure == null) {
+            return new NewsletterDelivery(null, campaignId, subscriber.getId(), subscriber.getEmail(), SENT, null, LocalDateTime.now());
+        }
+        String message = String.valueOf(failure.getMessage());
+        return new NewsletterDelivery(null, campaignId, subscriber.getId(), subscriber.getEmail(), FAILED,
+                message.length() > 500 ? message.substring(0, 500) : message, null);
+    }
+
+    private static String render(Template template, String email) throws IOException, TemplateException {
+        StringWriter html = new StringWriter();
+        template.process(Map.of("email", email), html);
+        return html.toString();
+    }
+
+    private Template parse(String name, String body) {
+        try {
+            return new Template(name, new StringReader(body), templateConfiguration);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid newsletter template: " + e.getMessage());
+        }
+    }
+
+//    ?new and ?api would let a template instantiate and call java classes (freemarker.template.utility.Execute
+//    runs shell commands), there is no template loader to #include from, and errors fail the render instead
+//    of being printed into the mail
+    private static Configuration newsletterTemplateConfiguration() {
+        Configuration configuration = new Configuration(Configuration.VERSION_2_3_32);
+        configuration.setNewBuiltinClassResolver(TemplateClassResolver.ALLOWS_NOTHING_RESOLVER);
+        configuration.setAPIBuiltinEnabled(false);
+        configuration.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        configuration.setLogTemplateExceptions(false);
+        return configuration;
+    }
+}
@@ -1,5 +1,7 @@
 package com.library.management_system.services;
 
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.PaginatedResponse;
 import com.library.management_system.DTOs.PaymentRequestDto;
 import com.library.management_system.DTOs.PaymentResponseDto;
 import com.library.management_system.DTOs.TransactionResponseDto;
@@ -13,16 +15,20 @@ import com.library.management_system.repositories.BookAccessRepository;
 import com.library.management_system.repositories.BookRepository;
 import com.library.management_system.repositories.TransactionRepository;
 import com.library.management_system.repositories.UserRepository;
+import com.library.management_system.utils.PageCursor;
 import com.stripe.param.checkout.SessionCreateParams;
 import com.stripe.model.checkout.Session;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.stripe.exception.StripeException;
 import com.stripe.model.Event;
@@ -34,7 +40,6 @@ import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
 import java.time.format.DateTimeFormatter;
 
 @Service
@@ -44,7 +49,9 @@ public class PaymentService {
     private final UserRepository userRepository;
     private final TransactionRepository transactionRepository;
     private final BookAccessRepository bookAccessRepository;
-    private final EmailService emailService;
+    private final EmailOutbox emailOutbox;
+    private final BookService bookService;
+    private final EntitlementCache entitlementCache;
     private final String frontendUrl;
 
     public PaymentService(
@@ -52,25 +59,34 @@ public class PaymentService {
             UserRepository userRepository,
             TransactionRepository transactionRepository,
             BookAccessRepository bookAccessRepository,
-            EmailService emailService,
+            EmailOutbox emailOutbox,
+            BookService bookService,
+            EntitlementCache entitlementCache,
             @Value("${frontend.url}") String frontendUrl) {
         this.bookRepository = bookRepository;
         this.userRepository = userRepository;
         this.transactionRepository = transactionRepository;
         this.bookAccessRepository = bookAccessRepository;
-        this.emailService = emailService;
+        this.emailOutbox = emailOutbox;
+        this.bookService = bookService;
+        this.entitlementCache = entitlementCache;
         this.frontendUrl = frontendUrl;
     }
 
 //    Get the current user
     private UserModel getCurrentUser() {
-    String userId = SecurityContextHolder.getContext().getAuthentication().getName();
-    try {
-        return userRepository.findById(UUID.fromString(userId))
+        return userRepository.findById(getCurrentUserId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
-    } catch (IllegalArgumentException e) {
-        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid user ID format");
     }
+
+//    id of the current user straight from the token, no database lookup
+    private UUID getCurrentUserId() {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        try {
+            return UUID.fromString(userId);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid user ID format");
+        }
     }
 
 //    check if book is free
@@ -221,12 +237,8 @@ public class PaymentService {
                 "</html>";
 
 
-        try {
-            emailService.sendHtmlEmail(to, subject, text);
-            log.info("Payment confirmation email sent to {}", to);
-        } catch (Exception e) {
-            log.error("Failed to send payment confirmation email", e);
-        }
+        // goes out after capturePayment commits
+        emailOutbox.enqueue(to, subject, text, true);
     }
 
 
@@ -259,6 +271,11 @@ public class PaymentService {
 //            Transaction transaction = transactionRepository.findByStripePaymentIntentId(paymentIntentId)
 //                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Transaction not found for payment intent ID: " + paymentIntentId));
 
+            // stripe may send a second completed event for the same session, grant once
+            if (transaction.getPaymentStatus() == PaymentStatus.PAID) {
+                log.info("Transaction {} is already paid, ignoring event {}", transaction.getId(), event.getId());
+                return;
+            }
             transaction.setPaymentStatus(PaymentStatus.PAID);
             transactionRepository.save(transaction);
 //            transactionRepository.flush(); // Force immediate database write, this might solve the issue of some payments showning PENDING instead of PAID
@@ -272,6 +289,17 @@ public class PaymentService {
             access.setTransaction(transaction);
             bookAccessRepository.save(access);
 
+            // readers only see the grant once it is committed
+            UUID userId = transaction.getUser().getId();
+            Long bookId = transaction.getBook().getId();
+            LocalDateTime endDate = access.getEndDate();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    entitlementCache.grant(userId, bookId, endDate);
+                }
+            });
+
             sendPaymentConfirmationEmail(transaction, access);
             log.info("Successfully processed payment for transaction ID: {}", transaction.getId());
         } else if ("checkout.session.expired".equals(event.getType())) {
@@ -293,39 +321,41 @@ public class PaymentService {
 //    route for users to see their transaction history
     @Transactional(readOnly = true)
     public List<TransactionResponseDto> getTransactionHistory() {
-        UserModel user = getCurrentUser();
-        return transactionRepository.findByUser(user).stream().map(transaction -> {
-            TransactionResponseDto dto = new TransactionResponseDto();
-            dto.setTransactionId(transaction.getId());
-            dto.setBookTitle(transaction.getBook().getTitle());
-            dto.setAmount(transaction.getAmount());
-            dto.setCurrency(transaction.getCurrency());
-            dto.setDurationDays(transaction.getDurationDays());
-            dto.setPaymentStatus(transaction.getPaymentStatus());
-            dto.setTransactionDate(transaction.getTransactionDate());
-            bookAccessRepository.findActiveAccess(
-                    transaction.getUser(),
-                    transaction.getBook(),
-//                    transaction.getTransactionDate()
-                    LocalDateTime.now()
-            ).ifPresent(access -> {
-                dto.setStartDate(access.getStartDate());
-                dto.setEndDate(access.getEndDate());
-            });
-            return dto;
-        }).collect(Collectors.toList());
+        return transactionRepository.findHistory(getCurrentUserId(), LocalDateTime.now(), Limit.unlimited());
     }
 
-    @Transactional(readOnly = true)
+//    cursor page of the user's history, newest first, one query per page however much they bought
+    public PaginatedResponse<TransactionResponseDto> getTransactionHistory(String cursor, int size) {
+        UUID userId = getCurrentUserId();
+        Limit limit = Limit.of(size + 1);
+        List<TransactionResponseDto> rows;
+        if (cursor == null || cursor.isEmpty()) {
+            rows = transactionRepository.findHistory(userId, LocalDateTime.now(), limit);
+        } else {
+            PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.CREATED_AT);
+            if (after.createdAt() == null) {
+                // every transaction has a date, only a made up cursor lacks one
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page cursor");
+            }
+            rows = transactionRepository.findHistoryAfter(userId, LocalDateTime.now(), after.createdAt(), after.uuidId(), limit);
+        }
+        if (rows.size() <= size) {
+            return new PaginatedResponse<>(rows, null);
+        }
+        TransactionResponseDto last = rows.get(size - 1);
+        return new PaginatedResponse<>(rows.subList(0, size),
+                PageCursor.ofCreatedAt(last.getTransactionDate(), last.getTransactionId()).encode());
+    }
+
+//    memory lookups only: the book from the catalog cache, the user's grants from EntitlementCache
     public boolean hasAccessToBook(Long bookId) {
-        UserModel user = getCurrentUser();
-        Book book = bookRepository.findById(bookId)
+        BookResponseDTO book = bookService.getBookById(bookId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found with ID: " + bookId));
 //checks if book is free
-        if (isBookFree(book)) {
+        if (book.accessType() == BookAccessType.FREE) {
             return true; // Free books are accessible to everyone
         }
-        return bookAccessRepository.findActiveAccess(user, book, LocalDateTime.now()).isPresent();
+        return entitlementCache.hasAccess(getCurrentUserId(), bookId);
     }
 
 
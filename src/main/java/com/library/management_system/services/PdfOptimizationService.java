@@ -0,0 +1,453 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.PdfOptimizationDTO;
+import com.library.management_system.models.StoredBlob;
+import com.library.management_system.repositories.StoredBlobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdfwriter.compress.CompressParameters;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+// Ingest stage that rewrites every new book pdf into a smaller copy for readers, then has it cut
+// into page segments. Publishers' files often carry uncompressed streams, the same font or image
+// embedded once per page and print resolution scans. The copy gets:
+//  - identical streams (fonts, images, forms) merged into one object
+//  - images above max-image-dpi scaled down, measured against the page they are drawn on
+//  - every unfiltered stream flate compressed, and objects packed into compressed object streams
+// The upload itself is kept untouched and is what admins download from /api/books/pdf/{id}.
+// When the copy is not smaller it is dropped and readers get the original.
+@Service
+@Slf4j
+public class PdfOptimizationService {
+    private static final int BACKFILL_BATCH_SIZE = 100;
+    private static final int MAX_DESCRIBE_DEPTH = 4;
+    private static final Set<COSName> KEEP_AS_IS = Set.of(COSName.XREF, COSName.OBJ_STM, COSName.METADATA);
+
+    public record Result(long originalSize, long optimizedSize, int duplicatesMerged, int imagesDownsampled,
+                         int streamsCompressed) {}
+
+    private final FileStorageService fileStorageService;
+    private final PdfSegmentService pdfSegmentService;
+    private final StoredBlobRepository blobRepository;
+    private final Executor taskExecutor;
+    private final boolean enabled;
+    private final float maxImageDpi;
+    private final float jpegQuality;
+
+    public PdfOptimizationService(FileStorageService fileStorageService,
+                                  PdfSegmentService pdfSegmentService,
+                                  StoredBlobRepository blobRepository,
+                                  @Qualifier("taskExecutor") Executor taskExecutor,
+                                  @Value("${catalog.pdf-optimize.enabled:true}") boolean enabled,
+                                  @Value("${catalog.pdf-optimize.max-image-dpi:150}") float maxImageDpi,
+                                  @Value("${catalog.pdf-optimize.jpeg-quality:0.8}") float jpegQuality) {
+        this.fileStorageService = fileStorageService;
+        this.pdfSegmentService = pdfSegmentService;
+        this.blobRepository = blobRepository;
+        this.taskExecutor = taskExecutor;
+        this.enabled = enabled;
+        this.maxImageDpi = maxImageDpi;
+        this.jpegQuality = jpegQuality;
+    }
+
+//    ingest stage: optimize every book pdf right after it is stored, then segment the result
+    @Async
+    @EventListener
+    public void onPdfStored(PdfStoredEvent event) {
+        Path pdf = Paths.get(event.pdfPath());
+        if (enabled) {
+            optimizeStored(pdf);
+        }
+        pdfSegmentService.segment(pdf);
+    }
+
+//    pdfs stored before this stage existed are optimized in the background, their segments rebuilt
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!enabled) {
+            return;
+        }
+        taskExecutor.execute(() -> {
+            String afterHash = "";
+            int optimized = 0;
+            List<StoredBlob> batch;
+            do {
+                batch = blobRepository.findUnoptimizedPdfs(afterHash, Limit.of(BACKFILL_BATCH_SIZE));
+                for (StoredBlob blob : batch) {
+                    afterHash = blob.getHash();
+                    Path pdf = fileStorageService.pdfStorage().locate(fileStorageService.extractFilenameFromPath(blob.getFilePath()));
+                    if (!Files.exists(pdf)) {
+                        continue;
+                    }
+                    Result result = optimizeStored(pdf);
+                    if (result != null && result.optimizedSize() < result.originalSize()) {
+                        optimized++;
+                        if (Files.exists(fileStorageService.getSegmentDirectory(pdf.getFileName().toString())
+                                .resolve(PdfSegmentService.INDEX_FILE))) {
+                            pdfSegmentService.segment(pdf);
+                        }
+                    }
+                }
+            } while (batch.size() == BACKFILL_BATCH_SIZE);
+            if (optimized > 0) {
+                log.info("Optimized {} stored pdfs", optimized);
+            }
+        });
+    }
+
+//    original and reader sizes of a book's pdf
+    public PdfOptimizationDTO getReport(Long bookId, Path pdf) {
+        String tag = FileStorageService.contentTag(pdf.toString());
+        StoredBlob blob = tag == null ? null : blobRepository.findById(tag.substring(1, tag.length() - 1)).orElse(null);
+        try {
+            long originalSize = Files.size(pdf);
+            if (blob == null) {
+                return new PdfOptimizationDTO(bookId, "UNTRACKED", originalSize, null);
+            }
+            Long optimizedSize = blob.getOptimizedSize();
+            String status = optimizedSize == null ? "PENDING" : optimizedSize < originalSize ? "OPTIMIZED" : "UNCHANGED";
+            return new PdfOptimizationDTO(bookId, status, originalSize, optimizedSize);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not read pdf size", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // build the reader copy next to the segments and record its size on the blob row
+    private Result optimizeStored(Path pdf) {
+        String name = pdf.getFileName().toString();
+        Path directory = fileStorageService.getOptimizedPdfDirectory(name);
+        Path working = directory.resolveSibling(directory.getFileName() + ".tmp");
+        try {
+            fileStorageService.deleteDirectory(working);
+            Files.createDirectories(working);
+            Result result = optimize(pdf, working.resolve(FileStorageService.OPTIMIZED_PDF));
+
+            fileStorageService.deleteDirectory(directory);
+            if (result.optimizedSize() < result.originalSize()) {
+                Files.move(working, directory, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                fileStorageService.deleteDirectory(working);
+            }
+
+            // the book may have been deleted or replaced while we were working
+            if (!Files.exists(pdf)) {
+                fileStorageService.deleteDirectory(directory);
+                return null;
+            }
+            String tag = FileStorageService.contentTag(name);
+            if (tag != null) {
+                blobRepository.recordOptimizedSize(tag.substring(1, tag.length() - 1),
+                        Math.min(result.optimizedSize(), result.originalSize()));
+            }
+            log.info("Optimized {}: {} -> {} bytes, {} duplicates merged, {} images downsampled, {} streams compressed",
+                    name, result.originalSize(), result.optimizedSize(), result.duplicatesMerged(),
+                    result.imagesDownsampled(), result.streamsCompressed());
+            return result;
+        } catch (IOException | RuntimeException e) {
+            // readers keep getting the original, and the backfill does not try it again
+            log.error("Could not optimize {}", name, e);
+            try {
+                fileStorageService.deleteDirectory(working);
+                String tag = FileStorageService.contentTag(name);
+                if (tag != null && Files.exists(pdf)) {
+                    blobRepository.recordOptimizedSize(tag.substring(1, tag.length() - 1), Files.size(pdf));
+                }
+            } catch (IOException | RuntimeException ignored) {
+                // leftovers are replaced on the next attempt
+            }
+            return null;
+        }
+    }
+
+//    write an optimized copy of source to target, encrypted pdfs are copied as they are
+    Result optimize(Path source, Path target) throws IOException {
+        long originalSize = Files.size(source);
+        // scratch data goes to temp files, a 100 MB book must not end up on the heap
+        try (PDDocument document = Loader.loadPDF(source.toFile(), null, null, null, IOUtils.createTempFileOnlyStreamCache())) {
+            if (document.isEncrypted()) {
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+                return new Result(originalSize, originalSize, 0, 0, 0);
+            }
+            int merged = mergeDuplicateStreams(document);
+            int downsampled = downsampleImages(document);
+            int compressed = compressStreams(document);
+            document.save(target.toFile(), CompressParameters.DEFAULT_COMPRESSION);
+            return new Result(originalSize, Files.size(target), merged, downsampled, compressed);
+        }
+    }
+
+    // point every reference to a stream at the first stream with the same dictionary and bytes.
+    // the writer only writes what is reachable, so the copies drop out of the file
+    private int mergeDuplicateStreams(PDDocument document) throws IOException {
+        List<COSStream> streams = new ArrayList<>();
+        List<COSBase> containers = reachable(document, streams);
+
+        // referenced streams (an image's soft mask) usually come after their parent, doing them first
+        // lets parents that differ only in which copy of a mask they point at match as well
+        Collections.reverse(streams);
+        Map<COSStream, COSStream> canonical = new IdentityHashMap<>();
+        Map<COSBase, Integer> ids = new IdentityHashMap<>();
+        Map<String, COSStream> byContent = new HashMap<>();
+        for (COSStream stream : streams) {
+            String key = describe(stream, canonical, ids, 0) + digest(stream);
+            COSStream first = byContent.putIfAbsent(key, stream);
+            canonical.put(stream, first == null ? stream : first);
+        }
+
+        int merged = 0;
+        for (COSBase container : containers) {
+            if (container instanceof COSDictionary dictionary) {
+                for (COSName key : new ArrayList<>(dictionary.keySet())) {
+                    COSStream replacement = replacement(dictionary.getItem(key), canonical);
+                    if (replacement != null) {
+                        dictionary.setItem(key, replacement);
+                        merged++;
+                    }
+                }
+            } else if (container instanceof COSArray array) {
+                for (int i = 0; i < array.size(); i++) {
+                    COSStream replacement = replacement(array.get(i), canonical);
+                    if (replacement != null) {
+                        array.set(i, replacement);
+                        merged++;
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static COSStream replacement(COSBase value, Map<COSStream, COSStream> canonical) {
+        COSBase target = value instanceof COSObject object ? object.getObject() : value;
+        if (target instanceof COSStream stream) {
+            COSStream first = canonical.get(stream);
+            return first != null && first != stream ? first : null;
+        }
+        return null;
+    }
+
+    // every dictionary and array reachable from the trailer, streams also collected on their own
+    private static List<COSBase> reachable(PDDocument document, List<COSStream> streams) {
+        List<COSBase> containers = new ArrayList<>();
+        Set<COSBase> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<COSBase> pending = new ArrayDeque<>();
+        pending.push(document.getDocument().getTrailer());
+        while (!pending.isEmpty()) {
+            COSBase next = pending.pop();
+            if (next instanceof COSObject object) {
+                next = object.getObject();
+            }
+            if (next == null || !seen.add(next)) {
+                continue;
+            }
+            if (next instanceof COSDictionary dictionary) {
+                containers.add(dictionary);
+                if (dictionary instanceof COSStream stream) {
+                    streams.add(stream);
+                }
+                dictionary.getValues().forEach(pending::push);
+            } else if (next instanceof COSArray array) {
+                containers.add(array);
+                for (int i = 0; i < array.size(); i++) {
+                    pending.push(array.get(i));
+                }
+            }
+        }
+        return containers;
+    }
+
+    // a stable description of a value. other streams stand in by identity, as do objects nested too
+    // deep to be worth comparing; small indirect dictionaries and arrays (decode parameters, colour
+    // spaces) are compared by content, every copy of an image tends to get its own
+    private static String describe(COSBase value, Map<COSStream, COSStream> canonical, Map<COSBase, Integer> ids,
+                                   int depth) {
+        COSBase target = value instanceof COSObject object ? object.getObject() : value;
+        if (target instanceof COSStream stream && depth > 0) {
+            return "@" + ids.computeIfAbsent(canonical.getOrDefault(stream, stream), k -> ids.size());
+        }
+        if (depth > MAX_DESCRIBE_DEPTH && (target instanceof COSDictionary || target instanceof COSArray)) {
+            return "@" + ids.computeIfAbsent(target, k -> ids.size());
+        }
+        if (target instanceof COSDictionary dictionary) {
+            Map<String, String> entries = new TreeMap<>();
+            for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+                if (!COSName.LENGTH.equals(entry.getKey())) {
+                    entries.put(entry.getKey().getName(), describe(entry.getValue(), canonical, ids, depth + 1));
+                }
+            }
+            return entries.toString();
+        }
+        if (target instanceof COSArray array) {
+            List<String> items = new ArrayList<>();
+            for (int i = 0; i < array.size(); i++) {
+                items.add(describe(array.get(i), canonical, ids, depth + 1));
+            }
+            return items.toString();
+        }
+        return String.valueOf(target);
+    }
+
+    private static String digest(COSStream stream) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(stream.createRawInputStream(), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // scale page images down to max-image-dpi. an image drawn on a page can't be wider than the page,
+    // so pixels per inch of page is the lowest resolution it can be shown at and scaling to that bound
+    // never takes it below the limit. images with masks, decode arrays or exotic colour spaces are left alone
+    private int downsampleImages(PDDocument document) throws IOException {
+        if (maxImageDpi <= 0) {
+            return 0;
+        }
+        Map<COSStream, PDImageXObject> replaced = new IdentityHashMap<>();
+        for (PDPage page : document.getPages()) {
+            PDResources resources = page.getResources();
+            if (resources == null) {
+                continue;
+            }
+            PDRectangle box = page.getMediaBox();
+            float pageWidth = box.getWidth() / 72f;
+            float pageHeight = box.getHeight() / 72f;
+            for (COSName name : resources.getXObjectNames()) {
+                if (!resources.isImageXObject(name)) {
+                    continue;
+                }
+                PDImageXObject image = (PDImageXObject) resources.getXObject(name);
+                COSStream stream = image.getCOSObject();
+                if (!replaced.containsKey(stream)) {
+                    // either way round, the image may be drawn rotated
+                    float dpi = Math.min(
+                            Math.max(image.getWidth() / pageWidth, image.getHeight() / pageHeight),
+                            Math.max(image.getWidth() / pageHeight, image.getHeight() / pageWidth));
+                    replaced.put(stream, dpi > maxImageDpi ? downsample(document, image, dpi) : null);
+                }
+                PDImageXObject smaller = replaced.get(stream);
+                if (smaller != null) {
+                    resources.put(name, smaller);
+                }
+            }
+        }
+        return (int) replaced.values().stream().filter(image -> image != null).count();
+    }
+
+    private PDImageXObject downsample(PDDocument document, PDImageXObject image, float dpi) {
+        try {
+            if (image.isStencil() || image.getBitsPerComponent() < 8 || image.getDecode() != null
+                    || image.getSoftMask() != null || image.getMask() != null || image.getColorKeyMask() != null) {
+                return null;
+            }
+            PDColorSpace colorSpace = image.getColorSpace();
+            if (!(colorSpace instanceof PDDeviceGray || colorSpace instanceof PDDeviceRGB
+                    || colorSpace instanceof PDICCBased && colorSpace.getNumberOfComponents() != 4)) {
+                return null;
+            }
+            int width = Math.max(1, Math.round(image.getWidth() * maxImageDpi / dpi));
+            BufferedImage scaled = CoverImageService.resize(image.getImage(), width);
+            if (colorSpace.getNumberOfComponents() == 1) {
+                scaled = toGray(scaled);
+            }
+            // photos stay jpeg, anything stored lossless stays lossless
+            PDImageXObject smaller = isJpeg(image.getCOSObject())
+                    ? JPEGFactory.createFromImage(document, scaled, jpegQuality)
+                    : LosslessFactory.createFromImage(document, scaled);
+            smaller.setInterpolate(image.getInterpolate());
+            return smaller.getCOSObject().getLength() < image.getCOSObject().getLength() ? smaller : null;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Leaving image as it is: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static boolean isJpeg(COSStream stream) {
+        COSBase filters = stream.getFilters();
+        return COSName.DCT_DECODE.equals(filters)
+                || filters instanceof COSArray array && array.size() > 0 && COSName.DCT_DECODE.equals(array.getObject(array.size() - 1));
+    }
+
+    private static BufferedImage toGray(BufferedImage image) {
+        BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return gray;
+    }
+
+    // flate every stream that was stored without a filter
+    private static int compressStreams(PDDocument document) throws IOException {
+        List<COSStream> streams = new ArrayList<>();
+        reachable(document, streams);
+        int compressed = 0;
+        for (COSStream stream : streams) {
+            COSName type = stream.getCOSName(COSName.TYPE);
+            if (stream.getFilters() != null || !stream.hasData() || type != null && KEEP_AS_IS.contains(type)) {
+                continue;
+            }
+            byte[] raw;
+            try (InputStream in = stream.createRawInputStream()) {
+                raw = in.readAllBytes();
+            }
+            try (OutputStream out = stream.createOutputStream(COSName.FLATE_DECODE)) {
+                out.write(raw);
+            }
+            compressed++;
+        }
+        return compressed;
+    }
+}
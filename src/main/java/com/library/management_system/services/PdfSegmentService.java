@@ -0,0 +1,170 @@
+package com.library.management_system.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+// Splits every stored book pdf into one small standalone pdf per page, plus an index.json with
+// the page count and segment sizes. A reader can then fetch page N in a few KB instead of waiting
+// for the cross-reference table at the end of an un-linearized file.
+// Segments are cut from the copy readers get (see PdfOptimizationService, which runs this right
+// after it has optimized a new upload); pdfs stored before this existed are
+// segmented the first time one of their pages is asked for.
+@Service
+@Slf4j
+public class PdfSegmentService {
+    static final String INDEX_FILE = "index.json";
+    public static final int MAX_WINDOW = 10;
+
+    public record SegmentIndex(int pageCount, List<Long> pageSizes) {}
+
+    private final FileStorageService fileStorageService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Executor taskExecutor;
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    // pdfs PDFBox could not split, asking again would only repeat the same failure
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    public PdfSegmentService(FileStorageService fileStorageService,
+                             @Qualifier("taskExecutor") Executor taskExecutor) {
+        this.fileStorageService = fileStorageService;
+        this.taskExecutor = taskExecutor;
+    }
+
+//    page count and segment sizes of a pdf, starts segmenting when they don't exist yet
+    public SegmentIndex getIndex(Path pdf) {
+        Path indexFile = segmentDirectory(pdf).resolve(INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            if (failed.contains(pdf.getFileName().toString())) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Page segments are not available for this book, use /api/books/pdf-stream");
+            }
+            taskExecutor.execute(() -> segment(pdf));
+            throw notReady();
+        }
+        try {
+            return objectMapper.readValue(indexFile.toFile(), SegmentIndex.class);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not read page index");
+        }
+    }
+
+//    the standalone pdf holding a single page, pages start at 1
+    public Path getPage(Path pdf, int page) {
+        SegmentIndex index = getIndex(pdf);
+        if (page < 1 || page > index.pageCount()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Page " + page + " does not exist");
+        }
+        return segmentDirectory(pdf).resolve(pageFilename(page));
+    }
+
+//    several consecutive pages merged into one pdf, capped at MAX_WINDOW pages
+    public byte[] getWindow(Path pdf, int firstPage, int count) {
+        SegmentIndex index = getIndex(pdf);
+        if (firstPage < 1 || firstPage > index.pageCount()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Page " + firstPage + " does not exist");
+        }
+        int lastPage = Math.min(firstPage + Math.min(Math.max(count, 1), MAX_WINDOW) - 1, index.pageCount());
+
+        PDFMergerUtility merger = new PDFMergerUtility();
+        Path directory = segmentDirectory(pdf);
+        try {
+            for (int page = firstPage; page <= lastPage; page++) {
+                merger.addSource(directory.resolve(pageFilename(page)).toFile());
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            merger.setDestinationStream(out);
+            merger.mergeDocuments(IOUtils.createMemoryOnlyStreamCache());
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not build page window");
+        }
+    }
+
+//    split the pdf page by page into a temp directory, then swap it in
+    void segment(Path pdf) {
+        String key = pdf.getFileName().toString();
+        if (!inProgress.add(key)) {
+            return;
+        }
+        failed.remove(key);
+        Path directory = segmentDirectory(pdf);
+        Path working = directory.resolveSibling(directory.getFileName() + ".tmp");
+        try {
+            fileStorageService.deleteDirectory(working);
+            Files.createDirectories(working);
+
+            List<Long> sizes = new ArrayList<>();
+            // scratch data goes to temp files, a 100 MB book must not end up on the heap
+            Path source = fileStorageService.readingCopyOf(pdf);
+            try (PDDocument document = Loader.loadPDF(source.toFile(), null, null, null, IOUtils.createTempFileOnlyStreamCache())) {
+                int pageCount = document.getNumberOfPages();
+                for (int page = 1; page <= pageCount; page++) {
+                    Splitter splitter = new Splitter();
+                    splitter.setStartPage(page);
+                    splitter.setEndPage(page);
+                    for (PDDocument single : splitter.split(document)) {
+                        try (single) {
+                            Path segment = working.resolve(pageFilename(page));
+                            single.save(segment.toFile());
+                            sizes.add(Files.size(segment));
+                        }
+                    }
+                }
+                objectMapper.writeValue(working.resolve(INDEX_FILE).toFile(), new SegmentIndex(pageCount, sizes));
+            }
+
+            fileStorageService.deleteDirectory(directory);
+            Files.move(working, directory, StandardCopyOption.ATOMIC_MOVE);
+
+            // the book may have been deleted or replaced while we were splitting
+            if (!Files.exists(pdf)) {
+                fileStorageService.deleteDirectory(directory);
+                return;
+            }
+            log.info("Split {} into {} page segments", key, sizes.size());
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not split {} into page segments", key, e);
+            failed.add(key);
+            try {
+                fileStorageService.deleteDirectory(working);
+            } catch (IOException ignored) {
+                // leftovers are replaced on the next attempt
+            }
+        } finally {
+            inProgress.remove(key);
+        }
+    }
+
+    private Path segmentDirectory(Path pdf) {
+        return fileStorageService.getSegmentDirectory(pdf.getFileName().toString());
+    }
+
+    private static String pageFilename(int page) {
+        return String.format("page-%05d.pdf", page);
+    }
+
+    private static ResponseStatusException notReady() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Page segments are being prepared, use /api/books/pdf-stream meanwhile");
+    }
+}
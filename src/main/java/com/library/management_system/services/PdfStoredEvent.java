@@ -0,0 +1,4 @@
+package com.library.management_system.services;
+
+// published by FileStorageService after a book pdf has been written to storage
+public record PdfStoredEvent(String pdfPath) {}
@@ -0,0 +1,159 @@
+package com.library.management_system.services;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Serves stored pdfs with HTTP Range support so pdf.js can fetch only the pages it renders.
+// Bytes go out through Tomcat's sendfile when the connector offers it (kernel copies file -> socket).
+// Where it doesn't (TLS on the connector, other containers) ranges are slices of a memory mapping
+// shared through MappedPdfPool, never a heap buffer of the whole file.
+@Service
+@Slf4j
+public class PdfStreamService {
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // one inclusive byte range of the file
+    public record ByteRange(long start, long end) {
+        public long length() {
+            return end - start + 1;
+        }
+    }
+
+    // marker for a Range header that can't be served from this file
+    static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    private final MappedPdfPool mappedPdfPool;
+
+    public PdfStreamService(MappedPdfPool mappedPdfPool) {
+        this.mappedPdfPool = mappedPdfPool;
+    }
+
+//    write the pdf, or the requested part of it, to the response
+    public void stream(Path file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = Files.size(file);
+        String etag = etagOf(file, length);
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setContentType("application/pdf");
+
+        // If-Range: only honour the range when the client still has the same file
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        ByteRange range = null;
+        if (ifRange == null || ifRange.equals(etag)) {
+            range = parseRange(request.getHeader(HttpHeaders.RANGE), length);
+        }
+
+        if (range == UNSATISFIABLE) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return;
+        }
+        if (range == null) {
+            range = new ByteRange(0, length - 1);
+            response.setStatus(HttpServletResponse.SC_OK);
+        } else {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range.start() + "-" + range.end() + "/" + length);
+        }
+        response.setContentLengthLong(Math.max(range.length(), 0));
+
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // tomcat writes the bytes itself once the request returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, range.start());
+            request.setAttribute(SENDFILE_END, range.end() + 1);
+            return;
+        }
+
+        try (MappedPdfPool.Lease lease = mappedPdfPool.acquire(file)) {
+            OutputStream out = response.getOutputStream();
+            for (ByteBuffer slice : lease.slices(range.start(), range.length())) {
+                write(slice, out);
+            }
+        } catch (IOException e) {
+            // readers abort range requests all the time while scrolling, not worth more than a debug line
+            log.debug("PDF stream of {} ended early: {}", file.getFileName(), e.getMessage());
+        }
+    }
+
+    // tomcat's stream takes a ByteBuffer as is, anything else goes through a channel
+    private static void write(ByteBuffer slice, OutputStream out) throws IOException {
+        if (out instanceof CoyoteOutputStream coyote) {
+            coyote.write(slice);
+            return;
+        }
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (slice.hasRemaining()) {
+            channel.write(slice);
+        }
+    }
+
+//    parse a Range header, null means "send the whole file"
+    static ByteRange parseRange(String header, long length) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        // several ranges would need a multipart/byteranges body, pdf.js never asks for that
+        if (spec.contains(",")) {
+            return null;
+        }
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // suffix range: the last n bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(length - suffix, 0), length - 1);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            if (start >= length || start > end) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            // a malformed header is ignored, as the spec allows
+            return null;
+        }
+    }
+
+    // content addressed files carry their hash in the name, otherwise size plus modification time
+    // is enough to tell two versions of a stored pdf apart
+    private static String etagOf(Path file, long length) throws IOException {
+        String contentTag = FileStorageService.contentTag(file.toString());
+        if (contentTag != null) {
+            return contentTag;
+        }
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(modified) + "\"";
+    }
+}
@@ -0,0 +1,134 @@
+package com.library.management_system.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// Immutable prefix lookup with popularity ranking.
+// Keys are kept sorted in one array, so every prefix maps to a contiguous range found with two
+// binary searches. A segment tree over the weights then pulls the k heaviest entries of that
+// range without scanning it. Memory is the key array plus two ints per entry.
+public final class PrefixSuggester<T> {
+
+    public record Entry<T>(String key, T value, long weight) {}
+
+    private final String[] keys;
+    private final List<T> values;
+    private final long[] weights;
+    private final int[] tree;
+    private final int leaves;
+
+    public PrefixSuggester(List<Entry<T>> entries) {
+        List<Entry<T>> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(Entry::key));
+
+        int size = sorted.size();
+        this.keys = new String[size];
+        this.values = new ArrayList<>(size);
+        this.weights = new long[size];
+        for (int i = 0; i < size; i++) {
+            Entry<T> entry = sorted.get(i);
+            keys[i] = entry.key();
+            values.add(entry.value());
+            weights[i] = entry.weight();
+        }
+
+        int leafCount = 1;
+        while (leafCount < Math.max(size, 1)) {
+            leafCount <<= 1;
+        }
+        this.leaves = leafCount;
+        this.tree = new int[leafCount * 2];
+        Arrays.fill(tree, -1);
+        for (int i = 0; i < size; i++) {
+            tree[leafCount + i] = i;
+        }
+        for (int node = leafCount - 1; node > 0; node--) {
+            tree[node] = heavier(tree[node * 2], tree[node * 2 + 1]);
+        }
+    }
+
+    public static <T> PrefixSuggester<T> empty() {
+        return new PrefixSuggester<>(List.of());
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+//    up to limit distinct values whose key starts with prefix, heaviest first
+    public List<T> suggest(String prefix, int limit) {
+        List<T> result = new ArrayList<>();
+        if (prefix.isEmpty() || keys.length == 0 || limit <= 0) {
+            return result;
+        }
+
+        int from = lowerBound(prefix);
+        int to = lowerBound(prefix + Character.MAX_VALUE);
+        if (from >= to) {
+            return result;
+        }
+
+        // best-first walk: take the heaviest of a range, then split the range around it
+        PriorityQueue<int[]> ranges = new PriorityQueue<>(
+                Comparator.comparingLong((int[] range) -> weights[range[2]]).reversed());
+        ranges.add(new int[]{from, to, maxIn(from, to)});
+        Set<T> seen = new HashSet<>();
+        while (!ranges.isEmpty() && result.size() < limit) {
+            int[] range = ranges.poll();
+            int best = range[2];
+            if (seen.add(values.get(best))) {
+                result.add(values.get(best));
+            }
+            if (range[0] < best) {
+                ranges.add(new int[]{range[0], best, maxIn(range[0], best)});
+            }
+            if (best + 1 < range[1]) {
+                ranges.add(new int[]{best + 1, range[1], maxIn(best + 1, range[1])});
+            }
+        }
+        return result;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // index of the heaviest entry in [from, to)
+    private int maxIn(int from, int to) {
+        int best = -1;
+        for (int left = from + leaves, right = to + leaves; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                best = heavier(best, tree[left++]);
+            }
+            if ((right & 1) == 1) {
+                best = heavier(best, tree[--right]);
+            }
+        }
+        return best;
+    }
+
+    private int heavier(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        return weights[b] > weights[a] ? b : a;
+    }
+}
@@ -0,0 +1,78 @@
+package com.library.management_system.services;
+
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+// One upload directory laid out as <root>/ab/cd/<name>, so no single directory grows past a few
+// hundred entries however big the library gets. Content addressed names are sharded on their own
+// first hex digits, any other name on the SHA-256 of the name.
+// Files written before the fan-out sit directly in the root until StorageMigrationService moves them,
+// lookups fall back to that flat location so nothing breaks in between.
+public final class ShardedDirectory {
+    private static final Pattern HEX_PREFIX = Pattern.compile("^[0-9a-f]{4}.*");
+
+    private final Path root;
+
+    public ShardedDirectory(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    public Path root() {
+        return root;
+    }
+
+//    where a name belongs in the fan-out, whether or not it is there yet
+    public Path pathFor(String name) {
+        checkName(name);
+        String key = shardKey(name);
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(name);
+    }
+
+//    where a name currently is: its shard, or the flat root for files not migrated yet
+    public Path locate(String name) {
+        Path sharded = pathFor(name);
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        Path flat = root.resolve(name);
+        return Files.exists(flat) ? flat : sharded;
+    }
+
+//    shard path for a new file, with its parent directories created
+    public Path prepare(String name) throws IOException {
+        Path target = pathFor(name);
+        Files.createDirectories(target.getParent());
+        return target;
+    }
+
+    public boolean contains(Path path) {
+        return path.toAbsolutePath().normalize().startsWith(root);
+    }
+
+    static String shardKey(String name) {
+        if (HEX_PREFIX.matcher(name).matches()) {
+            return name.substring(0, 4);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(name.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 2);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void checkName(String name) {
+        if (name == null || name.isEmpty() || name.equals(".") || name.equals("..")
+                || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0) {
+            throw new FileStorageException("Invalid filename: " + name, HttpStatus.BAD_REQUEST);
+        }
+    }
+}
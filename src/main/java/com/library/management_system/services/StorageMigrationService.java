@@ -0,0 +1,188 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.StorageMigrationDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.file.Paths;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Online move of the flat upload directories into the sharded layout of ShardedDirectory.
+// Walks book, stored_blobs and users in keyset batches: each flat file is renamed into its shard,
+// then the batch's paths are rewritten with one JDBC batch. Updates only apply when the row still
+// holds the old path, so a book edited meanwhile keeps its new file. Readers keep working during
+// the run because lookups fall back to the flat location, and a run can be repeated after a crash.
+@Service
+@Slf4j
+public class StorageMigrationService {
+    private static final int BATCH_SIZE = 500;
+
+    private final FileStorageService fileStorageService;
+    private final BookService bookService;
+    private final JdbcTemplate jdbcTemplate;
+    private final Executor taskExecutor;
+    private final AtomicReference<StorageMigrationDTO> status = new AtomicReference<>(StorageMigrationDTO.idle());
+
+    private record PathUpdate(Object id, String oldPath, String newPath) {}
+
+    public StorageMigrationService(FileStorageService fileStorageService,
+                                   BookService bookService,
+                                   JdbcTemplate jdbcTemplate,
+                                   @Qualifier("taskExecutor") Executor taskExecutor) {
+        this.fileStorageService = fileStorageService;
+        this.bookService = bookService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.taskExecutor = taskExecutor;
+    }
+
+//    start a run in the background, one at a time
+    public StorageMigrationDTO start() {
+        StorageMigrationDTO current = status.get();
+        StorageMigrationDTO running = new StorageMigrationDTO("RUNNING", 0, 0, 0, 0, LocalDateTime.now(), null, null);
+        if ("RUNNING".equals(current.status()) || !status.compareAndSet(current, running)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A storage migration is already running");
+        }
+        taskExecutor.execute(this::run);
+        return running;
+    }
+
+    public StorageMigrationDTO getStatus() {
+        return status.get();
+    }
+
+    void run() {
+        try {
+            migrateBooks();
+            migrateBlobs();
+            migrateUsers();
+            int loose = fileStorageService.moveLooseEntriesToShards();
+            status.updateAndGet(s -> new StorageMigrationDTO("COMPLETED", s.booksUpdated(), s.blobsUpdated(),
+                    s.usersUpdated(), loose, s.startedAt(), LocalDateTime.now(), null));
+            log.info("Storage migration finished: {}", status.get());
+        } catch (Exception e) {
+            log.error("Storage migration failed", e);
+            status.updateAndGet(s -> new StorageMigrationDTO("FAILED", s.booksUpdated(), s.blobsUpdated(),
+                    s.usersUpdated(), s.looseEntriesMoved(), s.startedAt(), LocalDateTime.now(), e.getMessage()));
+        }
+    }
+
+    private void migrateBooks() {
+        long afterId = 0;
+        List<Long> bookIds;
+        do {
+            List<PathUpdate> pdfs = new ArrayList<>();
+            List<PathUpdate> covers = new ArrayList<>();
+            bookIds = jdbcTemplate.query(
+                    "SELECT id, pdf_path, cover_image_path FROM book WHERE id > ? ORDER BY id LIMIT ?",
+                    (rs, i) -> {
+                        long id = rs.getLong("id");
+                        collect(id, rs.getString("pdf_path"), pdfs);
+                        collect(id, rs.getString("cover_image_path"), covers);
+                        return id;
+                    },
+                    afterId, BATCH_SIZE);
+            if (bookIds.isEmpty()) {
+                break;
+            }
+            afterId = bookIds.get(bookIds.size() - 1);
+
+            int updated = update("UPDATE book SET pdf_path = ? WHERE id = ? AND pdf_path = ?", pdfs)
+                    + update("UPDATE book SET cover_image_path = ? WHERE id = ? AND cover_image_path = ?", covers);
+            // the search index and catalog cache hold the old paths
+            bookService.refreshBooks(bookIds);
+            status.updateAndGet(s -> new StorageMigrationDTO(s.status(), s.booksUpdated() + updated, s.blobsUpdated(),
+                    s.usersUpdated(), s.looseEntriesMoved(), s.startedAt(), null, null));
+        } while (bookIds.size() == BATCH_SIZE);
+    }
+
+    private void migrateBlobs() {
+        String afterHash = "";
+        List<String> hashes;
+        do {
+            List<PathUpdate> paths = new ArrayList<>();
+            hashes = jdbcTemplate.query(
+                    "SELECT hash, file_path FROM stored_blobs WHERE hash > ? ORDER BY hash LIMIT ?",
+                    (rs, i) -> {
+                        String hash = rs.getString("hash");
+                        collect(hash, rs.getString("file_path"), paths);
+                        return hash;
+                    },
+                    afterHash, BATCH_SIZE);
+            if (hashes.isEmpty()) {
+                break;
+            }
+            afterHash = hashes.get(hashes.size() - 1);
+
+            int updated = update("UPDATE stored_blobs SET file_path = ? WHERE hash = ? AND file_path = ?", paths);
+            status.updateAndGet(s -> new StorageMigrationDTO(s.status(), s.booksUpdated(), s.blobsUpdated() + updated,
+                    s.usersUpdated(), s.looseEntriesMoved(), s.startedAt(), null, null));
+        } while (hashes.size() == BATCH_SIZE);
+    }
+
+    private void migrateUsers() {
+        // ids are compared as the database stores them, whatever the uuid column type is
+        Object afterId = null;
+        List<Object> userIds;
+        do {
+            List<PathUpdate> paths = new ArrayList<>();
+            String sql = "SELECT id, profile_image_url FROM users WHERE profile_image_url IS NOT NULL"
+                    + (afterId == null ? "" : " AND id > ?") + " ORDER BY id LIMIT ?";
+            Object[] args = afterId == null ? new Object[]{BATCH_SIZE} : new Object[]{afterId, BATCH_SIZE};
+            userIds = jdbcTemplate.query(sql,
+                    (rs, i) -> {
+                        Object id = rs.getObject("id");
+                        collect(id, rs.getString("profile_image_url"), paths);
+                        return id;
+                    },
+                    args);
+            if (userIds.isEmpty()) {
+                break;
+            }
+            afterId = userIds.get(userIds.size() - 1);
+
+            int updated = update("UPDATE users SET profile_image_url = ? WHERE id = ? AND profile_image_url = ?", paths);
+            status.updateAndGet(s -> new StorageMigrationDTO(s.status(), s.booksUpdated(), s.blobsUpdated(),
+                    s.usersUpdated() + updated, s.looseEntriesMoved(), s.startedAt(), null, null));
+        } while (userIds.size() == BATCH_SIZE);
+    }
+
+    // move the file now, the row follows in the batch update
+    private void collect(Object id, String path, List<PathUpdate> updates) {
+        if (path == null) {
+            return;
+        }
+        String moved = fileStorageService.moveToShard(Paths.get(path)).toString();
+        if (!Objects.equals(moved, path)) {
+            updates.add(new PathUpdate(id, path, moved));
+        }
+    }
+
+    private int update(String sql, List<PathUpdate> updates) {
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(sql, updates, updates.size(), (ps, update) -> {
+            ps.setString(1, update.newPath());
+            ps.setObject(2, update.id());
+            ps.setString(3, update.oldPath());
+        });
+        int total = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                // the mysql driver reports rewritten batches as SUCCESS_NO_INFO
+                total += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+            }
+        }
+        return total;
+    }
+}
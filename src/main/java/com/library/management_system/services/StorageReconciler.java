@@ -0,0 +1,298 @@
+package com.library.management_system.services;
+
+import com.library.management_system.models.FileTombstone;
+import com.library.management_system.models.StoredBlob;
+import com.library.management_system.repositories.FileTombstoneRepository;
+import com.library.management_system.repositories.StoredBlobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Keeps the upload directories and the database agreeing with each other, off the request threads.
+// Every few seconds it works through due file tombstones (see FileStorageService.deleteFileLater).
+// Once a night it audits the reference counts of idle blobs against the book rows, then walks the
+// upload directories in batches and moves every file no row points at into uploads/quarantine/<date>/,
+// which is purged after quarantine-days. Files younger than grace-period are left alone, they may
+// belong to a request that has not committed its row yet.
+@Service
+@Slf4j
+public class StorageReconciler {
+    private static final int BATCH_SIZE = 500;
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern SHARD_NAME = Pattern.compile("[0-9a-f]{2}");
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(6);
+
+    private final FileStorageService fileStorageService;
+    private final FileTombstoneRepository tombstoneRepository;
+    private final StoredBlobRepository blobRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration gracePeriod;
+    private final int quarantineDays;
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    public StorageReconciler(FileStorageService fileStorageService,
+                             FileTombstoneRepository tombstoneRepository,
+                             StoredBlobRepository blobRepository,
+                             NamedParameterJdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${catalog.storage.grace-period:1h}") Duration gracePeriod,
+                             @Value("${catalog.storage.quarantine-days:7}") int quarantineDays) {
+        this.fileStorageService = fileStorageService;
+        this.tombstoneRepository = tombstoneRepository;
+        this.blobRepository = blobRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.gracePeriod = gracePeriod;
+        this.quarantineDays = quarantineDays;
+    }
+
+//    delete the files requests let go of, a failing one is retried later with a growing delay
+    @Scheduled(fixedDelayString = "${catalog.storage.tombstone-interval-ms:30000}")
+    public void processTombstones() {
+        List<FileTombstone> due;
+        do {
+            due = tombstoneRepository.findByDueAtBeforeOrderByDueAtAsc(LocalDateTime.now(), Limit.of(BATCH_SIZE));
+            for (FileTombstone tombstone : due) {
+                try {
+                    fileStorageService.deleteFile(tombstone.getFilePath());
+                    tombstoneRepository.delete(tombstone);
+                } catch (RuntimeException e) {
+                    int attempts = tombstone.getAttempts() + 1;
+                    Duration delay = Duration.ofMinutes(1L << Math.min(attempts, 10));
+                    tombstone.setAttempts(attempts);
+                    tombstone.setDueAt(LocalDateTime.now().plus(delay.compareTo(MAX_RETRY_DELAY) < 0 ? delay : MAX_RETRY_DELAY));
+                    String message = String.valueOf(e.getMessage());
+                    tombstone.setLastError(message.length() > 500 ? message.substring(0, 500) : message);
+                    tombstoneRepository.save(tombstone);
+                    log.warn("Could not delete {} (attempt {}): {}", tombstone.getFilePath(), attempts, message);
+                }
+            }
+        } while (due.size() == BATCH_SIZE);
+    }
+
+    @Scheduled(cron = "${catalog.storage.reconcile-cron:0 30 3 * * *}")
+    public void reconcile() {
+        if (!reconciling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minus(gracePeriod);
+            int corrected = auditBlobReferences(cutoff);
+            int quarantined = 0;
+            for (ShardedDirectory storage : List.of(fileStorageService.pdfStorage(),
+                    fileStorageService.coverImageStorage(), fileStorageService.profilePictureStorage())) {
+                quarantined += sweepFiles(storage, cutoff);
+            }
+            for (ShardedDirectory storage : List.of(fileStorageService.pdfSegmentStorage(),
+                    fileStorageService.coverDerivativeStorage(), fileStorageService.optimizedPdfStorage())) {
+                quarantined += sweepDerivatives(storage, cutoff);
+            }
+            int purged = fileStorageService.purgeQuarantine(LocalDate.now().minusDays(quarantineDays));
+            log.info("Storage reconciled: {} blob counts corrected, {} entries quarantined, {} quarantine days purged",
+                    corrected, quarantined, purged);
+        } catch (IOException | RuntimeException e) {
+            log.error("Storage reconciliation failed", e);
+        } finally {
+            reconciling.set(false);
+        }
+    }
+
+    // recount the references of blobs nobody touched within the grace period. a count that is too
+    // high keeps a file forever, one that is too low deletes it under a book. deletions still waiting
+    // in a tombstone hold their reference until they run
+    int auditBlobReferences(LocalDateTime cutoff) {
+        int corrected = 0;
+        String afterHash = "";
+        List<StoredBlob> batch;
+        do {
+            batch = blobRepository.findIdleAfter(afterHash, cutoff, Limit.of(BATCH_SIZE));
+            for (StoredBlob blob : batch) {
+                List<String> locations = fileStorageService.knownLocations(Paths.get(blob.getFilePath()));
+                Map<String, Object> params = Map.of("paths", locations);
+                Integer books = jdbcTemplate.queryForObject(
+                        "SELECT COUNT(*) FROM book WHERE pdf_path IN (:paths) OR cover_image_path IN (:paths)", params, Integer.class);
+                int actual = (books == null ? 0 : books) + tombstoneRepository.findPendingPaths(locations).size();
+                if (actual == blob.getRefCount()) {
+                    continue;
+                }
+                int expected = blob.getRefCount();
+                Boolean changed = transactionTemplate.execute(status -> actual == 0
+                        ? blobRepository.deleteIfCountIs(blob.getHash(), expected) > 0
+                        : blobRepository.correctReferences(blob.getHash(), expected, actual) > 0);
+                if (Boolean.TRUE.equals(changed)) {
+                    corrected++;
+                    log.warn("Blob {} had {} references recorded but {} in use", blob.getHash(), expected, actual);
+                    // the file itself is picked up by the directory sweep below
+                }
+            }
+            if (!batch.isEmpty()) {
+                afterHash = batch.get(batch.size() - 1).getHash();
+            }
+        } while (batch.size() == BATCH_SIZE);
+        return corrected;
+    }
+
+    // stream one storage directory, BATCH_SIZE files at a time, and quarantine what nothing refers to
+    int sweepFiles(ShardedDirectory storage, LocalDateTime cutoff) throws IOException {
+        Instant olderThan = cutoff.atZone(ZoneId.systemDefault()).toInstant();
+        int quarantined = 0;
+        try (Stream<Path> files = Files.walk(storage.root())) {
+            List<Path> batch = new ArrayList<>(BATCH_SIZE);
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!Files.isRegularFile(file) || !isSettled(file, olderThan)) {
+                    continue;
+                }
+                batch.add(file);
+                if (batch.size() == BATCH_SIZE) {
+                    quarantined += quarantineUnreferenced(batch);
+                    batch.clear();
+                }
+            }
+            quarantined += quarantineUnreferenced(batch);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return quarantined;
+    }
+
+    // leftovers of uploads that died half way go right away, other dot files and anything recent stay
+    private boolean isSettled(Path file, Instant olderThan) throws IOException {
+        boolean old;
+        try {
+            old = Files.getLastModifiedTime(file).toInstant().isBefore(olderThan);
+        } catch (NoSuchFileException e) {
+            // deleted while we were walking
+            return false;
+        }
+        String name = file.getFileName().toString();
+        if (name.startsWith(".")) {
+            if (old && name.startsWith(".upload-") && name.endsWith(".tmp")) {
+                Files.deleteIfExists(file);
+            }
+            return false;
+        }
+        return old && !name.endsWith(".tmp");
+    }
+
+    private int quarantineUnreferenced(List<Path> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Set<Path> referenced = referenced(batch);
+        Map<Path, Path> moved = new LinkedHashMap<>();
+        for (Path file : batch) {
+            if (!referenced.contains(file) && Files.exists(file)) {
+                moved.put(file, fileStorageService.quarantine(file));
+            }
+        }
+        if (moved.isEmpty()) {
+            return 0;
+        }
+        // a request may have recorded one of them between the check and the move, put those back
+        for (Path file : referenced(new ArrayList<>(moved.keySet()))) {
+            fileStorageService.restoreFromQuarantine(moved.remove(file), file);
+        }
+        moved.keySet().forEach(file -> log.info("Quarantined unreferenced file {}", file));
+        return moved.size();
+    }
+
+    // the files of a batch some row points at: a blob row for content addressed names, otherwise a
+    // book or user column in any of the forms the path may have been recorded in
+    private Set<Path> referenced(List<Path> files) {
+        Map<String, Path> byLocation = new LinkedHashMap<>();
+        Map<String, Path> byHash = new LinkedHashMap<>();
+        for (Path file : files) {
+            fileStorageService.knownLocations(file).forEach(location -> byLocation.put(location, file));
+            String tag = FileStorageService.contentTag(file.toString());
+            if (tag != null) {
+                byHash.put(tag.substring(1, tag.length() - 1), file);
+            }
+        }
+
+        Set<Path> referenced = new HashSet<>();
+        if (!byHash.isEmpty()) {
+            blobRepository.findExistingHashes(byHash.keySet()).forEach(hash -> referenced.add(byHash.get(hash)));
+        }
+        Map<String, Object> params = Map.of("paths", byLocation.keySet());
+        List<String> found = new ArrayList<>();
+        found.addAll(jdbcTemplate.queryForList("SELECT pdf_path FROM book WHERE pdf_path IN (:paths)", params, String.class));
+        found.addAll(jdbcTemplate.queryForList("SELECT cover_image_path FROM book WHERE cover_image_path IN (:paths)", params, String.class));
+        found.addAll(jdbcTemplate.queryForList("SELECT profile_image_url FROM users WHERE profile_image_url IN (:paths)", params, String.class));
+        found.addAll(tombstoneRepository.findPendingPaths(byLocation.keySet()));
+        found.forEach(location -> referenced.add(byLocation.get(location)));
+        return referenced;
+    }
+
+    // page segments, resized covers and optimized pdfs are directories named after the content hash of their file,
+    // one whose blob row is gone lost its file
+    int sweepDerivatives(ShardedDirectory storage, LocalDateTime cutoff) throws IOException {
+        Instant olderThan = cutoff.atZone(ZoneId.systemDefault()).toInstant();
+        List<Path> candidates = new ArrayList<>();
+        collectEntries(storage.root(), 0, candidates);
+
+        int quarantined = 0;
+        for (int from = 0; from < candidates.size(); from += BATCH_SIZE) {
+            Map<String, Path> byHash = new LinkedHashMap<>();
+            for (Path entry : candidates.subList(from, Math.min(from + BATCH_SIZE, candidates.size()))) {
+                if (Files.getLastModifiedTime(entry).toInstant().isBefore(olderThan)) {
+                    byHash.put(entry.getFileName().toString(), entry);
+                }
+            }
+            if (byHash.isEmpty()) {
+                continue;
+            }
+            blobRepository.findExistingHashes(byHash.keySet()).forEach(byHash::remove);
+            for (Path orphan : byHash.values()) {
+                if (!Files.exists(orphan)) {
+                    continue;
+                }
+                fileStorageService.quarantine(orphan);
+                log.info("Quarantined derivatives of a deleted file {}", orphan);
+                quarantined++;
+            }
+        }
+        return quarantined;
+    }
+
+    // hash named entry directories, flat in the root or two shard levels down
+    private static void collectEntries(Path directory, int depth, List<Path> entries) throws IOException {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                if (depth < 2 && SHARD_NAME.matcher(name).matches()) {
+                    collectEntries(child, depth + 1, entries);
+                } else if (CONTENT_HASH.matcher(name).matches()) {
+                    entries.add(child);
+                }
+            }
+        }
+    }
+}
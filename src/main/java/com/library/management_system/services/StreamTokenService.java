@@ -0,0 +1,93 @@
+package com.library.management_system.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+// Short lived HMAC-SHA256 tokens for the pdf reading endpoints. /read/url/{id} checks the reader's
+// entitlement once and mints a token bound to user, book and expiry; every range or page request
+// of that open then only recomputes the signature in memory instead of running the access queries.
+// Token: base64url("<userId>:<bookId>:<expiresAtEpochSecond>") "." base64url(hmac)
+// Without catalog.stream-token.secret a random key is made at startup, tokens then don't survive a
+// restart and every instance of the service needs the same configured secret.
+@Service
+@Slf4j
+public class StreamTokenService {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public record StreamToken(String token, Instant expiresAt) {}
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+
+    public StreamTokenService(@Value("${catalog.stream-token.secret:}") String secret,
+                              @Value("${catalog.stream-token.ttl:10m}") Duration ttl) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            log.info("No catalog.stream-token.secret set, stream tokens are signed with a per-process key");
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.ttl = ttl;
+    }
+
+//    token letting this user stream this book until the ttl runs out
+    public StreamToken mint(String userId, Long bookId) {
+        Instant expiresAt = Instant.now().plus(ttl);
+        String payload = ENCODER.encodeToString(
+                (userId + ":" + bookId + ":" + expiresAt.getEpochSecond()).getBytes(StandardCharsets.UTF_8));
+        return new StreamToken(payload + "." + ENCODER.encodeToString(sign(payload)), expiresAt);
+    }
+
+//    true when the token was minted by us for this user and book and has not expired
+    public boolean verify(String token, String userId, Long bookId) {
+        if (token == null || userId == null || bookId == null) {
+            return false;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return false;
+        }
+        String payload = token.substring(0, dot);
+        try {
+            // compare the signature first and in constant time, the payload is only trusted after
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(dot + 1)))) {
+                return false;
+            }
+            String[] fields = new String(DECODER.decode(payload), StandardCharsets.UTF_8).split(":");
+            return fields.length == 3
+                    && fields[0].equals(userId)
+                    && fields[1].equals(bookId.toString())
+                    && Instant.now().getEpochSecond() < Long.parseLong(fields[2]);
+        } catch (IllegalArgumentException e) {
+            // not base64 or not a number, a made up token
+            return false;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            // Mac instances aren't thread safe, a fresh one per call is cheap next to the hashing
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.library.management_system.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// BK-tree over the words found in book titles and authors, used for "did you mean" corrections.
+// Lookups only walk the branches that can still be within the allowed edit distance and
+// stop after a fixed number of visited nodes, so a suggestion never costs more than that
+// budget no matter how big the catalog gets.
+// Not thread safe, BookSearchIndex guards it with its own lock.
+public class TermSuggester {
+    static final int MAX_VISITED_NODES = 4000;
+
+    private final Map<String, Integer> termCounts = new HashMap<>();
+    private Node root;
+    private int treeSize = 0;
+
+    public record Suggestion(String term, int distance, int frequency) {}
+
+//    count one more occurrence of a term, new terms are added to the tree
+    public void add(String term) {
+        int count = termCounts.merge(term, 1, Integer::sum);
+        if (count == 1 && !inTree(term)) {
+            insert(term);
+        }
+    }
+
+//    count one less occurrence, terms that drop to zero stay in the tree but are skipped
+    public void remove(String term) {
+        Integer count = termCounts.get(term);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            termCounts.remove(term);
+        } else {
+            termCounts.put(term, count - 1);
+        }
+
+        // rebuild once a quarter of the tree is dead words
+        if (treeSize > 64 && termCounts.size() < treeSize * 3 / 4) {
+            rebuildTree();
+        }
+    }
+
+    public void clear() {
+        termCounts.clear();
+        root = null;
+        treeSize = 0;
+    }
+
+    public boolean contains(String term) {
+        return termCounts.containsKey(term);
+    }
+
+    public int frequency(String term) {
+        return termCounts.getOrDefault(term, 0);
+    }
+
+//    closest known terms ranked by edit distance and then by how often they occur
+    public List<Suggestion> suggest(String word, int limit) {
+        List<Suggestion> found = new ArrayList<>();
+        if (root == null || word.isEmpty()) {
+            return found;
+        }
+
+        int maxDistance = maxDistanceFor(word);
+        int visited = 0;
+        List<Node> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty() && visited < MAX_VISITED_NODES) {
+            Node node = pending.remove(pending.size() - 1);
+            visited++;
+
+            int distance = distance(word, node.term);
+            Integer frequency = termCounts.get(node.term);
+            if (distance <= maxDistance && frequency != null && !node.term.equals(word)) {
+                found.add(new Suggestion(node.term, distance, frequency));
+            }
+
+            // triangle inequality: only children at d-max..d+max can hold a match
+            int low = distance - maxDistance;
+            int high = distance + maxDistance;
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (child.getKey() >= low && child.getKey() <= high) {
+                    pending.add(child.getValue());
+                }
+            }
+        }
+
+        found.sort(Comparator.comparingInt(Suggestion::distance)
+                .thenComparing(Comparator.comparingInt(Suggestion::frequency).reversed())
+                .thenComparing(Suggestion::term));
+        return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
+    }
+
+    // short words only get one typo, longer ones two
+    static int maxDistanceFor(String word) {
+        return word.length() <= 4 ? 1 : 2;
+    }
+
+    private boolean inTree(String term) {
+        Node node = root;
+        while (node != null) {
+            int distance = distance(term, node.term);
+            if (distance == 0) {
+                return true;
+            }
+            node = node.children.get(distance);
+        }
+        return false;
+    }
+
+    private void insert(String term) {
+        treeSize++;
+        if (root == null) {
+            root = new Node(term);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(term, node.term);
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node(term));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    private void rebuildTree() {
+        root = null;
+        treeSize = 0;
+        for (String term : termCounts.keySet()) {
+            insert(term);
+        }
+    }
+
+    // plain Levenshtein distance, the tree needs exact values to prune correctly
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static final class Node {
+        private final String term;
+        private final Map<Integer, Node> children = new HashMap<>(4);
+
+        private Node(String term) {
+            this.term = term;
+        }
+    }
+}
@@ -6,7 +6,6 @@ import com.library.management_system.enums.Role;
 import com.library.management_system.models.UserModel;
 import com.library.management_system.repositories.UserRepository;
 import com.library.management_system.utils.JwtActions;
-import jakarta.mail.MessagingException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -15,11 +14,13 @@ import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.core.io.Resource;
 
 
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
 import java.util.Random;
@@ -36,7 +37,7 @@ public class UserService {
 
     private final JwtActions jwtActions;
 
-    private final EmailService emailService;
+    private final EmailOutbox emailOutbox;
 
     private final BCryptPasswordEncoder bCryptPasswordEncoder;
 
@@ -45,11 +46,11 @@ public class UserService {
     private final FileStorageService fileStorageService;
 
 
-    public UserService(UserRepository userRepository, JwtActions jwtActions, EmailService emailService, BCryptPasswordEncoder bCryptPasswordEncoder, JwtBlacklistService jwtBlacklistService, JwtValidationService jwtValidationService, FileStorageService fileStorageService) {
+    public UserService(UserRepository userRepository, JwtActions jwtActions, EmailOutbox emailOutbox, BCryptPasswordEncoder bCryptPasswordEncoder, JwtBlacklistService jwtBlacklistService, JwtValidationService jwtValidationService, FileStorageService fileStorageService) {
     
         this.userRepository = userRepository;
         this.jwtActions = jwtActions;
-        this.emailService = emailService;
+        this.emailOutbox = emailOutbox;
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
         this.jwtBlacklistService = jwtBlacklistService;
         this.fileStorageService = fileStorageService;
@@ -76,7 +77,8 @@ public class UserService {
         return bCryptPasswordEncoder.matches(rawPassword, encodedPassword);
     }
 
-    //    Register new user
+    //    Register new user, the verification email is sent once the user is saved
+    @Transactional
     public void registerUser(String email, String password, String username) {
         if (findUserByEmail(email).isPresent()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Email already exists");
@@ -95,13 +97,9 @@ public class UserService {
 //        String baseUrl ="https://e218876891ff.ngrok-free.app";
         String link = baseUrl + "/user/verify-email?token=" + token;
         newUser.isEnabled(); //automatically set to false untill email is validated
-        try {
-            emailService.sendEmail(email, "Verify your email", "Click the link below to verify your email: " + link);
-        } catch (MessagingException e) {
-            e.printStackTrace();
-        }
         // Save user to database
         userRepository.save(newUser);
+        emailOutbox.enqueue(email, "Verify your email", "Click the link below to verify your email: " + link, true);
     }
 
 //    validating verification token
@@ -155,14 +153,11 @@ public String validateVerificationToken(String token) {
 //        String baseUrl ="http://localhost:8080";
         String link =token;
 
-        try {
-            emailService.sendEmail(email, "Password Reset Request", "Use this code to reset your password: " + link);
-        } catch (MessagingException e) {
-            e.printStackTrace();
-        }
+        emailOutbox.enqueue(email, "Password Reset Request", "Use this code to reset your password: " + link, true);
     }
 
 //     genearte token for the user that wants to chande password and send email
+    @Transactional
     public void redeemPassword(String email){
         var user = findUserByEmail(email).orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
                 "Invalid email"));
@@ -241,29 +236,36 @@ public UserProfileResponseDTO updateUserProfile(String email, ProfileUpdateReque
 
 //-------- HANDLING user profile image ----------
 
-//    Upload profile picture - returns the image URL only
-    public String uploadProfilePicture(String email, MultipartFile profileImage) {
+//    Upload profile picture - records it on the user and returns the updated profile
+    public UserProfileResponseDTO uploadProfilePicture(String email, MultipartFile profileImage) {
         UserModel user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
 
+        String filePath;
         try {
             // Generate safe filename
             String filename = generateProfileImageFilename(email, profileImage.getOriginalFilename());
 
             // Use FileStorageService to store the image
-            String filePath = fileStorageService.storeProfilePicture(profileImage, filename);
-
-            // Delete old profile image if exists
-            if (user.getProfileImageUrl() != null) {
-                fileStorageService.deleteFile(user.getProfileImageUrl());
-            }
-
-            // Return the file path (URL) - caller can use this in updateUserProfile
-            return filePath;
-
+            filePath = fileStorageService.storeProfilePicture(profileImage, filename);
         } catch (Exception e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to upload profile image: " + e.getMessage());
         }
+
+        // point the user at the new picture first, the old one is only released once nothing refers to it
+        String oldPath = user.getProfileImageUrl();
+        user.setProfileImageUrl(filePath);
+        UserModel updatedUser;
+        try {
+            updatedUser = userRepository.save(user);
+        } catch (RuntimeException e) {
+            fileStorageService.deleteFileLater(filePath);
+            throw e;
+        }
+        if (!filePath.equals(oldPath)) {
+            fileStorageService.deleteFileLater(oldPath);
+        }
+        return mapToProfileResponseDTO(updatedUser);
     }
 
 
@@ -288,9 +290,10 @@ public UserProfileResponseDTO updateUserProfile(String email, ProfileUpdateReque
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
 
         if (user.getProfileImageUrl() != null) {
-            fileStorageService.deleteFile(user.getProfileImageUrl());
+            String oldPath = user.getProfileImageUrl();
             user.setProfileImageUrl(null);
             UserModel updatedUser = userRepository.save(user);
+            fileStorageService.deleteFileLater(oldPath);
             return mapToProfileResponseDTO(updatedUser); // Return Response DTO
         }
 
@@ -298,6 +301,19 @@ public UserProfileResponseDTO updateUserProfile(String email, ProfileUpdateReque
     }
 
 
+//    a stored profile picture by name, only when it is this user's current picture. the name starts with
+//    the email with every symbol turned into '-', which a.b@x.com and a-b@x.com share, so it proves nothing
+    public Path getProfileImageVersion(String email, String filename) {
+        UserModel user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+        if (user.getProfileImageUrl() == null
+                || !filename.equals(fileStorageService.extractFilenameFromPath(user.getProfileImageUrl()))) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Profile image not found");
+        }
+        return fileStorageService.resolveProfilePicture(filename);
+    }
+
+
     // Helper method to generate safe filename for profile image
     private String generateProfileImageFilename(String email, String originalFilename) {
         String cleanEmail = email.replaceAll("[^a-zA-Z0-9]", "-").toLowerCase();
@@ -0,0 +1,145 @@
+package com.library.management_system.services;
+
+import com.library.management_system.models.WebhookEvent;
+import com.library.management_system.repositories.WebhookEventRepository;
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+import com.stripe.net.ApiResource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Stripe webhooks are acknowledged as soon as the verified event is stored here; the payment work
+// (transaction update, access grant, confirmation email) runs afterwards on the webhook workers.
+// The event id is the primary key so a redelivered event is dropped on insert, and an event is
+// marked PROCESSED in the same transaction that applies it, so access is never granted twice.
+// Workers lock due rows with SKIP LOCKED and lease them, several instances can drain together
+// and the events of a worker that died come back once the lease runs out.
+@Service
+@Slf4j
+public class WebhookInbox {
+    static final String PENDING = "PENDING";
+    static final String FAILED = "FAILED";
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(1);
+
+    private final WebhookEventRepository eventRepository;
+    private final PaymentService paymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor webhookExecutor;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean drainAgain = new AtomicBoolean();
+
+    public WebhookInbox(WebhookEventRepository eventRepository,
+                        PaymentService paymentService,
+                        PlatformTransactionManager transactionManager,
+                        @Qualifier("webhookExecutor") Executor webhookExecutor,
+                        @Value("${stripe.webhook.batch-size:50}") int batchSize,
+                        @Value("${stripe.webhook.max-attempts:10}") int maxAttempts,
+                        @Value("${stripe.webhook.lease:5m}") Duration lease) {
+        this.eventRepository = eventRepository;
+        this.paymentService = paymentService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.webhookExecutor = webhookExecutor;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.lease = lease;
+    }
+
+//    store a verified event and start draining, false when stripe already delivered it
+    public boolean accept(Event event, String payload) {
+        boolean stored = eventRepository.insertIfAbsent(event.getId(), event.getType(), payload, LocalDateTime.now()) > 0;
+        if (stored) {
+            try {
+                webhookExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // workers are swamped, the next poll picks it up
+            }
+        } else {
+            log.info("Ignoring duplicate delivery of webhook event {}", event.getId());
+        }
+        return stored;
+    }
+
+//    picks up retries that came due and anything a busy or restarted instance left behind
+    @Scheduled(fixedDelayString = "${stripe.webhook.poll-interval-ms:5000}")
+    public void drain() {
+        if (!draining.compareAndSet(false, true)) {
+            // someone is draining, make them look once more before stopping
+            drainAgain.set(true);
+            return;
+        }
+        try {
+            do {
+                drainAgain.set(false);
+                while (drainBatch() == batchSize) {
+                    // full batch, there may be more
+                }
+            } while (drainAgain.get());
+        } catch (RuntimeException e) {
+            log.error("Draining the webhook inbox failed", e);
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    // claim a batch and apply its events in parallel, returns how many were claimed
+    int drainBatch() {
+        List<WebhookEvent> batch = transactionTemplate.execute(status -> {
+            List<WebhookEvent> due = eventRepository.lockDue(LocalDateTime.now(), batchSize);
+            if (!due.isEmpty()) {
+                eventRepository.claim(due.stream().map(WebhookEvent::getId).toList(), LocalDateTime.now().plus(lease));
+            }
+            return due;
+        });
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+        CompletableFuture.allOf(batch.stream()
+                .map(event -> CompletableFuture.runAsync(() -> process(event), webhookExecutor))
+                .toArray(CompletableFuture[]::new)).join();
+        return batch.size();
+    }
+
+    void process(WebhookEvent event) {
+        // the claim already counted this attempt in the database
+        int attempts = event.getAttempts() + 1;
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                paymentService.capturePayment(deserialize(event.getPayload()));
+                eventRepository.markProcessed(event.getId(), LocalDateTime.now());
+            });
+        } catch (RuntimeException e) {
+            String message = String.valueOf(e.getMessage());
+            message = message.length() > 500 ? message.substring(0, 500) : message;
+            if (attempts >= maxAttempts) {
+                eventRepository.markFailedAttempt(event.getId(), FAILED, LocalDateTime.now(), message);
+                log.error("Giving up on webhook event {} ({}) after {} attempts", event.getId(), event.getType(), attempts, e);
+            } else {
+                Duration delay = Duration.ofSeconds(30L << Math.min(attempts - 1, 10));
+                eventRepository.markFailedAttempt(event.getId(), PENDING,
+                        LocalDateTime.now().plus(delay.compareTo(MAX_RETRY_DELAY) < 0 ? delay : MAX_RETRY_DELAY), message);
+                log.warn("Webhook event {} failed (attempt {}), retrying later: {}", event.getId(), attempts, message);
+            }
+        }
+    }
+
+    // the payload was verified when it arrived, only parse it again
+    private static Event deserialize(String payload) {
+        return StripeObject.deserializeStripeObject(payload, Event.class, ApiResource.getGlobalResponseGetter());
+    }
+}
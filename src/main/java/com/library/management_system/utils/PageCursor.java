@@ -0,0 +1,85 @@
+package com.library.management_system.utils;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+// Opaque keyset cursor handed to clients for infinite scroll.
+// It holds the sort key of the last row of a page plus its id as tie breaker,
+// so the next page can seek straight past it instead of skipping offset rows.
+public record PageCursor(Kind kind, String sortKey, String id) {
+
+    public enum Kind {
+        CREATED_AT("c"),
+        TITLE("t");
+
+        private final String prefix;
+
+        Kind(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    private static final String SEPARATOR = "|";
+
+//    books saved before created_at was filled in have none, their cursor carries an empty sort key
+    public static PageCursor ofCreatedAt(LocalDateTime createdAt, Object id) {
+        return new PageCursor(Kind.CREATED_AT, createdAt == null ? "" : createdAt.toString(), String.valueOf(id));
+    }
+
+    public static PageCursor ofTitle(String title, Object id) {
+        return new PageCursor(Kind.TITLE, title == null ? "" : title, String.valueOf(id));
+    }
+
+//    kind|id|sortKey, the sort key goes last because titles can contain the separator
+    public String encode() {
+        String raw = kind.prefix + SEPARATOR + id + SEPARATOR + sortKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+//    decode a cursor sent back by a client, it must be of the kind the endpoint pages by
+    public static PageCursor decode(String cursor, Kind expected) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            if (parts.length != 3 || !parts[0].equals(expected.prefix) || parts[1].isEmpty()) {
+                throw new IllegalArgumentException("Unexpected cursor layout");
+            }
+            return new PageCursor(expected, parts[2], parts[1]);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page cursor");
+        }
+    }
+
+//    null for a cursor taken on a row without created_at
+    public LocalDateTime createdAt() {
+        if (sortKey.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(sortKey);
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page cursor");
+        }
+    }
+
+    public UUID uuidId() {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page cursor");
+        }
+    }
+
+    public Long longId() {
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page cursor");
+        }
+    }
+}
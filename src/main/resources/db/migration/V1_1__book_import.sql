@@ -0,0 +1,25 @@
+-- bulk catalog import jobs and the manifest rows they could not import, see BookImportService.
+-- if not exists: dev databases that ran on ddl-auto=update already have them
+
+create table if not exists book_import_jobs (
+    failed_rows integer,
+    imported_rows integer,
+    processed_rows integer,
+    total_rows integer,
+    completed_at datetime(6),
+    created_at datetime(6),
+    id bigint not null auto_increment,
+    started_at datetime(6),
+    error_message varchar(1000),
+    requested_by varchar(255),
+    status varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table if not exists book_import_errors (
+    manifest_row integer not null,
+    id bigint not null auto_increment,
+    job_id bigint not null,
+    message varchar(1000),
+    primary key (id)
+) engine=InnoDB;
@@ -0,0 +1,14 @@
+-- content addressed pdfs and covers with their reference counts, see FileStorageService.
+-- if not exists: dev databases that ran on ddl-auto=update already have it
+
+create table if not exists stored_blobs (
+    page_count integer,
+    ref_count integer not null,
+    created_at datetime(6),
+    last_referenced_at datetime(6),
+    optimized_size bigint,
+    size bigint not null,
+    hash varchar(64) not null,
+    file_path varchar(255) not null,
+    primary key (hash)
+) engine=InnoDB;
@@ -0,0 +1,26 @@
+-- resumable chunked pdf uploads, see BookUploadService.
+-- if not exists: dev databases that ran on ddl-auto=update already have them
+
+create table if not exists upload_sessions (
+    chunk_count integer not null,
+    chunk_size integer not null,
+    book_id bigint not null,
+    completed_at datetime(6),
+    created_at datetime(6),
+    expires_at datetime(6),
+    file_size bigint not null,
+    id varchar(36) not null,
+    created_by varchar(255),
+    status varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table if not exists upload_chunks (
+    chunk_index integer not null,
+    id bigint not null auto_increment,
+    received_at datetime(6),
+    size bigint not null,
+    session_id varchar(36) not null,
+    primary key (id),
+    constraint UKpab3jgavi2b7bw6tfeprvkqxb unique (session_id, chunk_index)
+) engine=InnoDB;
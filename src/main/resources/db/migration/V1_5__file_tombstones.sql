@@ -0,0 +1,12 @@
+-- files waiting to be deleted once nothing can still be reading them, see FileStorageService.deleteFileLater.
+-- if not exists: dev databases that ran on ddl-auto=update already have it
+
+create table if not exists file_tombstones (
+    attempts integer not null,
+    created_at datetime(6),
+    due_at datetime(6) not null,
+    id bigint not null auto_increment,
+    last_error varchar(500),
+    file_path varchar(1024) not null,
+    primary key (id)
+) engine=InnoDB;
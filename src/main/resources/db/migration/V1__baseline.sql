@@ -0,0 +1,142 @@
+-- schema of the entities as they were before migrations took over, which is what every database
+-- created by ddl-auto=update (and validated in production since) holds. such databases are
+-- baselined at this version and skip it, everything added since lives in the versions after it
+
+create table book (
+    number_of_pages integer not null,
+    price_per_month decimal(38,2) not null,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP null,
+    id bigint not null auto_increment,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP null,
+    author varchar(255),
+    cover_image_path varchar(255),
+    description varchar(255),
+    genre varchar(255),
+    isbn varchar(255),
+    pdf_path varchar(255),
+    published_date varchar(255),
+    title varchar(255),
+    access_type enum ('FREE','PAID') not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table book_access (
+    duration_days integer not null,
+    book_id bigint not null,
+    end_date datetime(6) not null,
+    id bigint not null auto_increment,
+    start_date datetime(6) not null,
+    transaction_id binary(16) not null,
+    user_id binary(16) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table email_subscribers (
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP null,
+    id bigint not null auto_increment,
+    email varchar(255),
+    verification_token varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table pdf_job_tracker (
+    completed_at datetime(6),
+    created_at datetime(6),
+    id bigint not null auto_increment,
+    user_id binary(16) not null,
+    error_message varchar(255),
+    file_path varchar(255),
+    status varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table support_messages (
+    created_at datetime(6),
+    id bigint not null auto_increment,
+    user_id binary(16),
+    message varchar(2500),
+    email varchar(255),
+    first_name varchar(255),
+    last_name varchar(255),
+    subject varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table transactions (
+    amount decimal(38,2) not null,
+    duration_days integer not null,
+    book_id bigint not null,
+    transaction_date datetime(6) not null,
+    id binary(16) not null,
+    user_id binary(16) not null,
+    currency varchar(255) not null,
+    stripe_payment_intent_id varchar(255),
+    payment_status enum ('FAILED','PAID','PENDING') not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table users (
+    enabled bit not null,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP null,
+    reset_token_expiration datetime(6),
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP null,
+    id binary(16) not null,
+    address varchar(255),
+    bio varchar(255),
+    country varchar(255),
+    email varchar(255) not null,
+    first_name varchar(255),
+    last_name varchar(255),
+    password varchar(255) not null,
+    phone_number varchar(255),
+    profile_image_url varchar(255),
+    reset_token varchar(255),
+    username varchar(255) not null,
+    verification_token varchar(255),
+    role enum ('ADMIN','USER'),
+    primary key (id)
+) engine=InnoDB;
+
+alter table book_access
+   add constraint UKi9ba5s7p0t40xfdk2s1lpfvmj unique (transaction_id);
+
+alter table users
+   add constraint UK6dotkott2kjsp8vw4d0m25fb7 unique (email);
+
+alter table users
+   add constraint UKr43af9ap4edm43mmtq01oddj6 unique (username);
+
+alter table book_access
+   add constraint FKkwrl29h7vw500oodrevhdi1nw
+   foreign key (book_id)
+   references book (id);
+
+alter table book_access
+   add constraint FK29d280yogxnp0al03ysytx801
+   foreign key (transaction_id)
+   references transactions (id);
+
+alter table book_access
+   add constraint FKfod2w5rgui9k363aapx5akjec
+   foreign key (user_id)
+   references users (id);
+
+alter table pdf_job_tracker
+   add constraint FKekv4g2svk2aj2nn77l201wllg
+   foreign key (user_id)
+   references users (id);
+
+alter table support_messages
+   add constraint FKg42wnmy3dbf8eoy934k181nk5
+   foreign key (user_id)
+   references users (id);
+
+alter table transactions
+   add constraint FKd2v5h3s8h8fa13mdb6bfti2hm
+   foreign key (book_id)
+   references book (id);
+
+alter table transactions
+   add constraint FKqwv7rmvc8va8rep7piikrojds
+   foreign key (user_id)
+   references users (id);
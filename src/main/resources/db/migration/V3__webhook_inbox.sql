@@ -0,0 +1,18 @@
+-- verified stripe events waiting to be applied, see WebhookInbox
+
+create table webhook_events (
+    attempts integer not null,
+    next_attempt_at datetime(6) not null,
+    processed_at datetime(6),
+    received_at datetime(6),
+    last_error varchar(500),
+    id varchar(255) not null,
+    status varchar(255) not null,
+    type varchar(255) not null,
+    payload mediumtext not null,
+    primary key (id)
+) engine=InnoDB;
+
+-- WebhookEventRepository.lockDue
+create index idx_webhook_events_due
+   on webhook_events (status, next_attempt_at);
@@ -0,0 +1,20 @@
+-- outbound email written with the business change and sent after commit, see EmailDispatcher
+
+create table email_outbox (
+    attempts integer not null,
+    html bit not null,
+    created_at datetime(6),
+    id bigint not null auto_increment,
+    next_attempt_at datetime(6) not null,
+    sent_at datetime(6),
+    last_error varchar(500),
+    subject varchar(500) not null,
+    recipient varchar(255) not null,
+    status varchar(255) not null,
+    body mediumtext not null,
+    primary key (id)
+) engine=InnoDB;
+
+-- OutboxEmailRepository.lockDue
+create index idx_email_outbox_due
+   on email_outbox (status, next_attempt_at);
@@ -0,0 +1,38 @@
+-- newsletter campaigns and what each subscriber got, see NewsletterService
+
+create table newsletter_campaigns (
+    completed_at datetime(6),
+    created_at datetime(6),
+    failed_count bigint,
+    id bigint not null auto_increment,
+    last_subscriber_id bigint,
+    lease_until datetime(6),
+    sent_count bigint,
+    started_at datetime(6),
+    total_recipients bigint,
+    subject varchar(500) not null,
+    error_message varchar(1000),
+    requested_by varchar(255),
+    status varchar(255) not null,
+    template mediumtext not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table newsletter_deliveries (
+    campaign_id bigint not null,
+    id bigint not null auto_increment,
+    sent_at datetime(6),
+    subscriber_id bigint not null,
+    error varchar(500),
+    email varchar(255) not null,
+    status varchar(255) not null,
+    primary key (id)
+) engine=InnoDB;
+
+-- NewsletterDeliveryRepository.findByCampaignIdAndStatusOrderByIdAsc
+create index idx_newsletter_deliveries_status
+   on newsletter_deliveries (campaign_id, status);
+
+-- one row per subscriber, a resumed campaign can't record anyone twice
+alter table newsletter_deliveries
+   add constraint uk_newsletter_deliveries_subscriber unique (campaign_id, subscriber_id);
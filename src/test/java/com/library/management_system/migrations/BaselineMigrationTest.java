@@ -0,0 +1,89 @@
+package com.library.management_system.migrations;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// a database as production has it: the tables ddl-auto=update made for the entities from before migrations,
+// and no flyway history. the context only starts if baselining it and running what comes after V1
+// leaves a schema hibernate's validate accepts
+@DataJpaTest(properties = {
+        "spring.datasource.url=" + BaselineMigrationTest.URL,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.flyway.enabled=true",
+        "spring.flyway.baseline-on-migrate=true",
+        "spring.flyway.baseline-version=1"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({V1_4__BookCoverPlaceholder.class, V2__HotPathIndexes.class})
+class BaselineMigrationTest {
+
+    static final String URL = "jdbc:h2:mem:baseline;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    // the tables of the entities before migrations took over, V1 must create these and nothing else
+    private static final List<String> OLD_TABLES = List.of("book", "book_access", "email_subscribers", "pdf_job_tracker",
+            "support_messages", "transactions", "users");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void createTheOldSchema() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("RUNSCRIPT FROM 'classpath:db/migration/V1__baseline.sql'");
+        }
+    }
+
+    @Test
+    void anExistingDatabaseIsBaselinedAndBroughtUpToDate() {
+        List<String> history = jdbcTemplate.queryForList(
+                "SELECT \"version\" || ':' || \"type\" FROM \"flyway_schema_history\" WHERE \"success\" AND \"version\" IS NOT NULL ORDER BY \"installed_rank\"",
+                String.class);
+
+        // V1 is only recorded, everything after it ran
+        assertThat(history).first().isEqualTo("1:BASELINE");
+        assertThat(history).contains("1.1:SQL", "1.2:SQL", "1.3:SQL", "1.4:JDBC", "1.5:SQL", "2:JDBC", "5:SQL");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_name = 'book' AND column_name = 'cover_placeholder'",
+                Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void theBaselineHoldsOnlyTheOldTables() throws SQLException {
+        String url = "jdbc:h2:mem:baseline-only;MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("RUNSCRIPT FROM 'classpath:db/migration/V1__baseline.sql'");
+            List<String> tables = new ArrayList<>();
+            try (ResultSet rows = statement.executeQuery("SELECT table_name FROM information_schema.tables WHERE table_schema = 'public'")) {
+                while (rows.next()) {
+                    tables.add(rows.getString(1));
+                }
+            }
+            assertThat(tables).containsExactlyInAnyOrderElementsOf(OLD_TABLES);
+            try (ResultSet rows = statement.executeQuery(
+                    "SELECT COUNT(*) FROM information_schema.columns WHERE table_name = 'book' AND column_name = 'cover_placeholder'")) {
+                rows.next();
+                assertThat(rows.getInt(1)).isZero();
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.library.management_system.migrations;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// runs the migrations on H2 in MySQL mode and checks the plan of every hot repository query
+class SchemaMigrationTest {
+
+    private static final String USER_ID = "X'00112233445566778899AABBCCDDEEFF'";
+
+    @Test
+    void everyHotQueryIsServedByAnIndex() throws SQLException {
+        String url = database();
+        migrate(url, null);
+
+        // the SQL Hibernate sends for each repository method, reduced to its WHERE and ORDER BY,
+        // with the index it should use, null when any index but a table scan will do
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("SELECT * FROM book ORDER BY created_at DESC, id DESC LIMIT 11", "idx_book_created_at");
+        queries.put("SELECT * FROM book WHERE created_at < '2026-01-01' OR (created_at = '2026-01-01' AND id < 5) " +
+                "ORDER BY created_at DESC, id DESC LIMIT 11", "idx_book_created_at");
+        queries.put("SELECT * FROM book WHERE genre = 'poetry' ORDER BY title, id LIMIT 11", "idx_book_genre_title");
+        queries.put("SELECT * FROM book_access WHERE user_id = " + USER_ID + " AND book_id = 3 " +
+                "AND CURRENT_TIMESTAMP BETWEEN start_date AND end_date", "idx_book_access_user_book_end");
+        // H2 keeps the index it made for the user_id foreign key and prefers it for lookups on the user alone,
+        // MySQL drops that one once a wider index starts with user_id. either way it is a seek on the user
+        queries.put("SELECT book_id, MAX(end_date) FROM book_access WHERE user_id = " + USER_ID + " " +
+                "AND start_date <= CURRENT_TIMESTAMP AND end_date >= CURRENT_TIMESTAMP GROUP BY book_id", null);
+        queries.put("SELECT * FROM transactions WHERE user_id = " + USER_ID + " " +
+                "ORDER BY transaction_date DESC, id DESC LIMIT 21", null);
+        queries.put("SELECT * FROM transactions WHERE stripe_payment_intent_id = 'pi_1'", "idx_transactions_stripe_intent");
+        queries.put("SELECT * FROM users WHERE verification_token = 'abc'", "idx_users_verification_token");
+        queries.put("SELECT * FROM users WHERE reset_token = 'abc'", "idx_users_reset_token");
+        queries.put("SELECT * FROM email_subscribers WHERE verification_token = 'abc'", "idx_email_subscribers_verification_token");
+        queries.put("SELECT * FROM email_subscribers WHERE email = 'reader@example.com'", "idx_email_subscribers_email");
+        queries.put("SELECT * FROM book_import_errors WHERE job_id = 7 ORDER BY manifest_row LIMIT 50", "idx_book_import_errors_job_row");
+        queries.put("SELECT * FROM upload_sessions WHERE status = 'OPEN' AND expires_at < CURRENT_TIMESTAMP", "idx_upload_sessions_status_expires");
+        queries.put("SELECT * FROM file_tombstones WHERE due_at < CURRENT_TIMESTAMP ORDER BY due_at LIMIT 100", "idx_file_tombstones_due_at");
+        queries.put("SELECT * FROM webhook_events WHERE status = 'PENDING' AND next_attempt_at <= CURRENT_TIMESTAMP " +
+                "ORDER BY next_attempt_at LIMIT 50", "idx_webhook_events_due");
+        queries.put("SELECT * FROM email_outbox WHERE status = 'PENDING' AND next_attempt_at <= CURRENT_TIMESTAMP " +
+                "ORDER BY next_attempt_at LIMIT 50", "idx_email_outbox_due");
+        queries.put("SELECT * FROM newsletter_deliveries WHERE campaign_id = 9 AND status = 'FAILED' ORDER BY id LIMIT 50",
+                "idx_newsletter_deliveries_status");
+
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            for (Map.Entry<String, String> query : queries.entrySet()) {
+                try (ResultSet plan = statement.executeQuery("EXPLAIN " + query.getKey())) {
+                    plan.next();
+                    assertThat(plan.getString(1)).as(query.getKey()).doesNotContain("tableScan");
+                    if (query.getValue() != null) {
+                        assertThat(plan.getString(1)).as(query.getKey()).containsIgnoringCase(query.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void skipsIndexesUpdateAlreadyCreated() throws SQLException {
+        String url = database();
+        migrate(url, "1.5");
+        // what ddl-auto=update left behind from the @Table index on BookAccess
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE INDEX idx_book_access_user_book_end ON book_access (user_id, book_id, end_date)");
+        }
+
+        assertThat(migrate(url, "2")).isEqualTo(1);
+    }
+
+    @Test
+    void skipsTablesAndColumnsUpdateAlreadyCreated() throws SQLException {
+        String url = database();
+        migrate(url, "1");
+        // a dev database that ran the catalog storage changes on ddl-auto=update before migrations
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE book ADD COLUMN cover_placeholder varchar(4000)");
+            statement.execute("CREATE TABLE stored_blobs (hash varchar(64) not null, primary key (hash))");
+        }
+
+        assertThat(migrate(url, null)).isEqualTo(9);
+    }
+
+    private static String database() {
+        return "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    private static int migrate(String url, String target) {
+        var configuration = Flyway.configure()
+                .dataSource(url, "sa", "")
+                .locations("classpath:db/migration")
+                .javaMigrations(new V1_4__BookCoverPlaceholder(), new V2__HotPathIndexes());
+        if (target != null) {
+            configuration.target(target);
+        }
+        return configuration.load().migrate().migrationsExecuted;
+    }
+}
@@ -0,0 +1,103 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.models.Book;
+import com.library.management_system.utils.PageCursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// keyset paging of the catalog on H2 in MySQL mode, which orders NULLs like MySQL does
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:books;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.flyway.enabled=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class BookRepositoryTest {
+
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2026, 3, 2, 9, 0);
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private final List<Long> expected = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // three books share one timestamp, two legacy rows have none
+        Long older = save("Older", MONDAY.minusDays(1));
+        Long first = save("Same A", MONDAY);
+        Long second = save("Same B", MONDAY);
+        Long third = save("Same C", MONDAY);
+        Long newest = save("Newest", MONDAY.plusDays(1));
+        Long legacyA = save("Legacy A", null);
+        Long legacyB = save("Legacy B", null);
+        expected.addAll(List.of(newest, third, second, first, older, legacyB, legacyA));
+    }
+
+    @Test
+    void pagesVisitEveryBookOnceNewestFirst() {
+        List<Long> seen = new ArrayList<>();
+        List<BookResponseDTO> page = bookRepository.findNewest(Limit.of(2));
+        while (!page.isEmpty()) {
+            page.forEach(book -> seen.add(book.id()));
+            BookResponseDTO last = page.get(page.size() - 1);
+            // through the encoded cursor, the way BookService hands it to clients
+            PageCursor after = PageCursor.decode(PageCursor.ofCreatedAt(last.createdAt(), last.id()).encode(), PageCursor.Kind.CREATED_AT);
+            page = after.createdAt() == null
+                    ? bookRepository.findUndatedAfter(after.longId(), Limit.of(2))
+                    : bookRepository.findNewestAfter(after.createdAt(), after.longId(), Limit.of(2));
+        }
+
+        assertThat(seen).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void searchPagesSeekPastEqualTitles() {
+        Long duplicate = save("Same B", MONDAY);
+        List<String> seen = new ArrayList<>();
+        List<BookResponseDTO> page = bookRepository.searchOrderedByTitle("same", Limit.of(2));
+        while (!page.isEmpty()) {
+            page.forEach(book -> seen.add(book.title() + "#" + book.id()));
+            BookResponseDTO last = page.get(page.size() - 1);
+            page = bookRepository.searchAfter("same", last.title(), last.id(), Limit.of(2));
+        }
+
+        assertThat(seen).containsExactly("Same A#" + expected.get(3), "Same B#" + expected.get(2),
+                "Same B#" + duplicate, "Same C#" + expected.get(1));
+    }
+
+    private Long save(String title, LocalDateTime createdAt) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setPricePerMonth(BigDecimal.ONE);
+        Long id = entityManager.persistAndFlush(book).getId();
+        // @PrePersist stamps every new book, set the date the test needs afterwards
+        entityManager.getEntityManager()
+                .createNativeQuery("UPDATE book SET created_at = ?1 WHERE id = ?2")
+                .setParameter(1, createdAt)
+                .setParameter(2, id)
+                .executeUpdate();
+        entityManager.clear();
+        return id;
+    }
+}
@@ -0,0 +1,160 @@
+package com.library.management_system.repositories;
+
+import com.library.management_system.DTOs.TransactionResponseDto;
+import com.library.management_system.enums.PaymentStatus;
+import com.library.management_system.enums.Role;
+import com.library.management_system.models.Book;
+import com.library.management_system.models.BookAccess;
+import com.library.management_system.models.Transaction;
+import com.library.management_system.models.UserModel;
+import com.library.management_system.utils.PageCursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// keyset paging of a reader's transaction history, several purchases land on the same timestamp
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:transactions;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.flyway.enabled=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class TransactionRepositoryTest {
+
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2026, 3, 2, 9, 0);
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private UserModel reader;
+    private final List<UUID> sameDate = new ArrayList<>();
+    private UUID older;
+    private UUID newest;
+
+    @BeforeEach
+    void setUp() {
+        reader = user("reader");
+        UserModel other = user("other");
+        Book book = book("Dune");
+
+        Transaction first = buy(reader, book, MONDAY.minusDays(1));
+        older = first.getId();
+        for (int i = 0; i < 3; i++) {
+            sameDate.add(buy(reader, book, MONDAY).getId());
+        }
+        Transaction last = buy(reader, book, MONDAY.plusDays(1));
+        newest = last.getId();
+        buy(other, book, MONDAY);
+
+        // two overlapping grants for the same book must not repeat a transaction
+        grant(reader, book, first);
+        grant(reader, book, last);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void pagesVisitEveryTransactionOnceAcrossEqualDates() {
+        LocalDateTime now = MONDAY.plusDays(2);
+        List<TransactionResponseDto> all = transactionRepository.findHistory(reader.getId(), now, Limit.unlimited());
+
+        List<UUID> seen = new ArrayList<>();
+        List<TransactionResponseDto> page = transactionRepository.findHistory(reader.getId(), now, Limit.of(2));
+        while (!page.isEmpty()) {
+            page.forEach(row -> seen.add(row.getTransactionId()));
+            TransactionResponseDto last = page.get(page.size() - 1);
+            // through the encoded cursor, the way PaymentService hands it to clients
+            PageCursor after = PageCursor.decode(
+                    PageCursor.ofCreatedAt(last.getTransactionDate(), last.getTransactionId()).encode(), PageCursor.Kind.CREATED_AT);
+            page = transactionRepository.findHistoryAfter(reader.getId(), now, after.createdAt(), after.uuidId(), Limit.of(2));
+        }
+
+        assertThat(seen).hasSize(5).doesNotHaveDuplicates();
+        assertThat(seen).containsExactlyElementsOf(all.stream().map(TransactionResponseDto::getTransactionId).toList());
+        assertThat(seen.get(0)).isEqualTo(newest);
+        assertThat(seen.subList(1, 4)).containsExactlyInAnyOrderElementsOf(sameDate);
+        assertThat(seen.get(4)).isEqualTo(older);
+    }
+
+    @Test
+    void aCursorInsideEqualDatesResumesAfterIt() {
+        LocalDateTime now = MONDAY.plusDays(2);
+        List<TransactionResponseDto> all = transactionRepository.findHistory(reader.getId(), now, Limit.unlimited());
+        TransactionResponseDto middle = all.get(2);
+        assertThat(middle.getTransactionDate()).isEqualTo(MONDAY);
+
+        List<TransactionResponseDto> rest = transactionRepository.findHistoryAfter(reader.getId(), now,
+                middle.getTransactionDate(), middle.getTransactionId(), Limit.unlimited());
+
+        assertThat(rest).extracting(TransactionResponseDto::getTransactionId)
+                .containsExactlyElementsOf(all.subList(3, 5).stream().map(TransactionResponseDto::getTransactionId).toList());
+    }
+
+    @Test
+    void historyCarriesTheActiveAccessWindow() {
+        List<TransactionResponseDto> first = transactionRepository.findHistory(reader.getId(), MONDAY.plusDays(2), Limit.of(1));
+
+        assertThat(first).hasSize(1);
+        // the window spans both grants still running
+        assertThat(first.get(0).getStartDate()).isEqualTo(MONDAY.minusDays(1));
+        assertThat(first.get(0).getEndDate()).isEqualTo(MONDAY.plusDays(31));
+    }
+
+    private UserModel user(String name) {
+        UserModel user = new UserModel();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPassword("secret");
+        user.setRole(Role.USER);
+        return entityManager.persist(user);
+    }
+
+    private Book book(String title) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setPricePerMonth(BigDecimal.ONE);
+        return entityManager.persist(book);
+    }
+
+    private Transaction buy(UserModel user, Book book, LocalDateTime date) {
+        Transaction transaction = new Transaction();
+        transaction.setUser(user);
+        transaction.setBook(book);
+        transaction.setAmount(BigDecimal.TEN);
+        transaction.setCurrency("usd");
+        transaction.setDurationDays(30);
+        transaction.setPaymentStatus(PaymentStatus.PAID);
+        transaction.setTransactionDate(date);
+        return entityManager.persist(transaction);
+    }
+
+    private void grant(UserModel user, Book book, Transaction transaction) {
+        BookAccess access = new BookAccess();
+        access.setUser(user);
+        access.setBook(book);
+        access.setStartDate(transaction.getTransactionDate());
+        access.setEndDate(transaction.getTransactionDate().plusDays(30));
+        access.setDurationDays(30);
+        access.setTransaction(transaction);
+        entityManager.persist(access);
+    }
+}
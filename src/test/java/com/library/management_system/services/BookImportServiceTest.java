@@ -0,0 +1,152 @@
+package com.library.management_system.services;
+
+import com.library.management_system.models.BookImportJob;
+import com.library.management_system.repositories.BookImportErrorRepository;
+import com.library.management_system.repositories.BookImportJobRepository;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BookImportServiceTest {
+
+    @TempDir
+    Path root;
+
+    private BookImportJobRepository jobRepository;
+    private FileStorageService fileStorageService;
+    private ThreadPoolTaskExecutor importExecutor;
+    private BookImportService importService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jobRepository = mock(BookImportJobRepository.class);
+        fileStorageService = mock(FileStorageService.class);
+        importExecutor = mock(ThreadPoolTaskExecutor.class);
+        importService = new BookImportService(jobRepository, mock(BookImportErrorRepository.class), fileStorageService,
+                mock(CoverImageService.class), mock(BookService.class), mock(ContactService.class), mock(JdbcTemplate.class),
+                mock(PlatformTransactionManager.class), importExecutor, mock(ThreadPoolTaskExecutor.class), root.toString(), 500);
+
+        Files.createDirectories(root.resolve("batch"));
+        when(jobRepository.save(any(BookImportJob.class))).thenAnswer(call -> {
+            BookImportJob job = call.getArgument(0);
+            if (job.getId() == null) {
+                job.setId(7L);
+            }
+            return job;
+        });
+        when(fileStorageService.createImportStagingDirectory(anyString()))
+                .thenAnswer(call -> Files.createDirectories(root.resolve("staging").resolve(call.<String>getArgument(0))));
+    }
+
+    @Test
+    void aFullQueueFailsTheJobInsteadOfLeavingItPending() {
+        doThrow(new TaskRejectedException("queue full")).when(importExecutor).execute(any(Runnable.class));
+        MockMultipartFile manifest = new MockMultipartFile("manifest", "books.csv", "text/csv", "title,pdf\n".getBytes());
+
+        assertThatThrownBy(() -> importService.startImport(manifest, null, "batch"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+
+        ArgumentCaptor<BookImportJob> saved = ArgumentCaptor.forClass(BookImportJob.class);
+        verify(jobRepository, atLeastOnce()).save(saved.capture());
+        assertThat(saved.getValue().getStatus()).isEqualTo("FAILED");
+        assertThat(saved.getValue().getCompletedAt()).isNotNull();
+        verify(fileStorageService).deleteImportStagingDirectory(root.resolve("staging").resolve("job-7"));
+    }
+
+    @Test
+    void jobsLeftUnfinishedByARestartAreFailedOnStartup() {
+        BookImportJob running = job(3L, "PROCESSING");
+        running.setProcessedRows(1000);
+        BookImportJob queued = job(4L, "PENDING");
+        when(jobRepository.findByStatusIn(List.of("PENDING", "PROCESSING"))).thenReturn(List.of(running, queued));
+
+        importService.failInterruptedImports();
+
+        assertThat(running.getStatus()).isEqualTo("FAILED");
+        assertThat(running.getErrorMessage()).contains("1000 rows");
+        assertThat(running.getCompletedAt()).isNotNull();
+        assertThat(queued.getStatus()).isEqualTo("FAILED");
+        verify(jobRepository).save(running);
+        verify(jobRepository).save(queued);
+    }
+
+    @Test
+    void aBatchTheDatabaseRejectsPartwayLeavesNoBooksBehind() throws IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:import;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // a short title column, so only the middle row of the batch fails
+        jdbcTemplate.execute("CREATE TABLE book (id BIGINT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(12) NOT NULL, " +
+                "author VARCHAR(255), isbn VARCHAR(255), published_date VARCHAR(255), description VARCHAR(255), " +
+                "genre VARCHAR(255), number_of_pages INT, pdf_path VARCHAR(255), cover_image_path VARCHAR(255), " +
+                "cover_placeholder VARCHAR(255), price_per_month DECIMAL(10, 2), access_type VARCHAR(16), " +
+                "created_at TIMESTAMP, updated_at TIMESTAMP)");
+        try {
+            ThreadPoolTaskExecutor fileExecutor = mock(ThreadPoolTaskExecutor.class);
+            doAnswer(call -> {
+                call.<Runnable>getArgument(0).run();
+                return null;
+            }).when(fileExecutor).execute(any(Runnable.class));
+            when(fileStorageService.storePdf(any(Path.class))).thenReturn(new FileStorageService.StoredPdf("books/a.pdf", 10));
+            when(fileStorageService.storeCoverImage(any(Path.class))).thenReturn("covers/a.png");
+            BookImportService service = new BookImportService(jobRepository, mock(BookImportErrorRepository.class),
+                    fileStorageService, mock(CoverImageService.class), mock(BookService.class), mock(ContactService.class),
+                    jdbcTemplate, new DataSourceTransactionManager(dataSource), importExecutor, fileExecutor,
+                    root.toString(), 500);
+
+            Path manifest = root.resolve("batch/books.csv");
+            Files.writeString(manifest, "title,author,pdfFile,coverFile\n" +
+                    "Dune,Herbert,a.pdf,a.png\n" +
+                    "A title far too long for the column,Nobody,a.pdf,a.png\n" +
+                    "Emma,Austen,a.pdf,a.png\n");
+            BookImportJob job = job(7L, "PENDING");
+            when(jobRepository.findById(7L)).thenReturn(Optional.of(job));
+
+            service.runImport(7L, manifest, root.resolve("batch"), root.resolve("staging"));
+
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM book", Integer.class)).isZero();
+            assertThat(job.getImportedRows()).isZero();
+            assertThat(job.getFailedRows()).isEqualTo(3);
+            // the files of every row were released, and no row points at them
+            verify(fileStorageService, times(3)).deleteFile("books/a.pdf");
+        } finally {
+            jdbcTemplate.execute("DROP TABLE book");
+        }
+    }
+
+    private static BookImportJob job(Long id, String status) {
+        BookImportJob job = new BookImportJob();
+        job.setId(id);
+        job.setStatus(status);
+        return job;
+    }
+}
@@ -0,0 +1,131 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.enums.BookAccessType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BookSearchIndexTest {
+
+    private BookSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new BookSearchIndex();
+        index.rebuild(List.of(
+                book(1L, "The Hobbit", "J.R.R. Tolkien", "Fantasy", "978-0261102217"),
+                book(2L, "Dune", "Frank Herbert", "Science Fiction", "978-0441172719"),
+                book(3L, "The Silmarillion", "J.R.R. Tolkien", "Fantasy", "978-0261102736")
+        ));
+    }
+
+    @Test
+    void matchesSubstringsInAnyFieldIgnoringCase() {
+        assertThat(ids(index.searchAll("TOLK"))).containsExactly(1L, 3L);
+        assertThat(ids(index.searchAll("fiction"))).containsExactly(2L);
+        assertThat(ids(index.searchAll("0441172"))).containsExactly(2L);
+        assertThat(ids(index.searchAll("du"))).containsExactly(2L);
+    }
+
+    @Test
+    void returnsNothingWhenNoBookContainsTheWord() {
+        assertThat(index.searchAll("hobbitz")).isEmpty();
+        assertThat(index.searchAll("  ")).isEmpty();
+    }
+
+    @Test
+    void pagesAreOrderedByTitle() {
+        Page<BookResponseDTO> first = index.search("fantasy", PageRequest.of(0, 1));
+        Page<BookResponseDTO> second = index.search("fantasy", PageRequest.of(1, 1));
+
+        assertThat(first.getTotalElements()).isEqualTo(2);
+        assertThat(first.getContent().get(0).title()).isEqualTo("The Hobbit");
+        assertThat(second.getContent().get(0).title()).isEqualTo("The Silmarillion");
+    }
+
+    @Test
+    void incrementalUpdatesReplaceAndRemoveDocuments() {
+        index.index(book(2L, "Dune Messiah", "Frank Herbert", "Science Fiction", "978-0441172696"));
+        index.index(book(4L, "Hyperion", "Dan Simmons", "Science Fiction", "978-0553283686"));
+        index.remove(1L);
+
+        assertThat(ids(index.searchAll("messiah"))).containsExactly(2L);
+        assertThat(ids(index.searchAll("science"))).containsExactly(2L, 4L);
+        assertThat(index.searchAll("hobbit")).isEmpty();
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    void keepsBooksChangedWhileARebuildLoads() {
+        index.rebuild(() -> {
+            // written by createBook/deleteBook while the catalog pages are being read
+            index.index(book(4L, "Hyperion", "Dan Simmons", "Science Fiction", "978-0553283686"));
+            index.remove(3L);
+            return List.of(
+                    book(1L, "The Hobbit", "J.R.R. Tolkien", "Fantasy", "978-0261102217"),
+                    book(3L, "The Silmarillion", "J.R.R. Tolkien", "Fantasy", "978-0261102736"));
+        });
+
+        assertThat(ids(index.searchAll("hyperion"))).containsExactly(4L);
+        assertThat(ids(index.searchAll("tolkien"))).containsExactly(1L);
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    void cursorPagesContinueAfterTheLastTitle() {
+        index.index(book(4L, "Hyperion", "Dan Simmons", "Science Fiction", "978-0553283686"));
+        index.index(book(5L, "Dune", "Frank Herbert", "Science Fiction", "978-0441013593"));
+
+        // through the trigram postings
+        List<BookResponseDTO> first = index.searchAfter("fiction", null, null, 2);
+        assertThat(ids(first)).containsExactly(2L, 5L);
+        assertThat(ids(index.searchAfter("fiction", "Dune", 5L, 2))).containsExactly(4L);
+
+        // too short for a trigram, walks the title order
+        assertThat(ids(index.searchAfter("e", null, null, 3))).containsExactly(2L, 5L, 4L);
+        assertThat(ids(index.searchAfter("e", "Hyperion", 4L, 3))).containsExactly(1L, 3L);
+    }
+
+    @Test
+    void suggestsCorrectionsFromTitleAndAuthorWords() {
+        assertThat(index.corrections("hobit", 5)).first().isEqualTo("hobbit");
+        assertThat(index.corrections("frank herbrt", 5)).first().isEqualTo("frank herbert");
+        assertThat(index.searchAll(index.corrections("tolkein", 5).get(0))).hasSize(2);
+    }
+
+    @Test
+    void onlyOffersCorrectionsThatFindBooks() {
+        // "dune" is a title word and "herbert" an author word, no single field holds "dune herbert"
+        assertThat(index.corrections("dune herbrt", 5)).isEmpty();
+        assertThat(index.corrections("the hobit", 5)).isNotEmpty().allSatisfy(correction -> assertThat(index.searchAll(correction)).isNotEmpty());
+    }
+
+    @Test
+    void noCorrectionsForKnownOrHopelessWords() {
+        assertThat(index.corrections("dune", 5)).isEmpty();
+        assertThat(index.corrections("zzzzzzzz", 5)).isEmpty();
+    }
+
+    @Test
+    void removedBooksStopProducingSuggestions() {
+        index.remove(2L);
+
+        assertThat(index.corrections("dume", 5)).doesNotContain("dune");
+    }
+
+    private static List<Long> ids(List<BookResponseDTO> books) {
+        return books.stream().map(BookResponseDTO::id).toList();
+    }
+
+    private static BookResponseDTO book(Long id, String title, String author, String genre, String isbn) {
+        return new BookResponseDTO(id, title, author, isbn, null, null, null, null, genre, null,
+                BigDecimal.TEN, BookAccessType.PAID, 100, null);
+    }
+}
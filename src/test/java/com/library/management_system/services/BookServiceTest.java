@@ -0,0 +1,155 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.BookRequestDTO;
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.PaginatedResponse;
+import com.library.management_system.enums.BookAccessType;
+import com.library.management_system.models.Book;
+import com.library.management_system.repositories.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BookServiceTest {
+
+    private BookRepository bookRepository;
+    private FileStorageService fileStorageService;
+    private BookCatalogCache catalogCache;
+    private BookService bookService;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        fileStorageService = mock(FileStorageService.class);
+        catalogCache = new BookCatalogCache(100, 30);
+        bookService = service(2);
+        when(bookRepository.save(any(Book.class))).thenAnswer(call -> call.getArgument(0));
+    }
+
+    @Test
+    void catalogCacheIsReadThrough() {
+        when(bookRepository.findById(1L)).thenReturn(Optional.of(book(1L, "Dune")));
+
+        assertThat(bookService.getBookById(1L)).map(BookResponseDTO::title).contains("Dune");
+        assertThat(bookService.getBookById(1L)).map(BookResponseDTO::title).contains("Dune");
+
+        verify(bookRepository, times(1)).findById(1L);
+        assertThat(bookService.getCatalogCacheStats().hits()).isEqualTo(1);
+    }
+
+    @Test
+    void missingBooksAreLookedUpAgain() {
+        when(bookRepository.findById(9L)).thenReturn(Optional.empty());
+
+        assertThat(bookService.getBookById(9L)).isEmpty();
+        assertThat(bookService.getBookById(9L)).isEmpty();
+
+        verify(bookRepository, times(2)).findById(9L);
+    }
+
+    @Test
+    void updateReplacesTheCachedBook() {
+        when(bookRepository.findById(1L)).thenReturn(Optional.of(book(1L, "Dune")));
+        bookService.getBookById(1L);
+
+        bookService.updateBook(1L, new BookRequestDTO("Dune Messiah", null, null, null, null, null, BigDecimal.TEN, 0), null, null);
+
+        assertThat(bookService.getBookById(1L)).map(BookResponseDTO::title).contains("Dune Messiah");
+        // once to cache it, once by updateBook; the read after the update is a hit
+        verify(bookRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void deleteDropsTheCachedBook() {
+        when(bookRepository.findById(1L)).thenReturn(Optional.of(book(1L, "Dune")));
+        bookService.getBookById(1L);
+
+        bookService.deleteBook(1L);
+        when(bookRepository.findById(1L)).thenReturn(Optional.empty());
+
+        assertThat(bookService.getBookById(1L)).isEmpty();
+    }
+
+    @Test
+    void preloadTakesOnlyTheConfiguredNumberOfNewestBooks() {
+        when(bookRepository.findNewest(Limit.of(2))).thenReturn(List.of(dto(5L, "Hyperion"), dto(4L, "Dune")));
+
+        bookService.preloadCatalogCache();
+
+        assertThat(bookService.getCatalogCacheStats().size()).isEqualTo(2);
+        assertThat(bookService.getBookById(5L)).map(BookResponseDTO::title).contains("Hyperion");
+        verify(bookRepository, never()).findById(any());
+    }
+
+    @Test
+    void preloadSizeZeroTurnsThePreloadOff() {
+        service(0).preloadCatalogCache();
+
+        verify(bookRepository, never()).findNewest(any());
+        assertThat(catalogCache.stats().size()).isZero();
+    }
+
+    @Test
+    void createBookReleasesTheStoredPdfWhenTheCoverFails() {
+        MockMultipartFile pdf = new MockMultipartFile("pdfFile", "dune.pdf", "application/pdf", "%PDF-1.7".getBytes());
+        MockMultipartFile cover = new MockMultipartFile("coverImage", "dune.txt", "text/plain", "nope".getBytes());
+        when(fileStorageService.storePdf(pdf)).thenReturn(new FileStorageService.StoredPdf("uploads/books/pdfs/ab/cd/abcd.pdf", 3));
+        when(fileStorageService.storeCoverImage(cover)).thenThrow(new FileStorageException("Invalid file type", HttpStatus.BAD_REQUEST));
+
+        assertThatThrownBy(() -> bookService.createBook(
+                new BookRequestDTO("Dune", "Frank Herbert", null, null, null, null, BigDecimal.TEN, 0), pdf, cover))
+                .isInstanceOf(FileStorageException.class);
+
+        verify(fileStorageService).deleteFileLater("uploads/books/pdfs/ab/cd/abcd.pdf");
+        verify(bookRepository, never()).save(any());
+    }
+
+    @Test
+    void cursorSearchUsesTheDatabaseUntilTheIndexIsBuilt() {
+        when(bookRepository.searchOrderedByTitle("dune", Limit.of(3)))
+                .thenReturn(List.of(dto(1L, "Dune"), dto(2L, "Dune Messiah"), dto(3L, "Dune Road")));
+        when(bookRepository.searchAfter("dune", "Dune Messiah", 2L, Limit.of(3))).thenReturn(List.of(dto(3L, "Dune Road")));
+
+        PaginatedResponse<BookResponseDTO> first = bookService.searchBooks("dune", null, 2);
+        assertThat(first.getContent()).extracting(BookResponseDTO::id).containsExactly(1L, 2L);
+        assertThat(first.getNextCursor()).isNotNull();
+
+        PaginatedResponse<BookResponseDTO> second = bookService.searchBooks("dune", first.getNextCursor(), 2);
+        assertThat(second.getContent()).extracting(BookResponseDTO::id).containsExactly(3L);
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    private BookService service(int preloadSize) {
+        return new BookService(bookRepository, fileStorageService, mock(CoverImageService.class), new BookSearchIndex(),
+                catalogCache, mock(BookSuggestIndex.class), preloadSize, Runnable::run);
+    }
+
+    private static Book book(Long id, String title) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        book.setPricePerMonth(BigDecimal.TEN);
+        book.setAccessType(BookAccessType.PAID);
+        return book;
+    }
+
+    private static BookResponseDTO dto(Long id, String title) {
+        return new BookResponseDTO(id, title, null, null, null, null, null, null, null, null,
+                BigDecimal.TEN, BookAccessType.PAID, 0, null);
+    }
+}
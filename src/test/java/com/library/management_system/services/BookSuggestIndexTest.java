@@ -0,0 +1,76 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.BookSuggestionDTO;
+import com.library.management_system.enums.BookAccessType;
+import com.library.management_system.repositories.BookAccessRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BookSuggestIndexTest {
+
+    private BookAccessRepository bookAccessRepository;
+    private BookSearchIndex searchIndex;
+    private BookSuggestIndex suggestIndex;
+
+    @BeforeEach
+    void setUp() {
+        bookAccessRepository = mock(BookAccessRepository.class);
+        searchIndex = new BookSearchIndex();
+        searchIndex.rebuild(List.of(
+                book(1L, "Wuthering Heights", "Emily Brontë"),
+                book(2L, "Jane Eyre", "Charlotte Brontë"),
+                book(3L, "The Hobbit", "J.R.R. Tolkien")));
+        suggestIndex = new BookSuggestIndex(searchIndex, bookAccessRepository);
+    }
+
+    @Test
+    void matchesIgnoringCaseAndAccents() {
+        suggestIndex.rebuild();
+
+        assertThat(texts(suggestIndex.suggest("BRONT", 10))).containsExactlyInAnyOrder("Emily Brontë", "Charlotte Brontë");
+        assertThat(texts(suggestIndex.suggest("charlotte brontë", 10))).containsExactly("Charlotte Brontë");
+        assertThat(texts(suggestIndex.suggest("hobb", 10))).containsExactly("The Hobbit");
+    }
+
+    @Test
+    void popularBooksComeFirst() {
+        when(bookAccessRepository.countAccessesByBook()).thenReturn(List.<Object[]>of(new Object[]{2L, 30L}));
+        suggestIndex.rebuild();
+
+        assertThat(texts(suggestIndex.suggest("bront", 1))).containsExactly("Charlotte Brontë");
+    }
+
+    @Test
+    void emptyPopularityIsNotReloadedOnEveryRebuild() {
+        when(bookAccessRepository.countAccessesByBook()).thenReturn(List.of());
+
+        suggestIndex.rebuild();
+        suggestIndex.markDirty();
+        suggestIndex.rebuildIfDirty();
+        suggestIndex.rebuild();
+
+        verify(bookAccessRepository, times(1)).countAccessesByBook();
+
+        suggestIndex.refreshPopularity();
+        verify(bookAccessRepository, times(2)).countAccessesByBook();
+    }
+
+    private static List<String> texts(List<BookSuggestionDTO> suggestions) {
+        return suggestions.stream().map(BookSuggestionDTO::text).toList();
+    }
+
+    private static BookResponseDTO book(Long id, String title, String author) {
+        return new BookResponseDTO(id, title, author, null, null, null, null, null, null, null,
+                BigDecimal.TEN, BookAccessType.PAID, 100, null);
+    }
+}
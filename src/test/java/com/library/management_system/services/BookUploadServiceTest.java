@@ -0,0 +1,348 @@
+package com.library.management_system.services;
+
+import com.library.management_system.DTOs.BookResponseDTO;
+import com.library.management_system.DTOs.UploadSessionDTO;
+import com.library.management_system.DTOs.UploadSessionRequestDTO;
+import com.library.management_system.models.UploadChunk;
+import com.library.management_system.models.UploadSession;
+import com.library.management_system.repositories.BookRepository;
+import com.library.management_system.repositories.FileTombstoneRepository;
+import com.library.management_system.repositories.StoredBlobRepository;
+import com.library.management_system.repositories.UploadChunkRepository;
+import com.library.management_system.repositories.UploadSessionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+// chunked uploads against a temp directory, upload_sessions and upload_chunks are maps behind mocked repositories
+class BookUploadServiceTest {
+    private static final int CHUNK = 1024 * 1024;
+    private static final long BOOK_ID = 7L;
+
+    @TempDir
+    Path root;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, UploadChunk> chunks = new ConcurrentHashMap<>();
+    private final List<byte[]> adopted = new ArrayList<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private FileStorageService storage;
+    private BookService bookService;
+    private BookUploadService uploads;
+
+    @BeforeEach
+    void setUp() {
+        UploadSessionRepository sessionRepository = mock(UploadSessionRepository.class);
+        when(sessionRepository.findById(anyString())).thenAnswer(call ->
+                Optional.ofNullable(sessions.get(call.<String>getArgument(0))).map(BookUploadServiceTest::copy));
+        when(sessionRepository.save(any())).thenAnswer(call -> {
+            UploadSession session = call.getArgument(0);
+            sessions.put(session.getId(), copy(session));
+            return session;
+        });
+        when(sessionRepository.changeStatus(anyString(), anyString(), anyString())).thenAnswer(call -> {
+            synchronized (sessions) {
+                UploadSession session = sessions.get(call.<String>getArgument(0));
+                if (session == null || !session.getStatus().equals(call.getArgument(1))) {
+                    return 0;
+                }
+                session.setStatus(call.getArgument(2));
+                return 1;
+            }
+        });
+        when(sessionRepository.findByStatusAndExpiresAtBefore(anyString(), any())).thenAnswer(call -> sessions.values().stream()
+                .filter(s -> s.getStatus().equals(call.getArgument(0)) && s.getExpiresAt().isBefore(call.getArgument(1)))
+                .map(BookUploadServiceTest::copy)
+                .toList());
+
+        UploadChunkRepository chunkRepository = mock(UploadChunkRepository.class);
+        when(chunkRepository.findChunkIndexes(anyString())).thenAnswer(call -> chunks.values().stream()
+                .filter(c -> c.getSessionId().equals(call.getArgument(0)))
+                .map(UploadChunk::getChunkIndex)
+                .toList());
+        when(chunkRepository.existsBySessionIdAndChunkIndex(anyString(), anyInt())).thenAnswer(call ->
+                chunks.containsKey(call.getArgument(0) + "/" + call.getArgument(1)));
+        when(chunkRepository.save(any())).thenAnswer(call -> {
+            UploadChunk chunk = call.getArgument(0);
+            chunks.put(chunk.getSessionId() + "/" + chunk.getChunkIndex(), chunk);
+            return chunk;
+        });
+        doAnswer(call -> chunks.keySet().removeIf(key -> key.startsWith(call.getArgument(0) + "/")))
+                .when(chunkRepository).deleteBySessionId(anyString());
+
+        BookRepository bookRepository = mock(BookRepository.class);
+        when(bookRepository.existsById(BOOK_ID)).thenReturn(true);
+
+        storage = spy(new FileStorageService(mock(ApplicationEventPublisher.class), mock(StoredBlobRepository.class),
+                mock(PlatformTransactionManager.class), mock(HotImageCache.class), mock(MappedPdfPool.class),
+                mock(FileTombstoneRepository.class), DataSize.ofMegabytes(8), Duration.ofMinutes(5), root.toString()));
+        // the assembled bytes are what matters here, checking they make a pdf is FileStorageServiceTest's job
+        doAnswer(call -> {
+            Path file = call.getArgument(0);
+            adopted.add(Files.readAllBytes(file));
+            Files.delete(file);
+            return new FileStorageService.StoredPdf("uploads/books/adopted.pdf", 1);
+        }).when(storage).adoptPdf(any());
+
+        bookService = mock(BookService.class);
+        when(bookService.attachPdf(anyLong(), any())).thenReturn(mock(BookResponseDTO.class));
+
+        uploads = new BookUploadService(sessionRepository, chunkRepository, bookRepository, bookService, storage,
+                mock(ContactService.class), CHUNK, 24);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void chunksSentOutOfOrderAssembleInPlace() {
+        byte[] content = content(2 * CHUNK + 1000);
+        UploadSessionDTO session = open(content.length);
+        assertThat(session.chunkCount()).isEqualTo(3);
+        assertThat(session.missingChunks()).containsExactly(0, 1, 2);
+
+        assertThat(send(session, 2, content).missingChunks()).containsExactly(0, 1);
+        assertThat(send(session, 0, content).missingChunks()).containsExactly(1);
+        assertThat(send(session, 1, content).missingChunks()).isEmpty();
+        uploads.complete(session.id());
+
+        assertThat(adopted).hasSize(1);
+        assertThat(adopted.get(0)).isEqualTo(content);
+        assertThat(sessions.get(session.id()).getStatus()).isEqualTo("COMPLETED");
+        assertThat(chunks).isEmpty();
+    }
+
+    @Test
+    void resendingAChunkOverwritesIt() {
+        byte[] content = content(CHUNK + 10);
+        UploadSessionDTO session = open(content.length);
+        byte[] garbled = content.clone();
+        Arrays.fill(garbled, 0, CHUNK, (byte) 0);
+
+        send(session, 0, garbled);
+        send(session, 0, content);
+        send(session, 1, content);
+
+        assertThat(chunks).hasSize(2);
+        uploads.complete(session.id());
+        assertThat(adopted.get(0)).isEqualTo(content);
+    }
+
+    @Test
+    void shortAndOverlongChunksAreRejectedAndStayMissing() {
+        byte[] content = content(CHUNK + 10);
+        UploadSessionDTO session = open(content.length);
+
+        // no Content-Length, so the size is only found out while reading
+        assertThatThrownBy(() -> uploads.writeChunk(session.id(), 0, new ByteArrayInputStream(content, 0, CHUNK - 1), -1))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        byte[] overlong = Arrays.copyOfRange(content, CHUNK, content.length + 1);
+        assertThatThrownBy(() -> uploads.writeChunk(session.id(), 1, new ByteArrayInputStream(overlong), -1))
+                .isInstanceOf(ResponseStatusException.class);
+        // and a declared length that does not match is refused before anything is written
+        assertThatThrownBy(() -> uploads.writeChunk(session.id(), 1, new ByteArrayInputStream(content, CHUNK, 10), 11))
+                .isInstanceOf(ResponseStatusException.class);
+
+        assertThat(uploads.getSession(session.id()).missingChunks()).containsExactly(0, 1);
+    }
+
+    @Test
+    void completingWithChunksMissingIsAConflict() {
+        byte[] content = content(2 * CHUNK);
+        UploadSessionDTO session = open(content.length);
+        send(session, 1, content);
+
+        assertThatThrownBy(() -> uploads.complete(session.id()))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Missing chunks: [0]")
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.CONFLICT);
+        // still open, the client can send the rest
+        assertThat(send(session, 0, content).missingChunks()).isEmpty();
+    }
+
+    @Test
+    void completeAndAbortRacingOnlyOneWins() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            byte[] content = content(100);
+            UploadSessionDTO session = open(content.length);
+            send(session, 0, content);
+            adopted.clear();
+
+            CountDownLatch start = new CountDownLatch(1);
+            Future<Boolean> completed = executor.submit(() -> succeeds(start, () -> uploads.complete(session.id())));
+            Future<Boolean> aborted = executor.submit(() -> succeeds(start, () -> uploads.abort(session.id())));
+            start.countDown();
+
+            assertThat(completed.get(5, TimeUnit.SECONDS)).isNotEqualTo(aborted.get(5, TimeUnit.SECONDS));
+            assertThat(adopted).hasSize(completed.get() ? 1 : 0);
+            assertThat(sessions.get(session.id()).getStatus()).isEqualTo(completed.get() ? "COMPLETED" : "ABORTED");
+            assertThat(Files.exists(storage.uploadFile(session.id()))).isFalse();
+        }
+    }
+
+    @Test
+    void completeWaitsForAChunkStillBeingWritten() throws Exception {
+        byte[] content = content(CHUNK + 10);
+        UploadSessionDTO session = open(content.length);
+        send(session, 0, content);
+        send(session, 1, content);
+
+        // a retry of chunk 1 that stalls halfway through
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        InputStream stalled = new ByteArrayInputStream(content, CHUNK, 10) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (pos == CHUNK + 5) {
+                    reading.countDown();
+                    try {
+                        resume.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                // hand out the first half on its own so the stall happens between two reads
+                return super.read(b, off, pos < CHUNK + 5 ? Math.min(len, CHUNK + 5 - pos) : len);
+            }
+        };
+        Future<UploadSessionDTO> retry = executor.submit(() -> uploads.writeChunk(session.id(), 1, stalled, 10));
+        assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Future<BookResponseDTO> completed = executor.submit(() -> uploads.complete(session.id()));
+        assertThatThrownBy(() -> completed.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        assertThat(adopted).isEmpty();
+
+        resume.countDown();
+        retry.get(5, TimeUnit.SECONDS);
+        completed.get(5, TimeUnit.SECONDS);
+        assertThat(adopted.get(0)).isEqualTo(content);
+    }
+
+    @Test
+    void chunksForAClosedSessionAreRefused() {
+        byte[] content = content(CHUNK + 10);
+        UploadSessionDTO session = open(content.length);
+        uploads.abort(session.id());
+
+        assertThatThrownBy(() -> send(session, 0, content))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.CONFLICT);
+        assertThat(chunks).isEmpty();
+        assertThat(Files.exists(storage.uploadFile(session.id()))).isFalse();
+    }
+
+    @Test
+    void noLockOutlivesItsSession() {
+        byte[] content = content(CHUNK + 10);
+        UploadSessionDTO closed = open(content.length);
+        UploadSessionDTO open = open(content.length);
+        send(closed, 0, content);
+        send(open, 0, content);
+        uploads.abort(closed.id());
+
+        assertThatThrownBy(() -> send(closed, 1, content)).isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> uploads.writeChunk("no-such-session", 0, new ByteArrayInputStream(content), -1))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> uploads.complete(closed.id())).isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> uploads.abort(closed.id())).isInstanceOf(ResponseStatusException.class);
+
+        Map<String, ?> locks = (Map<String, ?>) ReflectionTestUtils.getField(uploads, "sessionLocks");
+        assertThat(locks.keySet()).containsExactly(open.id());
+    }
+
+    @Test
+    void expiredSessionsLoseTheirFile() {
+        byte[] content = content(CHUNK + 10);
+        UploadSessionDTO stale = open(content.length);
+        UploadSessionDTO fresh = open(content.length);
+        send(stale, 0, content);
+        sessions.get(stale.id()).setExpiresAt(LocalDateTime.now().minusMinutes(1));
+
+        uploads.expireSessions();
+
+        assertThat(sessions.get(stale.id()).getStatus()).isEqualTo("EXPIRED");
+        assertThat(Files.exists(storage.uploadFile(stale.id()))).isFalse();
+        assertThat(chunks).isEmpty();
+        assertThat(sessions.get(fresh.id()).getStatus()).isEqualTo("OPEN");
+        assertThat(Files.exists(storage.uploadFile(fresh.id()))).isTrue();
+    }
+
+    private UploadSessionDTO open(long size) {
+        return uploads.createSession(new UploadSessionRequestDTO(BOOK_ID, size, null));
+    }
+
+    private UploadSessionDTO send(UploadSessionDTO session, int index, byte[] content) {
+        int from = index * session.chunkSize();
+        int length = Math.min(session.chunkSize(), content.length - from);
+        return uploads.writeChunk(session.id(), index, new ByteArrayInputStream(content, from, length), length);
+    }
+
+    private static boolean succeeds(CountDownLatch start, Runnable action) throws InterruptedException {
+        start.await();
+        try {
+            action.run();
+            return true;
+        } catch (ResponseStatusException e) {
+            assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+            return false;
+        }
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 + i / 7);
+        }
+        return content;
+    }
+
+    // the repository hands out detached rows, like findById outside a transaction does
+    private static UploadSession copy(UploadSession session) {
+        return new UploadSession(session.getId(), session.getBookId(), session.getFileSize(), session.getChunkSize(),
+                session.getChunkCount(), session.getStatus(), session.getCreatedBy(), session.getCreatedAt(),
+                session.getExpiresAt(), session.getCompletedAt());
+    }
+}
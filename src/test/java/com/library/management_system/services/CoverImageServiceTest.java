@@ -0,0 +1,68 @@
+package com.library.management_system.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CoverImageServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private CoverImageService coverImageService;
+    private Path cover;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileStorageService storage = mock(FileStorageService.class);
+        when(storage.getCoverDerivativeDirectory(anyString()))
+                .thenAnswer(call -> directory.resolve("derivatives").resolve(call.<String>getArgument(0).replace(".png", "")));
+        coverImageService = new CoverImageService(storage);
+
+        cover = directory.resolve("cover.png");
+        ImageIO.write(new BufferedImage(1000, 1500, BufferedImage.TYPE_INT_ARGB), "png", cover.toFile());
+    }
+
+    @Test
+    void buildsEveryWidthAndAPlaceholder() throws IOException {
+        String placeholder = coverImageService.process(cover.toString());
+
+        assertThat(placeholder).startsWith("data:image/jpeg;base64,");
+        for (int width : CoverImageService.WIDTHS) {
+            BufferedImage derivative = ImageIO.read(directory.resolve("derivatives/cover/w" + width + ".jpg").toFile());
+            assertThat(derivative.getWidth()).isEqualTo(width);
+            assertThat(derivative.getHeight()).isEqualTo(width * 3 / 2);
+        }
+        // a second call reads the stored placeholder instead of decoding again
+        Files.delete(cover);
+        assertThat(coverImageService.process(cover.toString())).isEqualTo(placeholder);
+    }
+
+    @Test
+    void picksTheSmallestWidthThatIsLargeEnough() {
+        assertThat(coverImageService.variant(cover.toString(), 100, false).file().getFileName()).hasToString("w120.jpg");
+        assertThat(coverImageService.variant(cover.toString(), 200, false).file().getFileName()).hasToString("w240.jpg");
+        assertThat(coverImageService.variant(cover.toString(), 5000, false).file().getFileName()).hasToString("w480.jpg");
+    }
+
+    @Test
+    void doesNotUpscaleSmallCovers() throws IOException {
+        Path small = directory.resolve("small.png");
+        ImageIO.write(new BufferedImage(100, 150, BufferedImage.TYPE_INT_RGB), "png", small.toFile());
+
+        coverImageService.process(small.toString());
+
+        assertThat(ImageIO.read(directory.resolve("derivatives/small/w480.jpg").toFile()).getWidth()).isEqualTo(100);
+    }
+}
@@ -0,0 +1,90 @@
+package com.library.management_system.services;
+
+import com.library.management_system.models.OutboxEmail;
+import com.library.management_system.repositories.OutboxEmailRepository;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmailDispatcherTest {
+
+    private OutboxEmailRepository outboxRepository;
+    private EmailService emailService;
+    private EmailDispatcher dispatcher;
+    private final MimeMessage first = mock(MimeMessage.class);
+    private final MimeMessage second = mock(MimeMessage.class);
+
+    @BeforeEach
+    void setUp() throws MessagingException {
+        outboxRepository = mock(OutboxEmailRepository.class);
+        emailService = mock(EmailService.class);
+        dispatcher = new EmailDispatcher(outboxRepository, emailService, mock(PlatformTransactionManager.class),
+                Runnable::run, 50, 8, Duration.ofMinutes(5), 30);
+        when(outboxRepository.lockDue(any(), eq(50))).thenReturn(List.of(pending(1L, "a@example.com"), pending(2L, "b@example.com")));
+        when(emailService.createMessage(eq("a@example.com"), anyString(), anyString(), anyBoolean())).thenReturn(first);
+        when(emailService.createMessage(eq("b@example.com"), anyString(), anyString(), anyBoolean())).thenReturn(second);
+    }
+
+    @Test
+    void sendsABatchOverOneConnection() {
+        assertThat(dispatcher.dispatchBatch()).isEqualTo(2);
+
+        verify(emailService, times(1)).sendAll(any(MimeMessage[].class));
+        ArgumentCaptor<List<Long>> sent = ArgumentCaptor.captor();
+        verify(outboxRepository).markSent(sent.capture(), any());
+        assertThat(sent.getValue()).containsExactlyInAnyOrder(1L, 2L);
+        verify(outboxRepository, never()).markFailedAttempt(any(), any(), any(), any());
+    }
+
+    @Test
+    void retriesOnlyTheMessagesTheServerRefused() {
+        doThrow(new MailSendException(Map.of(second, new MessagingException("550 mailbox unavailable"))))
+                .when(emailService).sendAll(any(MimeMessage[].class));
+
+        dispatcher.dispatchBatch();
+
+        verify(outboxRepository).markSent(eq(List.of(1L)), any());
+        ArgumentCaptor<LocalDateTime> retryAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(outboxRepository).markFailedAttempt(eq(2L), eq(EmailOutbox.PENDING), retryAt.capture(), eq("550 mailbox unavailable"));
+        assertThat(retryAt.getValue()).isAfter(LocalDateTime.now().plusSeconds(50));
+    }
+
+    @Test
+    void keepsTheWholeBatchWhenTheServerCannotBeReached() {
+        doThrow(new MailAuthenticationException("535 authentication failed"))
+                .when(emailService).sendAll(any(MimeMessage[].class));
+
+        dispatcher.dispatchBatch();
+
+        verify(outboxRepository, never()).markSent(any(), any());
+        verify(outboxRepository).markFailedAttempt(eq(1L), eq(EmailOutbox.PENDING), any(), anyString());
+        verify(outboxRepository).markFailedAttempt(eq(2L), eq(EmailOutbox.PENDING), any(), anyString());
+    }
+
+    private static OutboxEmail pending(Long id, String to) {
+        return new OutboxEmail(id, to, "Subject", "<p>body</p>", true, EmailOutbox.PENDING, 0,
+                LocalDateTime.now(), null, LocalDateTime.now(), null);
+    }
+}
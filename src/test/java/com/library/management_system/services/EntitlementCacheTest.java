@@ -0,0 +1,66 @@
+package com.library.management_system.services;
+
+import com.library.management_system.repositories.BookAccessRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EntitlementCacheTest {
+
+    private final UUID userId = UUID.randomUUID();
+    private BookAccessRepository bookAccessRepository;
+    private EntitlementCache entitlementCache;
+
+    @BeforeEach
+    void setUp() {
+        bookAccessRepository = mock(BookAccessRepository.class);
+        entitlementCache = new EntitlementCache(bookAccessRepository, 100, 30);
+    }
+
+    @Test
+    void answersFromMemoryOnceLoaded() {
+        when(bookAccessRepository.findActiveEndDates(eq(userId), any())).thenReturn(List.of(
+                new Object[]{9L, LocalDateTime.now().plusDays(3)},
+                new Object[]{2L, LocalDateTime.now().plusDays(30)}));
+
+        assertThat(entitlementCache.hasAccess(userId, 2L)).isTrue();
+        assertThat(entitlementCache.hasAccess(userId, 9L)).isTrue();
+        assertThat(entitlementCache.hasAccess(userId, 2L)).isTrue();
+
+        verify(bookAccessRepository, times(1)).findActiveEndDates(eq(userId), any());
+    }
+
+    @Test
+    void deniesOnlyAfterCheckingTheDatabaseAgain() {
+        when(bookAccessRepository.findActiveEndDates(eq(userId), any()))
+                .thenReturn(List.<Object[]>of())
+                .thenReturn(List.<Object[]>of(new Object[]{5L, LocalDateTime.now().plusDays(1)}));
+
+        // bought on another instance between the two loads
+        assertThat(entitlementCache.hasAccess(userId, 5L)).isTrue();
+        assertThat(entitlementCache.hasAccess(userId, 7L)).isFalse();
+    }
+
+    @Test
+    void grantsAddToLoadedUsersAndExpireOnTheirEndDate() {
+        when(bookAccessRepository.findActiveEndDates(eq(userId), any())).thenReturn(List.of());
+        assertThat(entitlementCache.hasAccess(userId, 1L)).isFalse();
+
+        entitlementCache.grant(userId, 4L, LocalDateTime.now().plusDays(1));
+        entitlementCache.grant(userId, 3L, LocalDateTime.now().minusMinutes(1));
+
+        assertThat(entitlementCache.hasAccess(userId, 4L)).isTrue();
+        assertThat(entitlementCache.hasAccess(userId, 3L)).isFalse();
+    }
+}
@@ -0,0 +1,240 @@
+package com.library.management_system.services;
+
+import com.library.management_system.models.StoredBlob;
+import com.library.management_system.repositories.FileTombstoneRepository;
+import com.library.management_system.repositories.StoredBlobRepository;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// content addressed storage against a temp directory, stored_blobs is a map behind a mocked repository
+class FileStorageServiceTest {
+
+    @TempDir
+    Path root;
+
+    private final Map<String, StoredBlob> blobs = new HashMap<>();
+    private final AtomicBoolean raceNextInsert = new AtomicBoolean();
+    private FileStorageService storage;
+
+    @BeforeEach
+    void setUp() {
+        StoredBlobRepository blobRepository = mock(StoredBlobRepository.class);
+        when(blobRepository.findById(anyString())).thenAnswer(call -> Optional.ofNullable(blobs.get(call.<String>getArgument(0))));
+        when(blobRepository.incrementReferences(anyString())).thenAnswer(call -> {
+            StoredBlob blob = blobs.get(call.<String>getArgument(0));
+            if (blob == null) {
+                return 0;
+            }
+            blob.setRefCount(blob.getRefCount() + 1);
+            return 1;
+        });
+        when(blobRepository.insert(anyString(), anyString(), anyLong(), anyInt(), any())).thenAnswer(call -> {
+            String hash = call.getArgument(0);
+            if (raceNextInsert.getAndSet(false)) {
+                // another upload of the same bytes inserted the row between our update and insert
+                blobs.put(hash, blob(hash, call.getArgument(1)));
+            }
+            if (blobs.containsKey(hash)) {
+                throw new DataIntegrityViolationException("Duplicate entry '" + hash + "' for key 'PRIMARY'");
+            }
+            blobs.put(hash, blob(hash, call.getArgument(1)));
+            return 1;
+        });
+        when(blobRepository.decrementReferences(anyString())).thenAnswer(call -> {
+            StoredBlob blob = blobs.get(call.<String>getArgument(0));
+            if (blob == null || blob.getRefCount() <= 0) {
+                return 0;
+            }
+            blob.setRefCount(blob.getRefCount() - 1);
+            return 1;
+        });
+        when(blobRepository.deleteIfUnreferenced(anyString())).thenAnswer(call -> {
+            StoredBlob blob = blobs.get(call.<String>getArgument(0));
+            return blob != null && blob.getRefCount() == 0 && blobs.remove(blob.getHash()) != null ? 1 : 0;
+        });
+
+        storage = new FileStorageService(mock(ApplicationEventPublisher.class), blobRepository, mock(PlatformTransactionManager.class),
+                mock(HotImageCache.class), mock(MappedPdfPool.class), mock(FileTombstoneRepository.class),
+                DataSize.ofMegabytes(1), Duration.ofMinutes(5), root.toString());
+    }
+
+    @Test
+    void identicalUploadsShareOneFile() {
+        String first = storage.storeCoverImage(cover("front.png", "same bytes"));
+        String second = storage.storeCoverImage(cover("copy.png", "same bytes"));
+        String other = storage.storeCoverImage(cover("back.png", "other bytes"));
+
+        assertThat(second).isEqualTo(first);
+        assertThat(other).isNotEqualTo(first);
+        assertThat(blobs).hasSize(2);
+        assertThat(blobs.get(hashOf(first)).getRefCount()).isEqualTo(2);
+        assertThat(Files.exists(Paths.get(first))).isTrue();
+        // the temp copies of the duplicates are gone, only the two blobs are left
+        assertThat(filesUnder(storage.coverImageStorage().root())).isEqualTo(2);
+    }
+
+    @Test
+    void theFileGoesOnlyWithItsLastReference() {
+        String first = storage.storeCoverImage(cover("front.png", "same bytes"));
+        storage.storeCoverImage(cover("copy.png", "same bytes"));
+
+        storage.deleteFile(first);
+        assertThat(blobs.get(hashOf(first)).getRefCount()).isEqualTo(1);
+        assertThat(Files.exists(Paths.get(first))).isTrue();
+
+        storage.deleteFile(first);
+        assertThat(blobs).doesNotContainKey(hashOf(first));
+        assertThat(Files.exists(Paths.get(first))).isFalse();
+    }
+
+    @Test
+    void losingTheInsertRaceCountsAReferenceInstead() throws IOException {
+        raceNextInsert.set(true);
+
+        String path = storage.storeCoverImage(cover("front.png", "raced bytes"));
+
+        StoredBlob blob = blobs.get(hashOf(path));
+        assertThat(blob.getRefCount()).isEqualTo(2);
+        assertThat(Paths.get(blob.getFilePath())).isEqualTo(Paths.get(path));
+        assertThat(Files.readString(Paths.get(path))).isEqualTo("raced bytes");
+    }
+
+    @Test
+    void filesFromBeforeReferenceCountingAreDeletedStraightAway() throws IOException {
+        Path legacy = Files.createDirectories(storage.coverImageStorage().root()).resolve("3f2a-cover.png");
+        Files.writeString(legacy, "old");
+
+        storage.deleteFile(legacy.toString());
+
+        assertThat(Files.exists(legacy)).isFalse();
+    }
+
+    @Test
+    void streamsAPdfIntoStorage() throws IOException {
+        FileStorageService.StoredPdf stored = storage.storePdf(new ByteArrayInputStream(pdf(3)), -1);
+
+        assertThat(stored.pageCount()).isEqualTo(3);
+        assertThat(Files.exists(Paths.get(stored.path()))).isTrue();
+    }
+
+    @Test
+    void aBodyThatIsNotAPdfFailsOnItsFirstBytes() {
+        CountingStream body = new CountingStream(new byte[512 * 1024], (byte) 'G');
+
+        assertThatThrownBy(() -> storage.storePdf(body, -1))
+                .isInstanceOfSatisfying(FileStorageException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST));
+        // one buffer at most, not the whole body
+        assertThat(body.consumed).isLessThanOrEqualTo(16 * 1024);
+        assertThat(filesUnder(storage.pdfStorage().root())).isZero();
+    }
+
+    @Test
+    void aDeclaredLengthOverTheLimitIsRefusedBeforeReading() {
+        CountingStream body = new CountingStream(new byte[16], (byte) '%');
+
+        assertThatThrownBy(() -> storage.storePdf(body, DataSize.ofMegabytes(2).toBytes()))
+                .isInstanceOfSatisfying(FileStorageException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        assertThat(body.consumed).isZero();
+    }
+
+    @Test
+    void aBodyWithoutLengthIsCutOffAtTheLimit() {
+        byte[] oversized = new byte[(int) DataSize.ofMegabytes(2).toBytes()];
+        System.arraycopy("%PDF-1.7\n".getBytes(), 0, oversized, 0, 9);
+
+        assertThatThrownBy(() -> storage.storePdf(new ByteArrayInputStream(oversized), -1))
+                .isInstanceOfSatisfying(FileStorageException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        // the partial temp file is removed
+        assertThat(filesUnder(storage.pdfStorage().root())).isZero();
+    }
+
+    private static byte[] pdf(int pages) throws IOException {
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            for (int i = 0; i < pages; i++) {
+                document.addPage(new PDPage());
+            }
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    // a request body that remembers how much of it was read
+    private static final class CountingStream extends ByteArrayInputStream {
+        int consumed;
+
+        CountingStream(byte[] bytes, byte fill) {
+            super(bytes);
+            Arrays.fill(bytes, fill);
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            int n = super.read(buffer, offset, length);
+            consumed += Math.max(n, 0);
+            return n;
+        }
+
+        @Override
+        public synchronized int read() {
+            int b = super.read();
+            consumed += b >= 0 ? 1 : 0;
+            return b;
+        }
+    }
+
+    private static MockMultipartFile cover(String name, String content) {
+        return new MockMultipartFile("coverImage", name, "image/png", content.getBytes());
+    }
+
+    private static String hashOf(String path) {
+        String tag = FileStorageService.contentTag(path);
+        return tag.substring(1, tag.length() - 1);
+    }
+
+    private static StoredBlob blob(String hash, String filePath) {
+        return new StoredBlob(hash, filePath, 0, 0, 1, LocalDateTime.now(), null, null);
+    }
+
+    private static long filesUnder(Path directory) {
+        try (var files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).count();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
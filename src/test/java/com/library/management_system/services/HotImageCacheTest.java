@@ -0,0 +1,72 @@
+package com.library.management_system.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HotImageCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private HotImageCache cache;
+    private Path image;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cache = new HotImageCache(DataSize.ofKilobytes(64), DataSize.ofKilobytes(4));
+        image = Files.write(directory.resolve("cover.jpg"), new byte[]{1, 2, 3, 4});
+    }
+
+    @Test
+    void servesCachedBytesWithoutTouchingTheDiskAgain() throws IOException {
+        MockHttpServletResponse first = serve(null);
+        Files.delete(image);
+        MockHttpServletResponse second = serve(null);
+
+        assertThat(second.getContentAsByteArray()).containsExactly(1, 2, 3, 4).isEqualTo(first.getContentAsByteArray());
+        assertThat(second.getHeader("Cache-Control")).contains("max-age=31536000", "immutable", "public");
+        assertThat(second.getHeader("ETag")).isEqualTo("\"cover.jpg\"");
+    }
+
+    @Test
+    void answersAMatchingIfNoneMatchWithNotModified() throws IOException {
+        MockHttpServletResponse response = serve("\"cover.jpg\"");
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void streamsFilesLargerThanAnEntryAndForgetsInvalidatedOnes() throws IOException {
+        Path large = Files.write(directory.resolve("large.jpg"), new byte[8 * 1024]);
+        assertThat(cache.get(large)).isNull();
+
+        assertThat(cache.get(image)).isNotNull();
+        cache.invalidate(directory);
+        Files.delete(image);
+        assertThatThrownBy(() -> cache.get(image))
+                .hasMessageContaining("Image not found");
+    }
+
+    private MockHttpServletResponse serve(String ifNoneMatch) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books/cover/v/cover.jpg");
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        cache.serveImmutable(image, "image/jpeg", "\"cover.jpg\"", true, new ServletWebRequest(request, response));
+        return response;
+    }
+}
@@ -0,0 +1,65 @@
+package com.library.management_system.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImportManifestParserTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsCsvWithQuotedFieldsAndLooseHeaders() throws IOException {
+        Path manifest = directory.resolve("books.csv");
+        Files.writeString(manifest, """
+                Title,author,Price Per Month,number_of_pages,pdfFile,coverFile,description
+                "Dune, Deluxe",Frank Herbert,4.99,612,dune.pdf,dune.jpg,"A ""classic""
+                over two lines"
+
+                The Hobbit,J.R.R. Tolkien,0,,hobbit.pdf,hobbit.png,
+                """);
+
+        List<ImportManifestParser.Row> rows = ImportManifestParser.parse(manifest);
+
+        assertThat(rows).hasSize(2);
+        ImportManifestParser.Row dune = rows.get(0);
+        assertThat(dune.title()).isEqualTo("Dune, Deluxe");
+        assertThat(dune.pricePerMonth()).isEqualTo("4.99");
+        assertThat(dune.numberOfPages()).isEqualTo("612");
+        assertThat(dune.description()).isEqualTo("A \"classic\"\nover two lines");
+        assertThat(rows.get(1).rowNumber()).isEqualTo(3);
+        assertThat(rows.get(1).numberOfPages()).isNull();
+    }
+
+    @Test
+    void readsJsonArray() throws IOException {
+        Path manifest = directory.resolve("books.json");
+        Files.writeString(manifest, """
+                [{"title": "Dune", "author": "Frank Herbert", "pricePerMonth": 4.99, "pdfFile": "dune.pdf", "isbn": null}]
+                """);
+
+        List<ImportManifestParser.Row> rows = ImportManifestParser.parse(manifest);
+
+        assertThat(rows).singleElement().satisfies(row -> {
+            assertThat(row.rowNumber()).isEqualTo(1);
+            assertThat(row.pricePerMonth()).isEqualTo("4.99");
+            assertThat(row.isbn()).isNull();
+        });
+    }
+
+    @Test
+    void rejectsUnknownFormats() throws IOException {
+        Path manifest = Files.writeString(directory.resolve("books.xml"), "<books/>");
+
+        assertThatThrownBy(() -> ImportManifestParser.parse(manifest)).isInstanceOf(ResponseStatusException.class);
+    }
+}
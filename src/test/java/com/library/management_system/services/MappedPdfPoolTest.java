@@ -0,0 +1,75 @@
+package com.library.management_system.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedPdfPoolTest {
+
+    @TempDir
+    Path directory;
+
+    private final MappedPdfPool pool = new MappedPdfPool(2, DataSize.ofMegabytes(1));
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void concurrentReadersShareOneMapping() throws IOException {
+        Path pdf = write("a.pdf", "%PDF-1.7 hello");
+
+        try (MappedPdfPool.Lease first = pool.acquire(pdf); MappedPdfPool.Lease second = pool.acquire(pdf)) {
+            assertThat(first.mapping()).isSameAs(second.mapping());
+            assertThat(text(first.slices(9, 5).get(0))).isEqualTo("hello");
+        }
+        assertThat(pool.size()).isEqualTo(1);
+    }
+
+    @Test
+    void evictedMappingStaysUsableUntilTheLastLeaseCloses() throws IOException {
+        MappedPdfPool.Lease lease = pool.acquire(write("a.pdf", "first"));
+        pool.acquire(write("b.pdf", "second")).close();
+        pool.acquire(write("c.pdf", "third")).close();
+
+        // a.pdf is out of the pool but still being read
+        assertThat(pool.size()).isEqualTo(2);
+        assertThat(lease.mapping().isReleased()).isFalse();
+        assertThat(text(lease.slices(0, 5).get(0))).isEqualTo("first");
+
+        lease.close();
+        assertThat(lease.mapping().isReleased()).isTrue();
+    }
+
+    @Test
+    void invalidateUnmapsAnIdleMappingRightAway() throws IOException {
+        Path pdf = write("a.pdf", "content");
+        MappedPdfPool.Lease lease = pool.acquire(pdf);
+        lease.close();
+
+        pool.invalidate(pdf);
+
+        assertThat(lease.mapping().isReleased()).isTrue();
+        assertThat(pool.size()).isZero();
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(directory.resolve(name), content);
+    }
+
+    private static String text(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
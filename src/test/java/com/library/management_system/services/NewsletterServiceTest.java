@@ -0,0 +1,204 @@
+package com.library.management_system.services;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.library.management_system.DTOs.NewsletterRequestDTO;
+import com.library.management_system.models.MailingList;
+import com.library.management_system.models.NewsletterCampaign;
+import com.library.management_system.repositories.MailingRepository;
+import com.library.management_system.repositories.NewsletterCampaignRepository;
+import com.library.management_system.repositories.NewsletterDeliveryRepository;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// sends real campaigns to a local GreenMail smtp server, the database side is mocked
+class NewsletterServiceTest {
+
+    private static final List<MailingList> SUBSCRIBERS = List.of(
+            subscriber(1L, "ada@example.com"), subscriber(2L, "bob@example.com"), subscriber(3L, "cy@example.com"),
+            subscriber(4L, "dee@example.com"), subscriber(5L, "eve@example.com"));
+
+    private final GreenMail greenMail = new GreenMail(ServerSetupTest.SMTP);
+    private final ExecutorService sendExecutor = Executors.newFixedThreadPool(2);
+    private NewsletterCampaignRepository campaignRepository;
+    private MailingRepository mailingRepository;
+    private NewsletterService newsletterService;
+    private final NewsletterCampaign campaign = new NewsletterCampaign();
+
+    @BeforeEach
+    void setUp() {
+        greenMail.start();
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("localhost");
+        sender.setPort(ServerSetupTest.SMTP.getPort());
+        sender.getJavaMailProperties().setProperty("mail.smtp.from", "news@library.example.com");
+        EmailService emailService = new EmailService();
+        ReflectionTestUtils.setField(emailService, "emailSender", sender);
+
+        campaignRepository = mock(NewsletterCampaignRepository.class);
+        mailingRepository = mock(MailingRepository.class);
+        newsletterService = new NewsletterService(campaignRepository, mock(NewsletterDeliveryRepository.class),
+                mailingRepository, emailService, mock(ContactService.class),
+                mock(JdbcTemplate.class), mock(PlatformTransactionManager.class), Runnable::run, sendExecutor,
+                2, 1, 1000, Duration.ofMinutes(10));
+
+        campaign.setId(9L);
+        campaign.setSubject("Spring reading list");
+        campaign.setTemplate("<p>New titles for ${email}</p>");
+        campaign.setStatus("PENDING");
+        when(campaignRepository.claim(eq(9L), any(), any())).thenReturn(1);
+        when(campaignRepository.findById(9L)).thenReturn(Optional.of(campaign));
+        // subscribers in id order after the cursor, as the keyset query returns them
+        when(mailingRepository.findVerifiedAfter(anyLong(), any(Limit.class))).thenAnswer(call -> {
+            long afterId = call.getArgument(0);
+            Limit limit = call.getArgument(1);
+            return SUBSCRIBERS.stream().filter(s -> s.getId() > afterId).limit(limit.max()).toList();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        greenMail.stop();
+        sendExecutor.shutdownNow();
+    }
+
+    @Test
+    void sendsEverySubscriberTheirOwnCopy() {
+        newsletterService.runCampaign(9L);
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(5);
+        for (MimeMessage message : received) {
+            String to = recipient(message);
+            assertThat(GreenMailUtil.getBody(message)).contains("New titles for " + to);
+        }
+        verify(campaignRepository).recordPage(eq(9L), eq(2L), eq(2L), eq(0L), any());
+        verify(campaignRepository).recordPage(eq(9L), eq(4L), eq(2L), eq(0L), any());
+        verify(campaignRepository).recordPage(eq(9L), eq(5L), eq(1L), eq(0L), any());
+        verify(campaignRepository).finish(eq(9L), eq("COMPLETED"), isNull(), any());
+    }
+
+    @Test
+    void resumesAfterTheLastRecordedSubscriber() {
+        campaign.setStatus("FAILED");
+        campaign.setLastSubscriberId(3L);
+
+        newsletterService.runCampaign(9L);
+
+        assertThat(Arrays.stream(greenMail.getReceivedMessages())
+                .map(message -> recipient(message)))
+                .containsExactlyInAnyOrder("dee@example.com", "eve@example.com");
+        verify(campaignRepository, times(1)).recordPage(eq(9L), anyLong(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void recordsRecipientsTheServerCouldNotTake() {
+        greenMail.stop();
+
+        newsletterService.runCampaign(9L);
+
+        verify(campaignRepository).recordPage(eq(9L), eq(2L), eq(0L), eq(2L), any());
+        verify(campaignRepository).finish(eq(9L), eq("COMPLETED"), isNull(), any());
+    }
+
+    @Test
+    void skipsACampaignAnotherSenderHolds() {
+        when(campaignRepository.claim(eq(9L), any(), any())).thenReturn(0);
+
+        newsletterService.runCampaign(9L);
+
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+    }
+
+    @Test
+    void refusesATemplateThatInstantiatesClasses() {
+        String body = "<#assign run = \"freemarker.template.utility.Execute\"?new()>${run(\"touch pwned\")}";
+
+        assertThatThrownBy(() -> newsletterService.startCampaign(new NewsletterRequestDTO("Hello", body)))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("not allowed")
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        verify(campaignRepository, never()).save(any());
+    }
+
+    @Test
+    void aStoredTemplateThatInstantiatesClassesSendsNothing() {
+        // saved before templates were checked on the way in
+        campaign.setTemplate("${\"freemarker.template.utility.ObjectConstructor\"?new()(\"java.io.File\", \"x\")}");
+
+        newsletterService.runCampaign(9L);
+
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+        verify(campaignRepository).recordPage(eq(9L), eq(2L), eq(0L), eq(2L), any());
+    }
+
+    @Test
+    void aCampaignTheFullQueueRejectsIsLeftResumable() {
+        NewsletterService full = new NewsletterService(campaignRepository, mock(NewsletterDeliveryRepository.class),
+                mailingRepository, new EmailService(), mock(ContactService.class),
+                mock(JdbcTemplate.class), mock(PlatformTransactionManager.class),
+                command -> { throw new TaskRejectedException("queue full"); }, sendExecutor,
+                2, 1, 1000, Duration.ofMinutes(10));
+        when(campaignRepository.save(any())).thenAnswer(call -> {
+            NewsletterCampaign saved = call.getArgument(0);
+            saved.setId(9L);
+            return saved;
+        });
+
+        assertThatThrownBy(() -> full.startCampaign(new NewsletterRequestDTO("Hello", "<p>Hi ${email}</p>")))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        // FAILED is the status resume accepts
+        verify(campaignRepository).finish(eq(9L), eq("FAILED"), any(), any());
+
+        campaign.setStatus("FAILED");
+        assertThatThrownBy(() -> full.resumeCampaign(9L))
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    private static String recipient(MimeMessage message) {
+        try {
+            return message.getAllRecipients()[0].toString();
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MailingList subscriber(Long id, String email) {
+        return new MailingList(id, email, null, null);
+    }
+}
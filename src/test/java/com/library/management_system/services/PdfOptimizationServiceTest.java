@@ -0,0 +1,118 @@
+package com.library.management_system.services;
+
+import com.library.management_system.repositories.StoredBlobRepository;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdfwriter.compress.CompressParameters;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class PdfOptimizationServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private PdfOptimizationService optimizationService;
+
+    @BeforeEach
+    void setUp() {
+        optimizationService = new PdfOptimizationService(mock(FileStorageService.class), mock(PdfSegmentService.class),
+                mock(StoredBlobRepository.class), Runnable::run, true, 150, 0.8f);
+    }
+
+    @Test
+    void mergesRepeatedImagesAndCompressesPlainStreams() throws IOException {
+        Path source = directory.resolve("source.pdf");
+        BufferedImage logo = noise(200, 200);
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 1; i <= 3; i++) {
+                PDPage page = new PDPage(PDRectangle.LETTER);
+                document.addPage(page);
+                // the same picture embedded again on every page, as some publishers' tools do
+                PDImageXObject image = LosslessFactory.createFromImage(document, logo);
+                try (PDPageContentStream content = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.OVERWRITE, false)) {
+                    content.drawImage(image, 72, 500, 144, 144);
+                    content.beginText();
+                    content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                    content.newLineAtOffset(72, 400);
+                    content.showText("Page " + i + " " + "lorem ipsum ".repeat(20));
+                    content.endText();
+                }
+            }
+            document.save(source.toFile(), CompressParameters.NO_COMPRESSION);
+        }
+        Path target = directory.resolve("optimized.pdf");
+
+        PdfOptimizationService.Result result = optimizationService.optimize(source, target);
+
+        assertThat(result.duplicatesMerged()).isEqualTo(2);
+        assertThat(result.streamsCompressed()).isGreaterThanOrEqualTo(3);
+        assertThat(result.optimizedSize()).isEqualTo(Files.size(target)).isLessThan(Files.size(source) / 2);
+        try (PDDocument optimized = Loader.loadPDF(target.toFile())) {
+            assertThat(optimized.getNumberOfPages()).isEqualTo(3);
+            assertThat(new PDFTextStripper().getText(optimized)).contains("Page 1", "Page 2", "Page 3");
+            assertThat(imageOn(optimized, 1).getCOSObject()).isSameAs(imageOn(optimized, 0).getCOSObject());
+        }
+    }
+
+    @Test
+    void scalesImagesDownToTheDpiLimit() throws IOException {
+        Path source = directory.resolve("scan.pdf");
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.LETTER);
+            document.addPage(page);
+            // a full page scan at 200 dpi
+            PDImageXObject scan = LosslessFactory.createFromImage(document, noise(1700, 2200));
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(scan, 0, 0, 612, 792);
+            }
+            document.save(source.toFile());
+        }
+        Path target = directory.resolve("optimized.pdf");
+
+        PdfOptimizationService.Result result = optimizationService.optimize(source, target);
+
+        assertThat(result.imagesDownsampled()).isEqualTo(1);
+        try (PDDocument optimized = Loader.loadPDF(target.toFile())) {
+            PDImageXObject image = imageOn(optimized, 0);
+            assertThat(image.getWidth()).isEqualTo(1275);
+            assertThat(image.getHeight()).isEqualTo(1650);
+        }
+    }
+
+    private static PDImageXObject imageOn(PDDocument document, int page) throws IOException {
+        var resources = document.getPage(page).getResources();
+        return (PDImageXObject) resources.getXObject(resources.getXObjectNames().iterator().next());
+    }
+
+    private static BufferedImage noise(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // smooth gradients with a little grain, closer to a photo than pure noise
+                int v = (x * 255 / width + y * 255 / height) / 2 + random.nextInt(8);
+                image.setRGB(x, y, (v << 16) | (v << 8) | (255 - v));
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,95 @@
+package com.library.management_system.services;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PdfSegmentServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private PdfSegmentService segmentService;
+    private Path pdf;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileStorageService storage = mock(FileStorageService.class);
+        when(storage.getSegmentDirectory(anyString()))
+                .thenAnswer(call -> directory.resolve("segments").resolve(call.<String>getArgument(0).replace(".pdf", "")));
+        when(storage.readingCopyOf(any())).thenAnswer(call -> call.getArgument(0));
+        doCallRealMethod().when(storage).deleteDirectory(any());
+        // run background work inline so the test can look at the result
+        segmentService = new PdfSegmentService(storage, Runnable::run);
+
+        pdf = directory.resolve("book.pdf");
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < 3; i++) {
+                document.addPage(new PDPage());
+            }
+            document.save(pdf.toFile());
+        }
+    }
+
+    @Test
+    void splitsEveryPageIntoItsOwnPdf() throws IOException {
+        segmentService.segment(pdf);
+
+        PdfSegmentService.SegmentIndex index = segmentService.getIndex(pdf);
+        assertThat(index.pageCount()).isEqualTo(3);
+        assertThat(index.pageSizes()).hasSize(3).allMatch(size -> size > 0);
+        try (PDDocument page = Loader.loadPDF(segmentService.getPage(pdf, 2).toFile())) {
+            assertThat(page.getNumberOfPages()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void mergesAWindowOfPagesAndClampsItToTheBook() throws IOException {
+        segmentService.segment(pdf);
+
+        try (PDDocument window = Loader.loadPDF(segmentService.getWindow(pdf, 2, 5))) {
+            assertThat(window.getNumberOfPages()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void firstRequestStartsSegmentingAndAsksTheClientToRetry() {
+        assertThatThrownBy(() -> segmentService.getIndex(pdf))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("being prepared");
+
+        assertThat(segmentService.getIndex(pdf).pageCount()).isEqualTo(3);
+    }
+
+    @Test
+    void rejectsPagesOutsideTheBook() {
+        segmentService.segment(pdf);
+
+        assertThatThrownBy(() -> segmentService.getPage(pdf, 4)).isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> segmentService.getPage(pdf, 0)).isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void brokenPdfsAreNotRetriedOnEveryRequest() throws IOException {
+        Path broken = Files.writeString(directory.resolve("broken.pdf"), "%PDF-1.7 not really");
+
+        assertThatThrownBy(() -> segmentService.getIndex(broken)).hasMessageContaining("being prepared");
+        assertThatThrownBy(() -> segmentService.getIndex(broken)).hasMessageContaining("not available");
+    }
+}
@@ -0,0 +1,90 @@
+package com.library.management_system.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfStreamServiceTest {
+
+    private final PdfStreamService streamService = new PdfStreamService(new MappedPdfPool(4, DataSize.ofMegabytes(16)));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void parsesSingleRanges() {
+        assertThat(PdfStreamService.parseRange("bytes=0-99", 1000)).isEqualTo(new PdfStreamService.ByteRange(0, 99));
+        assertThat(PdfStreamService.parseRange("bytes=900-", 1000)).isEqualTo(new PdfStreamService.ByteRange(900, 999));
+        assertThat(PdfStreamService.parseRange("bytes=-100", 1000)).isEqualTo(new PdfStreamService.ByteRange(900, 999));
+        assertThat(PdfStreamService.parseRange("bytes=990-2000", 1000)).isEqualTo(new PdfStreamService.ByteRange(990, 999));
+    }
+
+    @Test
+    void ignoresMissingOrMalformedRanges() {
+        assertThat(PdfStreamService.parseRange(null, 1000)).isNull();
+        assertThat(PdfStreamService.parseRange("items=0-1", 1000)).isNull();
+        assertThat(PdfStreamService.parseRange("bytes=a-b", 1000)).isNull();
+        assertThat(PdfStreamService.parseRange("bytes=0-1,5-6", 1000)).isNull();
+    }
+
+    @Test
+    void rejectsRangesOutsideTheFile() {
+        assertThat(PdfStreamService.parseRange("bytes=1000-", 1000)).isSameAs(PdfStreamService.UNSATISFIABLE);
+        assertThat(PdfStreamService.parseRange("bytes=50-10", 1000)).isSameAs(PdfStreamService.UNSATISFIABLE);
+        assertThat(PdfStreamService.parseRange("bytes=-0", 1000)).isSameAs(PdfStreamService.UNSATISFIABLE);
+    }
+
+    @Test
+    void servesPartialContent() throws IOException {
+        Path pdf = Files.writeString(directory.resolve("book.pdf"), "%PDF-1.7 hello world");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books/pdf-stream/1");
+        request.addHeader("Range", "bytes=9-13");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        streamService.stream(pdf, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes 9-13/20");
+        assertThat(response.getContentLengthLong()).isEqualTo(5);
+        assertThat(response.getContentAsString(StandardCharsets.US_ASCII)).isEqualTo("hello");
+    }
+
+    @Test
+    void servesWholeFileWhenIfRangeNoLongerMatches() throws IOException {
+        Path pdf = Files.writeString(directory.resolve("book.pdf"), "%PDF-1.7 hello world");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books/pdf-stream/1");
+        request.addHeader("Range", "bytes=9-13");
+        request.addHeader("If-Range", "\"stale\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        streamService.stream(pdf, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader("Accept-Ranges")).isEqualTo("bytes");
+        assertThat(response.getContentAsString(StandardCharsets.US_ASCII)).isEqualTo("%PDF-1.7 hello world");
+    }
+
+    @Test
+    void handsTheRangeToSendfileWhenTheConnectorSupportsIt() throws IOException {
+        Path pdf = Files.writeString(directory.resolve("book.pdf"), "%PDF-1.7 hello world");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books/pdf-stream/1");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader("Range", "bytes=0-4");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        streamService.stream(pdf, request, response);
+
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(0L);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(5L);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+}
@@ -0,0 +1,50 @@
+package com.library.management_system.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefixSuggesterTest {
+
+    private final PrefixSuggester<String> suggester = new PrefixSuggester<>(List.of(
+            new PrefixSuggester.Entry<>("dune", "Dune", 40),
+            new PrefixSuggester.Entry<>("dune messiah", "Dune Messiah", 12),
+            new PrefixSuggester.Entry<>("dungeon crawler", "Dungeon Crawler", 90),
+            new PrefixSuggester.Entry<>("dracula", "Dracula", 70),
+            new PrefixSuggester.Entry<>("messiah", "Dune Messiah", 12)
+    ));
+
+    @Test
+    void ranksMatchesByWeight() {
+        assertThat(suggester.suggest("dun", 10)).containsExactly("Dungeon Crawler", "Dune", "Dune Messiah");
+        assertThat(suggester.suggest("d", 10)).containsExactly("Dungeon Crawler", "Dracula", "Dune", "Dune Messiah");
+    }
+
+    @Test
+    void stopsAtTheLimit() {
+        assertThat(suggester.suggest("d", 2)).containsExactly("Dungeon Crawler", "Dracula");
+        assertThat(suggester.suggest("d", 0)).isEmpty();
+    }
+
+    @Test
+    void onlyKeysStartingWithThePrefixMatch() {
+        // "messiah" is a key of its own, the value is listed once however many of its keys match
+        assertThat(suggester.suggest("mess", 10)).containsExactly("Dune Messiah");
+        assertThat(suggester.suggest("une", 10)).isEmpty();
+        assertThat(suggester.suggest("", 10)).isEmpty();
+    }
+
+    @Test
+    void findsTheHeaviestInALargeRange() {
+        List<PrefixSuggester.Entry<String>> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(new PrefixSuggester.Entry<>("book " + i, "Book " + i, i % 97));
+        }
+
+        assertThat(new PrefixSuggester<>(entries).suggest("book", 3))
+                .allSatisfy(value -> assertThat(Integer.parseInt(value.substring(5)) % 97).isEqualTo(96));
+    }
+}
@@ -0,0 +1,56 @@
+package com.library.management_system.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardedDirectoryTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void contentHashesAreShardedOnTheirOwnPrefix() {
+        ShardedDirectory storage = new ShardedDirectory(root);
+        String name = "ab12" + "0".repeat(60) + ".pdf";
+
+        assertThat(storage.pathFor(name)).isEqualTo(root.resolve("ab").resolve("12").resolve(name));
+    }
+
+    @Test
+    void otherNamesSpreadByTheirDigest() {
+        ShardedDirectory storage = new ShardedDirectory(root);
+
+        Path path = storage.pathFor("jane-doe-profile-1700000000000.png");
+
+        assertThat(root.relativize(path).getNameCount()).isEqualTo(3);
+        assertThat(path.getParent().getFileName().toString()).matches("[0-9a-f]{2}");
+        assertThat(storage.pathFor("jane-doe-profile-1700000000000.png")).isEqualTo(path);
+    }
+
+    @Test
+    void findsFilesThatWereNotMigratedYet() throws IOException {
+        ShardedDirectory storage = new ShardedDirectory(root);
+        Path flat = Files.writeString(root.resolve("old-cover.jpg"), "x");
+
+        assertThat(storage.locate("old-cover.jpg")).isEqualTo(flat);
+
+        Path sharded = storage.prepare("old-cover.jpg");
+        Files.move(flat, sharded);
+        assertThat(storage.locate("old-cover.jpg")).isEqualTo(sharded);
+    }
+
+    @Test
+    void rejectsNamesThatLeaveTheDirectory() {
+        ShardedDirectory storage = new ShardedDirectory(root);
+
+        assertThatThrownBy(() -> storage.pathFor("../secret.pdf")).isInstanceOf(FileStorageException.class);
+        assertThatThrownBy(() -> storage.pathFor("..")).isInstanceOf(FileStorageException.class);
+    }
+}
@@ -0,0 +1,64 @@
+package com.library.management_system.services;
+
+import com.library.management_system.models.FileTombstone;
+import com.library.management_system.repositories.FileTombstoneRepository;
+import com.library.management_system.repositories.StoredBlobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StorageReconcilerTest {
+
+    private FileStorageService fileStorageService;
+    private FileTombstoneRepository tombstoneRepository;
+    private StorageReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        fileStorageService = mock(FileStorageService.class);
+        tombstoneRepository = mock(FileTombstoneRepository.class);
+        reconciler = new StorageReconciler(fileStorageService, tombstoneRepository, mock(StoredBlobRepository.class),
+                mock(NamedParameterJdbcTemplate.class), mock(PlatformTransactionManager.class), Duration.ofHours(1), 7);
+    }
+
+    @Test
+    void deletesDueFilesAndForgetsTheirTombstones() {
+        FileTombstone tombstone = new FileTombstone(1L, "uploads/books/pdfs/a.pdf", LocalDateTime.now(), 0, null, LocalDateTime.now());
+        when(tombstoneRepository.findByDueAtBeforeOrderByDueAtAsc(any(), any())).thenReturn(List.of(tombstone));
+
+        reconciler.processTombstones();
+
+        verify(fileStorageService).deleteFile("uploads/books/pdfs/a.pdf");
+        verify(tombstoneRepository).delete(tombstone);
+    }
+
+    @Test
+    void retriesAFailedDeletionLater() {
+        FileTombstone tombstone = new FileTombstone(1L, "uploads/books/pdfs/a.pdf", LocalDateTime.now(), 2, null, LocalDateTime.now());
+        when(tombstoneRepository.findByDueAtBeforeOrderByDueAtAsc(any(), any())).thenReturn(List.of(tombstone));
+        doThrow(new FileStorageException("Failed to delete file", HttpStatus.INTERNAL_SERVER_ERROR))
+                .when(fileStorageService).deleteFile("uploads/books/pdfs/a.pdf");
+
+        reconciler.processTombstones();
+
+        verify(tombstoneRepository, never()).delete(tombstone);
+        verify(tombstoneRepository).save(tombstone);
+        assertThat(tombstone.getAttempts()).isEqualTo(3);
+        assertThat(tombstone.getLastError()).isEqualTo("Failed to delete file");
+        assertThat(tombstone.getDueAt()).isAfter(LocalDateTime.now().plusMinutes(7));
+    }
+}
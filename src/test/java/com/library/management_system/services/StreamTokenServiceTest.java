@@ -0,0 +1,35 @@
+package com.library.management_system.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamTokenServiceTest {
+
+    private final StreamTokenService tokens = new StreamTokenService("test-secret", Duration.ofMinutes(10));
+
+    @Test
+    void acceptsATokenOnlyForTheUserAndBookItWasMintedFor() {
+        String token = tokens.mint("user-1", 7L).token();
+
+        assertThat(tokens.verify(token, "user-1", 7L)).isTrue();
+        assertThat(tokens.verify(token, "user-2", 7L)).isFalse();
+        assertThat(tokens.verify(token, "user-1", 8L)).isFalse();
+    }
+
+    @Test
+    void rejectsExpiredForgedAndMalformedTokens() {
+        String expired = new StreamTokenService("test-secret", Duration.ofSeconds(-1)).mint("user-1", 7L).token();
+        String otherKey = new StreamTokenService("another-secret", Duration.ofMinutes(10)).mint("user-1", 7L).token();
+        String token = tokens.mint("user-1", 7L).token();
+        String tampered = tokens.mint("user-1", 8L).token().split("\\.")[0] + "." + token.split("\\.")[1];
+
+        assertThat(tokens.verify(expired, "user-1", 7L)).isFalse();
+        assertThat(tokens.verify(otherKey, "user-1", 7L)).isFalse();
+        assertThat(tokens.verify(tampered, "user-1", 8L)).isFalse();
+        assertThat(tokens.verify("not a token", "user-1", 7L)).isFalse();
+        assertThat(tokens.verify("%%%.%%%", "user-1", 7L)).isFalse();
+    }
+}
@@ -0,0 +1,62 @@
+package com.library.management_system.services;
+
+import com.library.management_system.models.UserModel;
+import com.library.management_system.repositories.UserRepository;
+import com.library.management_system.utils.JwtActions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserServiceTest {
+
+    private UserRepository userRepository;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        FileStorageService fileStorageService = mock(FileStorageService.class);
+        when(fileStorageService.extractFilenameFromPath(anyString()))
+                .thenAnswer(call -> Path.of(call.<String>getArgument(0)).getFileName().toString());
+        when(fileStorageService.resolveProfilePicture(anyString())).thenAnswer(call -> Path.of("uploads/profile", call.<String>getArgument(0)));
+        userService = new UserService(userRepository, mock(JwtActions.class), mock(EmailOutbox.class), mock(BCryptPasswordEncoder.class),
+                mock(JwtBlacklistService.class), mock(JwtValidationService.class), fileStorageService);
+
+        user("a.b@x.com", "uploads/profile/a-b-x-com-profile-1000.png");
+        user("a-b@x.com", "uploads/profile/a-b-x-com-profile-2000.png");
+    }
+
+    @Test
+    void aUserGetsTheirCurrentPicture() {
+        assertThat(userService.getProfileImageVersion("a.b@x.com", "a-b-x-com-profile-1000.png"))
+                .isEqualTo(Path.of("uploads/profile", "a-b-x-com-profile-1000.png"));
+    }
+
+    @Test
+    void emailsThatCleanUpToTheSameNameCannotReadEachOthersPictures() {
+        // both addresses turn into a-b-x-com in the file name
+        assertThatThrownBy(() -> userService.getProfileImageVersion("a.b@x.com", "a-b-x-com-profile-2000.png"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+        assertThatThrownBy(() -> userService.getProfileImageVersion("a-b@x.com", "a-b-x-com-profile-1000.png"))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
+    private void user(String email, String picture) {
+        UserModel user = new UserModel();
+        user.setEmail(email);
+        user.setProfileImageUrl(picture);
+        when(userRepository.findByEmail(email)).thenReturn(Optional.of(user));
+    }
+}
@@ -0,0 +1,90 @@
+package com.library.management_system.services;
+
+import com.library.management_system.models.WebhookEvent;
+import com.library.management_system.repositories.WebhookEventRepository;
+import com.stripe.model.Event;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebhookInboxTest {
+
+    private static final String PAYLOAD = "{\"id\":\"evt_1\",\"object\":\"event\",\"type\":\"checkout.session.completed\"," +
+            "\"data\":{\"object\":{\"id\":\"cs_1\",\"object\":\"checkout.session\"}}}";
+
+    private WebhookEventRepository eventRepository;
+    private PaymentService paymentService;
+    private WebhookInbox inbox;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository = mock(WebhookEventRepository.class);
+        paymentService = mock(PaymentService.class);
+        inbox = new WebhookInbox(eventRepository, paymentService, mock(PlatformTransactionManager.class),
+                Runnable::run, 50, 3, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void dropsARedeliveredEventWithoutTouchingThePayment() {
+        Event event = new Event();
+        event.setId("evt_1");
+        event.setType("checkout.session.completed");
+        when(eventRepository.insertIfAbsent(eq("evt_1"), any(), any(), any())).thenReturn(0);
+
+        assertThat(inbox.accept(event, PAYLOAD)).isFalse();
+
+        verify(eventRepository, never()).lockDue(any(), anyInt());
+        verify(paymentService, never()).capturePayment(any());
+    }
+
+    @Test
+    void appliesAClaimedEventAndMarksItProcessed() {
+        when(eventRepository.lockDue(any(), eq(50))).thenReturn(List.of(pending(0)));
+
+        assertThat(inbox.drainBatch()).isEqualTo(1);
+
+        ArgumentCaptor<Event> applied = ArgumentCaptor.forClass(Event.class);
+        verify(paymentService).capturePayment(applied.capture());
+        assertThat(applied.getValue().getId()).isEqualTo("evt_1");
+        verify(eventRepository).claim(eq(List.of("evt_1")), any());
+        verify(eventRepository).markProcessed(eq("evt_1"), any());
+    }
+
+    @Test
+    void backsOffAFailingEventAndGivesUpAfterMaxAttempts() {
+        doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Transaction not found"))
+                .when(paymentService).capturePayment(any());
+
+        inbox.process(pending(0));
+        ArgumentCaptor<LocalDateTime> retryAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(eventRepository).markFailedAttempt(eq("evt_1"), eq(WebhookInbox.PENDING), retryAt.capture(), anyString());
+        assertThat(retryAt.getValue()).isAfter(LocalDateTime.now().plusSeconds(20));
+
+        inbox.process(pending(2));
+        verify(eventRepository).markFailedAttempt(eq("evt_1"), eq(WebhookInbox.FAILED), any(), anyString());
+        verify(eventRepository, never()).markProcessed(any(), any());
+    }
+
+    private static WebhookEvent pending(int attempts) {
+        return new WebhookEvent("evt_1", "checkout.session.completed", PAYLOAD, WebhookInbox.PENDING, attempts,
+                LocalDateTime.now(), null, LocalDateTime.now(), null);
+    }
+}
@@ -0,0 +1,66 @@
+package com.library.management_system.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PageCursorTest {
+
+    @Test
+    void roundTripsBothKinds() {
+        LocalDateTime createdAt = LocalDateTime.of(2026, 3, 14, 15, 9, 26, 535_000_000);
+        PageCursor newest = PageCursor.decode(PageCursor.ofCreatedAt(createdAt, 42L).encode(), PageCursor.Kind.CREATED_AT);
+        assertThat(newest.createdAt()).isEqualTo(createdAt);
+        assertThat(newest.longId()).isEqualTo(42L);
+
+        // the separator inside a title must survive
+        PageCursor title = PageCursor.decode(PageCursor.ofTitle("Cats | Dogs", 7L).encode(), PageCursor.Kind.TITLE);
+        assertThat(title.sortKey()).isEqualTo("Cats | Dogs");
+        assertThat(title.longId()).isEqualTo(7L);
+
+        UUID transactionId = UUID.randomUUID();
+        assertThat(PageCursor.decode(PageCursor.ofCreatedAt(createdAt, transactionId).encode(), PageCursor.Kind.CREATED_AT).uuidId())
+                .isEqualTo(transactionId);
+    }
+
+    @Test
+    void rowsWithoutCreatedAtGiveACursorWithoutOne() {
+        PageCursor cursor = PageCursor.decode(PageCursor.ofCreatedAt(null, 3L).encode(), PageCursor.Kind.CREATED_AT);
+
+        assertThat(cursor.createdAt()).isNull();
+        assertThat(cursor.longId()).isEqualTo(3L);
+    }
+
+    @Test
+    void rejectsCursorsOfAnotherKind() {
+        String titleCursor = PageCursor.ofTitle("Dune", 2L).encode();
+
+        assertThatThrownBy(() -> PageCursor.decode(titleCursor, PageCursor.Kind.CREATED_AT))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void rejectsTamperedCursors() {
+        assertThatThrownBy(() -> PageCursor.decode("not base64!", PageCursor.Kind.TITLE))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> PageCursor.decode(raw("t|"), PageCursor.Kind.TITLE))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> PageCursor.decode(raw("t||Dune"), PageCursor.Kind.TITLE))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> PageCursor.decode(raw("c|5|yesterday"), PageCursor.Kind.CREATED_AT).createdAt())
+                .isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> PageCursor.decode(raw("t|five|Dune"), PageCursor.Kind.TITLE).longId())
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
+    private static String raw(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}